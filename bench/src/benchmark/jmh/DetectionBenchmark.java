@@ -0,0 +1,92 @@
+package benchmark.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.Utils;
+import benchmark.Benchmarks;
+import tracking.CascadeRegistry;
+import tracking.FaceDetector;
+import tracking.Frame;
+
+/**
+ * What the controller does to every frame in <code>detectAndDisplay</code>:
+ * run the classifier over the whole frame and highlight the faces found, with
+ * a Haar and an LBP classifier. The classifier runs on every call at a fixed
+ * scale, so no call is answered by the template tracker.
+ * <p>
+ * The frames are the bundled sample frame of a face unless
+ * <code>-p frames=dir</code> names a directory of recorded frames, which are
+ * used in turn.
+ *
+ * @author Michael Huyler
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectionBenchmark {
+
+	@Param({ "haarcascades/haarcascade_frontalface_alt.xml", "lbpcascades/lbpcascade_frontalface.xml" })
+	public String cascade;
+
+	@Param({ "" })
+	public String frames;
+
+	private final Scalar faceColor = new Scalar(0, 0, 255, 255), gridColor = new Scalar(64, 64, 64, 64);
+	private final Point tl = new Point(), br = new Point(), center = new Point();
+	private final Frame frame = new Frame();
+	private List<Mat> recorded;
+	private FaceDetector detector;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		Benchmarks.loadOpenCV();
+		this.recorded = Benchmarks.loadFrames(this.frames.isEmpty() ? null : this.frames);
+		CascadeRegistry registry = new CascadeRegistry(Benchmarks.resources(), 1);
+		this.detector = new FaceDetector(0.2f);
+		this.detector.setCascade(this.cascade, registry.create(this.cascade));
+		this.detector.setDetectInterval(1);
+		this.detector.setFullSweepInterval(1);
+		this.detector.setLatencyBudget(0);
+	}
+
+	@Benchmark
+	public int detectAndDisplay() {
+		this.recorded.get(this.next).copyTo(this.frame.image);
+		this.next = (this.next + 1) % this.recorded.size();
+		int faceCount = this.detector.detect(this.frame);
+		Utils.drawFaces(this.frame.image, this.frame.rects, faceCount, this.faceColor, this.tl, this.br,
+				this.center);
+		Utils.drawGrid(this.frame.image, 10, this.gridColor, this.tl, this.br);
+		return faceCount;
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.detector.release();
+		this.frame.release();
+		for (Mat mat : this.recorded)
+			mat.release();
+	}
+}
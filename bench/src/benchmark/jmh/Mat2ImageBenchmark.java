@@ -0,0 +1,70 @@
+package benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.Utils;
+import benchmark.Benchmarks;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.image.Image;
+
+/**
+ * Converting a frame into an image the FX thread can display, with
+ * {@link Utils#mat2Image(Mat)}, for color and gray scale frames.
+ *
+ * @author Michael Huyler
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Mat2ImageBenchmark {
+
+	@Param({ "color", "gray" })
+	public String type;
+
+	@Param({ "640" })
+	public int cols;
+
+	@Param({ "480" })
+	public int rows;
+
+	private Mat frame;
+
+	@Setup
+	public void setup() {
+		Benchmarks.loadOpenCV();
+		// Start the FX toolkit without a stage
+		new JFXPanel();
+		this.frame = Benchmarks.sampleFrame(this.rows, this.cols);
+		if (this.type.equals("gray"))
+			Imgproc.cvtColor(this.frame, this.frame, Imgproc.COLOR_BGR2GRAY);
+	}
+
+	@Benchmark
+	public Image mat2Image() {
+		return Utils.mat2Image(this.frame);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.frame.release();
+	}
+}
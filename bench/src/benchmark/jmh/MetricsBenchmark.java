@@ -0,0 +1,70 @@
+package benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.Benchmarks;
+import metrics.PipelineMetrics;
+import tracking.Frame;
+
+/**
+ * What timing a frame costs the stages it passes through: stamping it and
+ * recording its stages into the {@link PipelineMetrics} histograms, from as
+ * many threads as there are detection threads.
+ *
+ * @author Michael Huyler
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricsBenchmark {
+
+	private final PipelineMetrics metrics = new PipelineMetrics();
+
+	@State(Scope.Thread)
+	public static class Stamped {
+		final Frame frame = new Frame();
+
+		@Setup
+		public void setup() {
+			// Frame holds native buffers
+			Benchmarks.loadOpenCV();
+		}
+	}
+
+	@Benchmark
+	public long stamp() {
+		return System.nanoTime();
+	}
+
+	@Benchmark
+	public void record() {
+		this.metrics.record(PipelineMetrics.Stage.DETECT, 12345678);
+	}
+
+	@Benchmark
+	public void recordFrame(Stamped stamped) {
+		Frame frame = stamped.frame;
+		frame.captureTime = System.nanoTime();
+		frame.preprocessTime = frame.captureTime + 1000000;
+		frame.detectTime = frame.preprocessTime + 10000000;
+		frame.enqueueTime = frame.detectTime + 10000;
+		this.metrics.record(frame);
+	}
+}
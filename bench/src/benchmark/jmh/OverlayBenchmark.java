@@ -0,0 +1,65 @@
+package benchmark.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.Utils;
+import benchmark.Benchmarks;
+
+/**
+ * Drawing the grid the controller lays over every frame in
+ * <code>overlayFrame</code>.
+ *
+ * @author Michael Huyler
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OverlayBenchmark {
+
+	@Param({ "640" })
+	public int cols;
+
+	@Param({ "480" })
+	public int rows;
+
+	private final Scalar gridColor = new Scalar(64, 64, 64, 64);
+	private final Point tl = new Point(), br = new Point();
+	private Mat frame;
+
+	@Setup
+	public void setup() {
+		Benchmarks.loadOpenCV();
+		this.frame = Benchmarks.sampleFrame(this.rows, this.cols);
+	}
+
+	@Benchmark
+	public Mat overlayFrame() {
+		Utils.drawGrid(this.frame, 10, this.gridColor, this.tl, this.br);
+		return this.frame;
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.frame.release();
+	}
+}
@@ -0,0 +1,35 @@
+package benchmark.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the per-frame hot paths, reporting the
+ * allocation rate of each next to its time. Every performance change should
+ * be reviewed against these numbers.
+ * <p>
+ * The benchmarks are a project of their own in the <code>bench</code>
+ * directory, so the program builds without JMH. The project needs the JMH
+ * user library on the build path and the JMH annotation processor on the
+ * factory path, which expects the <code>JMH_HOME</code> classpath variable to
+ * point at the directory holding the JMH jars. Any JMH option can be passed,
+ * e.g.
+ * <code>RunBenchmarks Detection -p frames=D:/frames</code> to only run the
+ * detection benchmark on recorded frames.
+ * <p>
+ * Usage: <code>RunBenchmarks [regexp] [JMH options]</code>
+ *
+ * @author Michael Huyler
+ *
+ */
+public class RunBenchmarks {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class)
+				.shouldFailOnError(true).build()).run();
+	}
+}
@@ -0,0 +1,77 @@
+package benchmark.jmh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import arduino.ArduinoCommunicator.Protocol;
+import arduino.ArduinoCommunicator.SerialWriter;
+import arduino.TurretTelemetry;
+
+/**
+ * Sending coordinates to a turret: handing them to the {@link SerialWriter},
+ * which is all the detection thread pays for, and encoding them into a binary
+ * packet or as text on the Serial Port, which the writer thread pays for.
+ *
+ * @author Michael Huyler
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialEncodingBenchmark {
+
+	// Swallows every packet, so only the encoding is measured
+	private final OutputStream port = new OutputStream() {
+		@Override
+		public void write(int b) throws IOException {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+		}
+	};
+	// Never started, so the coordinates stay in its mailbox
+	private final SerialWriter writer = new SerialWriter(this.port, 9600, new TurretTelemetry(), Protocol.BINARY);
+	private final byte[] packet = new byte[Math.max(SerialWriter.PACKET_LENGTH, SerialWriter.ASCII_LENGTH)];
+	private int sequence = 0, x = 0, y = 0;
+
+	@Benchmark
+	public void write() {
+		this.x = (this.x + 7) % 640;
+		this.y = (this.y + 5) % 480;
+		this.writer.write(this.x, this.y);
+	}
+
+	@Benchmark
+	public byte[] encode() throws IOException {
+		this.sequence = (this.sequence + 1) & 0xFF;
+		this.x = (this.x + 7) % 640;
+		this.y = (this.y + 5) % 480;
+		int length = SerialWriter.encode(this.packet, this.sequence, this.x, this.y);
+		this.port.write(this.packet, 0, length);
+		return this.packet;
+	}
+
+	@Benchmark
+	public byte[] encodeAscii() throws IOException {
+		this.x = (this.x + 7) % 640;
+		this.y = (this.y + 5) % 480;
+		int length = SerialWriter.encodeAscii(this.packet, this.x, this.y);
+		this.port.write(this.packet, 0, length);
+		return this.packet;
+	}
+}
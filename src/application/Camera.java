@@ -0,0 +1,103 @@
+package application;
+
+import org.opencv.core.Point;
+
+import tracking.DetectionPool;
+import tracking.FaceDetector;
+import tracking.FramePipeline;
+import tracking.FrameScheduler;
+import tracking.FrameSource;
+
+/**
+ * One of the cameras, with the state its detection needs. The frames of
+ * different cameras can be detected at the same time. A camera can also be a
+ * recording standing in for one.
+ * 
+ * @author Michael Huyler
+ *
+ */
+class Camera {
+
+	// Run the classifier on every n-th frame and track the face in between
+	static final int DETECT_INTERVAL = 5;
+	// Search the whole frame on every n-th run, otherwise near the last face
+	static final int FULL_SWEEP_INTERVAL = 10;
+	// Time in millis one run of the classifier should take, so 30 fps is kept
+	static final int DETECT_BUDGET = 20;
+
+	final int id;
+	final FrameSource source;
+	// Finds faces in each frame using the classifier
+	final FaceDetector faceDetector;
+	// Responsible for grabbing, detecting and rendering frames
+	FramePipeline pipeline;
+	// Drawing state reused on every frame
+	final Point tl = new Point(), br = new Point(), center = new Point();
+
+	/**
+	 * @param id
+	 *            The number of the camera, stored in its frames.
+	 * @param source
+	 *            The index of a camera, or the path of a video file or
+	 *            directory of images.
+	 * @param facePortion
+	 *            The minimum portion of the frame a face must take up to be
+	 *            detected.
+	 */
+	Camera(int id, String source, float facePortion) {
+		this.id = id;
+		this.source = FrameSource.create(source);
+		this.faceDetector = new FaceDetector(facePortion);
+		this.faceDetector.setDetectInterval(DETECT_INTERVAL);
+		this.faceDetector.setFullSweepInterval(FULL_SWEEP_INTERVAL);
+		this.faceDetector.setLatencyBudget(DETECT_BUDGET);
+	}
+
+	/**
+	 * Opens the source and starts a pipeline for it. Recordings replayed at
+	 * their recorded pace loop like a camera would. Recordings replayed as
+	 * fast as possible are played once, without dropping any frame.
+	 * 
+	 * @param detector
+	 *            Runs face detection on each frame.
+	 * @param renderer
+	 *            Displays each frame.
+	 * @param deadline
+	 *            The longest a frame may take from capture to display, in
+	 *            millis.
+	 * @param detectionPool
+	 *            Detects the frames of every camera.
+	 * @param pacing
+	 *            How fast a recording is replayed.
+	 * @return True if the source could be opened.
+	 */
+	boolean start(FramePipeline.FrameProcessor detector, FramePipeline.FrameProcessor renderer, long deadline,
+			DetectionPool detectionPool, FrameSource.Pacing pacing) {
+		if (!this.source.open()) {
+			System.err.println("ERROR: COULD NOT CONNECT TO CAMERA " + this.source + ".");
+			return false;
+		}
+		boolean fast = pacing == FrameSource.Pacing.FAST && !this.source.isLive();
+		this.source.setPacing(pacing);
+		this.source.setLoop(!fast);
+		if (fast)
+			// A fixed scale, so replays detect the same faces every time
+			this.faceDetector.setLatencyBudget(0);
+		this.pipeline = new FramePipeline(this.source, detector, renderer, new FrameScheduler(deadline),
+				this.source.getRows(), this.source.getCols(), this.id, detectionPool);
+		this.pipeline.setLossless(fast);
+		this.pipeline.start();
+		return true;
+	}
+
+	/**
+	 * Stops the pipeline and closes the source.
+	 */
+	void stop() {
+		if (this.pipeline != null) {
+			this.pipeline.stop();
+			this.pipeline = null;
+		}
+		this.source.release();
+	}
+}
@@ -0,0 +1,51 @@
+package application;
+
+/**
+ * The commands the turret can be given, by voice or from the window.
+ *
+ * @author Michael Huyler
+ *
+ */
+public enum Command {
+	// Searches with the Haar classifier
+	SEARCH_HAAR(FaceTrackingController.COMMAND_HAAR),
+	// Searches with the LBP classifier
+	SEARCH_LBP(FaceTrackingController.COMMAND_LBP),
+	// Searches with every classifier at once
+	SEARCH_ENSEMBLE(FaceTrackingController.COMMAND_ENSEMBLE),
+	// Stops searching
+	RETIRE(FaceTrackingController.COMMAND_RETIRE),
+	// Turns the cameras on
+	ACTIVATE(FaceTrackingController.COMMAND_ACTIVATE),
+	// Turns the cameras off
+	SHUTDOWN(FaceTrackingController.COMMAND_SHUTDOWN),
+	// Switches autopilot on or off
+	TOGGLE_AUTOPILOT(FaceTrackingController.COMMAND_AUTOPILOT);
+
+	private static final Command[] COMMANDS = values();
+
+	private final String phrase;
+
+	Command(String phrase) {
+		this.phrase = phrase;
+	}
+
+	/**
+	 * @return The words said to give the command.
+	 */
+	public String getPhrase() {
+		return this.phrase;
+	}
+
+	/**
+	 * @param phrase
+	 *            What was heard.
+	 * @return The command, or null if the phrase is not a command.
+	 */
+	public static Command parse(String phrase) {
+		for (Command command : COMMANDS)
+			if (command.phrase.equals(phrase))
+				return command;
+		return null;
+	}
+}
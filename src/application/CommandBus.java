@@ -0,0 +1,185 @@
+package application;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import metrics.PipelineMetrics;
+
+/**
+ * Carries commands from the speech recognizer and the window to a single
+ * thread that applies them, one at a time and in the order they were given.
+ * Giving a command never blocks, so neither the recognizer nor the FX thread
+ * waits for a command to take effect, and the frame pipelines only see the
+ * state a command changes at the start of their next frame.
+ * <p>
+ * A command given again before it has been applied replaces the one waiting,
+ * taking its place at the back of the queue, so the command given last is
+ * always the one that takes effect last. A command given again within the
+ * debounce interval of being applied, with nothing else in between, is
+ * dropped, so a phrase heard twice only counts once. The time from a command being given to it being applied
+ * is recorded as {@link PipelineMetrics.Stage#COMMAND}.
+ *
+ * @author Michael Huyler
+ *
+ */
+public class CommandBus {
+
+	/**
+	 * Applies commands. Only ever called from the thread of the bus.
+	 */
+	public interface Handler {
+		void apply(Command command);
+	}
+
+	/**
+	 * A command with when it was given.
+	 */
+	private static class Posted {
+		final Command command;
+		final long time;
+
+		Posted(Command command, long time) {
+			this.command = command;
+			this.time = time;
+		}
+	}
+
+	private static final Command[] COMMANDS = Command.values();
+
+	private final BlockingQueue<Posted> queue;
+	private final Handler handler;
+	private final PipelineMetrics metrics;
+	private final long debounce;
+	// The latest copy of each command waiting in the queue, or null
+	private final AtomicReferenceArray<Posted> waiting = new AtomicReferenceArray<Posted>(COMMANDS.length);
+	// The command applied last and when it was given, only used by the bus
+	private Command lastCommand;
+	private long lastTime;
+	private Thread thread;
+	private final AtomicLong applied = new AtomicLong(), coalesced = new AtomicLong(), dropped = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            The most commands waiting to be applied.
+	 * @param debounce
+	 *            How long after a command is given, in millis, the same
+	 *            command is ignored.
+	 * @param handler
+	 *            Applies the commands.
+	 * @param metrics
+	 *            Where the time to apply each command is recorded, or null.
+	 */
+	public CommandBus(int capacity, int debounce, Handler handler, PipelineMetrics metrics) {
+		this.queue = new ArrayBlockingQueue<Posted>(capacity);
+		this.debounce = debounce * 1000000L;
+		this.handler = handler;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Starts applying commands, including any given before now.
+	 */
+	public synchronized void start() {
+		if (this.thread != null)
+			return;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				CommandBus.this.run();
+			}
+		}, "COMMAND-BUS");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Stops applying commands. Those still waiting are dropped.
+	 */
+	public synchronized void shutdown() {
+		if (this.thread != null)
+			this.thread.interrupt();
+		this.thread = null;
+	}
+
+	/**
+	 * Gives a command. Never blocks. If the same command is still waiting,
+	 * it is taken out of the queue and this one is queued behind every other
+	 * command instead.
+	 *
+	 * @param command
+	 *            The command.
+	 * @param time
+	 *            When the command was given, from {@link System#nanoTime()},
+	 *            e.g. when the recognizer heard it.
+	 * @return False if too many commands are waiting and this one was
+	 *         dropped.
+	 */
+	public boolean post(Command command, long time) {
+		Posted posted = new Posted(command, time);
+		Posted older = this.waiting.getAndSet(command.ordinal(), posted);
+		// Unless the bus has taken it already
+		if (older != null && this.queue.remove(older))
+			this.coalesced.incrementAndGet();
+		if (!this.queue.offer(posted)) {
+			this.waiting.compareAndSet(command.ordinal(), posted, null);
+			this.dropped.incrementAndGet();
+			System.err.println("ERROR: TOO MANY COMMANDS WAITING, DROPPED " + command + ".");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Applies commands as they are given, until interrupted.
+	 */
+	private void run() {
+		while (!Thread.currentThread().isInterrupted()) {
+			Posted posted;
+			try {
+				posted = this.queue.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			// Given again from now on, the command is queued again
+			this.waiting.compareAndSet(posted.command.ordinal(), posted, null);
+			if (posted.command == this.lastCommand && posted.time - this.lastTime < this.debounce) {
+				this.coalesced.incrementAndGet();
+				continue;
+			}
+			try {
+				this.handler.apply(posted.command);
+			} catch (RuntimeException e) {
+				System.err.println("ERROR: COULD NOT APPLY " + posted.command + ".");
+				e.printStackTrace();
+			}
+			this.lastCommand = posted.command;
+			this.lastTime = posted.time;
+			this.applied.incrementAndGet();
+			if (this.metrics != null)
+				this.metrics.record(PipelineMetrics.Stage.COMMAND, System.nanoTime() - posted.time);
+		}
+	}
+
+	/**
+	 * @return The number of commands applied.
+	 */
+	public long getApplied() {
+		return this.applied.get();
+	}
+
+	/**
+	 * @return The number of commands ignored as repeats.
+	 */
+	public long getCoalesced() {
+		return this.coalesced.get();
+	}
+
+	/**
+	 * @return The number of commands dropped because too many were waiting.
+	 */
+	public long getDropped() {
+		return this.dropped.get();
+	}
+}
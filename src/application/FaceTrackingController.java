@@ -1,40 +1,20 @@
 package application;
 
-import java.io.BufferedInputStream;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Enumeration;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.LineEvent;
-import javax.sound.sampled.LineListener;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfRect;
-import org.opencv.core.Point;
-import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
-import org.opencv.objdetect.CascadeClassifier;
-import org.opencv.objdetect.Objdetect;
-import org.opencv.videoio.VideoCapture;
 
 import arduino.ArduinoCommunicator;
+import arduino.TurretManager;
+import arduino.TurretManager.Turret;
+import audio.SoundPlayer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -52,7 +32,18 @@ import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
+import metrics.PipelineMetrics;
+import sphinx.CommandGrammar;
 import sphinx.VoiceCommandController;
+import tracking.CascadeRegistry;
+import tracking.DetectionPool;
+import tracking.EnsembleDetector;
+import tracking.Frame;
+import tracking.FramePipeline;
+import tracking.FrameScheduler;
+import tracking.FrameSource;
+import tracking.ParallelDetector;
 
 /**
  * This class controls the <code>FaceTrackingGUI.fxml</code> file.
@@ -96,6 +87,8 @@ public class FaceTrackingController {
 	@FXML
 	private ToggleButton lbpFace;
 	@FXML
+	private ToggleButton allFace;
+	@FXML
 	private Label coordLabel;
 	@FXML
 	private ImageView minimize;
@@ -109,90 +102,121 @@ public class FaceTrackingController {
 	private TextArea logBox;
 	@FXML
 	private Label serialPort;
+	@FXML
+	private Label pipelineStats;
+	@FXML
+	private Label latencyStats;
 
 	// The stage
 	private static Stage stage;
 	// Stage offsets
 	private double xOffset = 0, yOffset = 0;
-	// The path to the sound effect .wav files
-	private final String soundPath = ClassLoader.getSystemClassLoader().getResource(".").getPath() + "sounds";
-	// Which camera to use: 0 = built-in webcam, 1 = 1st external webcam
-	protected static int cameraID = 1;
-	// To keep track of whether the camera is on or off
-	private boolean cameraActive = false;
-	// The connection to the webcam
-	private VideoCapture capture;
-	// Responsible for grabbing frames
-	private ScheduledExecutorService timer;
-	// Time in millis between each frame grab
-	private final int interval = 33;
-	// [-80.0, 6.0206]
-	@SuppressWarnings("unused")
-	private final float maxVol = 6.0206f, minVol = -80.0f, range = 86.0206f;
-	// This cascade classifier is trained to detect faces
-	private CascadeClassifier faceCascade;
-	// The paths to the classifiers
-	private final String haarClassifierPath = ClassLoader.getSystemClassLoader().getResource(".").getPath().substring(1)
-			+ "haarcascades/haarcascade_frontalface_alt.xml";
-	private final String lbpClassifierPath = ClassLoader.getSystemClassLoader().getResource(".").getPath().substring(1)
-			+ "lbpcascades/lbpcascade_frontalface.xml";
-	// Used in calculating how big a face needs to be to be detected
-	private int absoluteFaceSize;
+	// Which cameras to use: 0 = built-in webcam, 1 = 1st external webcam,
+	// or the path of a video file
+	protected static String[] cameraSources = { "1" };
+	// How fast recordings standing in for cameras are replayed
+	protected static FrameSource.Pacing pacing = FrameSource.Pacing.RECORDED;
+	// To keep track of whether the cameras are on or off
+	private volatile boolean cameraActive = false;
+	// The cameras, each with its own pipeline and face detector, none until
+	// the native library is loaded
+	private Camera[] cameras = new Camera[0];
+	// Detects the frames of every camera
+	private DetectionPool detectionPool;
+	// Responsible for showing frames in the central ImageView
+	private MatImageSink frameSink;
+	// The latency of each stage frames pass through
+	private final PipelineMetrics metrics = new PipelineMetrics();
+	// The longest a frame may take from capture to display, in millis
+	private final int FRAME_DEADLINE = 100;
+	// Time in millis between updates of the pipeline statistics
+	private final int STATS_INTERVAL = 500;
+	// When the pipeline statistics were last shown
+	private long lastStatsUpdate = 0;
+	// Time in millis between updates of the log box
+	private final int LOG_INTERVAL = 100;
+	// The number of lines kept in the log box
+	private static final int LOG_LINES = 100;
+	// The lines of the log read and shown so far, only used by the FX thread
+	private long logCursor = 0;
+	private int logLines = 0;
+	private final StringBuilder logText = new StringBuilder();
+	// Keeps the cascade classifiers loaded between switches
+	private CascadeRegistry cascades;
+	// The number of cascade classifiers kept loaded, enough for both face
+	// classifiers and the ensemble
+	private final int LOADED_CASCADES = 5;
+	// The classifiers trained to detect faces
+	private final String haarClassifier = "haarcascades/haarcascade_frontalface_alt.xml";
+	private final String lbpClassifier = "lbpcascades/lbpcascade_frontalface.xml";
 	// The minimum portion of the frame a face must take up to be detected
 	private float facePortion = 0.2f;
+	// Spreads searches of the whole frame over the cores not used by the
+	// capture and render stages
+	private ParallelDetector parallelDetector;
+	private int detectionThreads;
+	// Runs the frontal, profile and body classifiers together, and whether
+	// it is in use
+	private EnsembleDetector ensembleDetector;
+	private volatile boolean ensembleActive = false;
 	// Face Detection types
-	private final int OFF = 0, HAAR = 1, LBP = 2;
-	// The sound clip
-	private Clip clip;
-	// Used to update the progress bar
-	private Timer progressUpdateTimer;
+	private final int OFF = 0, HAAR = 1, LBP = 2, ENSEMBLE = 3;
+	// Plays the sound effects
+	private final SoundPlayer sounds = new SoundPlayer(Main.manifest.getCategories());
 	// Used to decide if face detection should occur
-	private boolean doFaceDetect = false;
+	private volatile boolean doFaceDetect = false;
 	// Responsible for handling all voice commands
 	private VoiceCommandController vcc;
 	// The voice command thread
 	private Thread voiceCommands;
 	// Command constants
-	private final String COMMAND_HAAR = "COMMAND SEARCH ONE";
-	private final String COMMAND_LBP = "COMMAND SEARCH TWO";
-	private final String COMMAND_RETIRE = "COMMAND RETIRE";
-	private final String COMMAND_ACTIVATE = "COMMAND ACTIVATE";
-	private final String COMMAND_SHUTDOWN = "COMMAND SHUTDOWN";
-	private final String COMMAND_AUTOPILOT = "COMMAND TOGGLE AUTOPILOT";
-
-	// Sounds for when the Turret finds someone
-	final String activeSounds = "turret_active_";
-	final int activeSoundsInt = 8;
-	// 'Autopilot' ambient search noises
-	final String autoSearchSounds = "turret_autosearch_";
-	final int autoSearchSoundsInt = 6;
-	// Sounds for when the Turret begins shooting
-	final String deploySounds = "turret_deploy_";
-	final int deploySoundsInt = 6;
-	// Sounds for when the Turret is no longer operable
-	final String disabledSounds = "turret_disabled_";
-	final int disabledSoundsInt = 8;
-	// Sounds for when the Turret fires
-	final String fireSounds = "turret_fire_4x_0";
-	final int fireSoundsInt = 3;
-	// Sounds for when the Turret stops searching
-	final String retireSounds = "turret_retire_";
-	final int retireSoundsInt = 7;
-	// Sounds for when the Turret loses a target
-	final String searchSounds = "turret_search_";
-	final int searchSoundsInt = 4;
-
-	// Booleans used to keep track of searching information
-	private boolean autopilot = false;
-	private boolean found = false, previous = false;
-	// Used to interface with the Arduino
-	private ArduinoCommunicator arduino;
-	// The Serial Port the Arduino is connected to
-	private final String PORT = "COM1";
-	// Previous coordinates
-	private double prevX = -1, prevY = -1;
-	private final int TOLERANCE = 5;
-
+	public static final String COMMAND_HAAR = "COMMAND SEARCH ONE";
+	public static final String COMMAND_LBP = "COMMAND SEARCH TWO";
+	public static final String COMMAND_ENSEMBLE = "COMMAND SEARCH THREE";
+	public static final String COMMAND_RETIRE = "COMMAND RETIRE";
+	public static final String COMMAND_ACTIVATE = "COMMAND ACTIVATE";
+	public static final String COMMAND_SHUTDOWN = "COMMAND SHUTDOWN";
+	public static final String COMMAND_AUTOPILOT = "COMMAND TOGGLE AUTOPILOT";
+
+	// The most commands waiting to be applied
+	private static final int COMMAND_CAPACITY = 16;
+	// Time in millis within which a repeated command is ignored
+	private static final int COMMAND_DEBOUNCE = 1000;
+	// Applies the commands given by voice or from the window, one at a time
+	private final CommandBus commands = new CommandBus(COMMAND_CAPACITY, COMMAND_DEBOUNCE, new CommandBus.Handler() {
+		@Override
+		public void apply(Command command) {
+			applyCommand(command);
+		}
+	}, this.metrics);
+
+	// Used to interface with the Arduinos
+	private final TurretManager turrets = new TurretManager();
+	// The Serial Ports the Arduinos are connected to
+	protected static String[] ports = { "COM1" };
+	// How coordinates are written to the Arduinos
+	protected static ArduinoCommunicator.Protocol protocol = ArduinoCommunicator.Protocol.ASCII;
+	// Aims the turrets at the faces found
+	private final TargetFollower follower = new TargetFollower(this.turrets, this.sounds, false);
+	// Colors used to draw on the frames
+	private final Scalar faceColor = new Scalar(0, 0, 255, 255), gridColor = new Scalar(64, 64, 64, 64);
+	// The coordinates to show next, and the ones shown, on the grid
+	private volatile int coordX, coordY;
+	private int shownX = Integer.MIN_VALUE, shownY = Integer.MIN_VALUE;
+	// Whether the coordinates are waiting to be shown
+	private final AtomicBoolean coordinatesPending = new AtomicBoolean();
+	// Shows the latest coordinates, posted at most once per pulse
+	private final Runnable showCoordinates = new Runnable() {
+		@Override
+		public void run() {
+			coordinatesPending.set(false);
+			int xPos = coordX, yPos = coordY;
+			if (xPos != shownX)
+				x.setText(Integer.toString(shownX = xPos));
+			if (yPos != shownY)
+				y.setText(Integer.toString(shownY = yPos));
+		}
+	};
 	/**
 	 * Changes which type of face detection should be used (if any).
 	 * 
@@ -204,203 +228,222 @@ public class FaceTrackingController {
 		System.out.println("INFO: TOGGLING FACE TRACKING PROCESSES.");
 		String source = ((ToggleButton) e.getSource()).getId();
 		if (source.equals("noFace")) {
-			this.processCommand(this.COMMAND_RETIRE);
+			this.showFaceDetection(OFF);
+			this.processCommand(COMMAND_RETIRE);
 		} else if (source.equals("haarFace")) {
-			this.processCommand(this.COMMAND_HAAR);
+			this.showFaceDetection(HAAR);
+			this.processCommand(COMMAND_HAAR);
 		} else if (source.equals("lbpFace")) {
-			this.processCommand(this.COMMAND_LBP);
+			this.showFaceDetection(LBP);
+			this.processCommand(COMMAND_LBP);
+		} else if (source.equals("allFace")) {
+			this.showFaceDetection(ENSEMBLE);
+			this.processCommand(COMMAND_ENSEMBLE);
 		}
 	}
 
-	private void toggleFaceDetection(int type) {
-		boolean wasRecording = cameraActive;
-		if (wasRecording)
-			stopAcquisition();
+	/**
+	 * Changes which type of face detection should be used. The running
+	 * pipeline picks up the change on its next frame. Called from the
+	 * command bus.
+	 * 
+	 * @param type
+	 *            OFF, HAAR, LBP or ENSEMBLE.
+	 */
+	private void toggleFaceDetection(final int type) {
+		for (Camera camera : this.cameras)
+			camera.faceDetector.setEnsembleDetector(type == ENSEMBLE ? this.ensembleDetector() : null);
+		this.ensembleActive = type == ENSEMBLE;
 
 		switch (type) {
 		case OFF:
 			doFaceDetect = false;
-			noFace.setSelected(true);
-			haarFace.setSelected(false);
-			lbpFace.setSelected(false);
-			this.coordBox.setDisable(true);
-			this.coordLabel.setDisable(true);
-			this.x.setText("--");
-			this.y.setText("--");
 			break;
 		case HAAR:
+		case ENSEMBLE:
+			this.useCascade(this.haarClassifier);
 			doFaceDetect = true;
-			noFace.setSelected(false);
-			haarFace.setSelected(true);
-			lbpFace.setSelected(false);
-			this.coordBox.setDisable(false);
-			this.coordLabel.setDisable(false);
-			this.faceCascade.load(haarClassifierPath);
 			break;
 		case LBP:
+			this.useCascade(this.lbpClassifier);
 			doFaceDetect = true;
-			noFace.setSelected(false);
-			haarFace.setSelected(false);
-			lbpFace.setSelected(true);
-			this.coordBox.setDisable(false);
-			this.coordLabel.setDisable(false);
-			this.faceCascade.load(lbpClassifierPath);
 			break;
 		}
-		if (wasRecording)
-			startCamera();
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				showFaceDetection(type);
+			}
+		});
+	}
+
+	/**
+	 * Shows which type of face detection is used. Runs on the FX thread.
+	 * 
+	 * @param type
+	 *            OFF, HAAR, LBP or ENSEMBLE.
+	 */
+	private void showFaceDetection(int type) {
+		noFace.setSelected(type == OFF);
+		haarFace.setSelected(type == HAAR);
+		lbpFace.setSelected(type == LBP);
+		allFace.setSelected(type == ENSEMBLE);
+		this.coordBox.setDisable(type == OFF);
+		this.coordLabel.setDisable(type == OFF);
+		if (type == OFF) {
+			this.x.setText("--");
+			this.y.setText("--");
+			this.shownX = this.shownY = Integer.MIN_VALUE;
+		}
 	}
 
 	/**
-	 * Toggles the camera on and off and begins scheduling of the frame grabber
-	 * timer.
+	 * Hands a classifier from the registry to the face detectors, and a copy
+	 * of it to every worker of the parallel detector. Copies not loaded yet
+	 * are loaded here rather than on the detection threads.
+	 * 
+	 * @param name
+	 *            The cascade file, relative to the resources directory.
+	 */
+	private void useCascade(String name) {
+		// A classifier can only be used by one thread at a time, so every
+		// camera has its own copy, and the workers' copies come after them
+		if (this.parallelDetector != null)
+			this.parallelDetector.setCascade(
+					this.cascades.get(name, this.cameras.length, this.parallelDetector.getThreads()));
+		for (Camera camera : this.cameras)
+			camera.faceDetector.setCascade(this.cascades.path(name), this.cascades.get(name, camera.id));
+	}
+
+	/**
+	 * Sets up the ensemble of classifiers the first time it is used, with
+	 * copies from the registry loaded here rather than on the detection
+	 * threads. Body detections are mapped onto where the head should be.
+	 * 
+	 * @return The ensemble detector.
+	 */
+	private EnsembleDetector ensembleDetector() {
+		if (this.ensembleDetector == null) {
+			// One copy per camera, after the ones the face detectors use
+			int copy = this.ensembleCopy(), count = this.cameras.length;
+			String profile = "haarcascades/haarcascade_profileface.xml";
+			String upperBody = "haarcascades/haarcascade_upperbody.xml";
+			String fullBody = "haarcascades/haarcascade_fullbody.xml";
+			this.ensembleDetector = new EnsembleDetector(Math.max(1, this.detectionThreads));
+			this.ensembleDetector.add("frontal face", this.cascades.get(this.haarClassifier, copy, count), null,
+					1.0, facePortion);
+			this.ensembleDetector.add("profile face", this.cascades.get(profile, copy, count),
+					this.cascades.get(profile, copy + count, count), 0.8, facePortion);
+			this.ensembleDetector.add("upper body", this.cascades.get(upperBody, copy, count), null, 0.5,
+					2 * facePortion, 0.3, 0.0, 0.4, 0.5);
+			this.ensembleDetector.add("full body", this.cascades.get(fullBody, copy, count), null, 0.3,
+					3 * facePortion, 0.35, 0.0, 0.3, 0.15);
+		}
+		return this.ensembleDetector;
+	}
+
+	/**
+	 * @return The number of the first copy of a classifier that is not used
+	 *         by a camera or a worker of the parallel detector.
+	 */
+	private int ensembleCopy() {
+		return this.cameras.length + (this.parallelDetector == null ? 0 : this.parallelDetector.getThreads());
+	}
+
+	/**
+	 * Toggles the cameras on and off and starts a capture, detection and
+	 * rendering pipeline for each.
 	 */
 	@FXML
 	protected void startCamera() {
 		if (!this.cameraActive) {
 			System.out.println("INFO: ATTEMPTING TO CONNECT TO CAMERA.");
-			this.capture.open(cameraID);
-			if (this.capture.isOpened()) {
-				this.cameraActive = true;
-				Runnable frameGrabber = new Runnable() {
+			for (final Camera camera : this.cameras) {
+				FramePipeline.FrameProcessor detector = new FramePipeline.FrameProcessor() {
 					@Override
-					public void run() {
-						Mat frame = grabFrame();
-						if (frame.empty())
-							return;
-						Image imageToShow = Utils.mat2Image(frame);
-						updateImageView(currentFrame, imageToShow);
+					public void process(Frame frame) {
+						if (doFaceDetect)
+							detectAndDisplay(camera, frame);
 					}
 				};
-				this.timer = Executors.newSingleThreadScheduledExecutor();
-				this.timer.scheduleAtFixedRate(frameGrabber, 0, interval, TimeUnit.MILLISECONDS);
-				this.cameraButton.setText("Stop Camera");
-			} else {
-				System.err.println("ERROR: COULD NOT CONNECT TO CAMERA.");
+				FramePipeline.FrameProcessor renderer = new FramePipeline.FrameProcessor() {
+					@Override
+					public void process(Frame frame) {
+						// Only the followed camera is shown
+						if (frame.sourceId == follower.getFollowed()) {
+							frameSink.show(frame.image, frame.captureTime);
+							if (frame.faceCount > 0)
+								updateCoordinates(frame.targetX, frame.targetY);
+						}
+						updateStats();
+					}
+				};
+				if (camera.start(detector, renderer, FRAME_DEADLINE, this.detectionPool, pacing))
+					this.cameraActive = true;
 			}
+			if (this.cameraActive)
+				this.cameraButton.setText("Stop Camera");
 		} else {
 			this.stopAcquisition();
 		}
 	}
 
 	/**
-	 * Responsible for grabbing frames from the video capture.
+	 * Draws a grid over the screen
 	 * 
-	 * @return The current frame the camera sees.
 	 */
-	private Mat grabFrame() {
-		Mat frame = new Mat();
-		if (this.capture.isOpened()) {
-			this.capture.read(frame);
-			if (!frame.empty() && doFaceDetect) {
-				this.detectAndDisplay(frame);
-			}
-		}
-		return frame;
+	private void overlayFrame(Camera camera, Mat frame) {
+		Utils.drawGrid(frame, 10, gridColor, camera.tl, camera.br);
 	}
 
 	/**
-	 * Draws a grid over the screen
+	 * Detects faces in a frame and highlights them. Called by the detection
+	 * pool, possibly for several cameras at once.
 	 * 
+	 * @param camera
+	 *            The camera the frame came from.
+	 * @param input
+	 *            The <code>Frame</code> from which faces are extracted. The
+	 *            coordinates of the detected face are stored in it.
 	 */
-	private void overlayFrame(Mat frame) {
-		int spacing = 10;
-		int width = frame.cols() / spacing;
-		int height = frame.rows() / spacing;
-
-		for (int x = 0; x < width - 1; x++) {
-			Imgproc.line(frame, new Point(x * spacing, 0), new Point(x * spacing, height * spacing),
-					new Scalar(64, 64, 64, 64));
-		}
-		for (int y = 0; y < height - 1; y++) {
-			Imgproc.line(frame, new Point(0, y * spacing), new Point(width * spacing, y * spacing),
-					new Scalar(64, 64, 64, 64));
-		}
+	private void detectAndDisplay(Camera camera, Frame input) {
+		Mat frame = input.image;
+
+		// Find all faces in the frame, either with the classifier or by
+		// tracking the last one found, and highlight them
+		final int faceCount = camera.faceDetector.detect(input);
+		input.detectTime = System.nanoTime();
+		Utils.drawFaces(frame, input.rects, faceCount, faceColor, camera.tl, camera.br, camera.center);
+
+		this.follower.update(input, faceCount);
+		this.metrics.record(input);
+		Main.startup.tracked();
+		this.overlayFrame(camera, frame);
 	}
 
 	/**
-	 * Detects faces in a frame and highlights them.
-	 * 
-	 * @param frame
-	 *            The <code>Mat</code> from which faces are extracted.
+	 * Appends the lines logged since the last update to the log box, and
+	 * removes the oldest lines once it holds more than {@link #LOG_LINES}.
+	 * Runs on the FX thread.
 	 */
-	private void detectAndDisplay(Mat frame) {
-		// Get variables ready for face detection
-		MatOfRect faces = new MatOfRect();
-		Mat grayFrame = new Mat();
-
-		// Color to gray scale
-		Imgproc.cvtColor(frame, grayFrame, Imgproc.COLOR_BGR2GRAY);
-		// make face detecting easier
-		Imgproc.equalizeHist(grayFrame, grayFrame);
-
-		// Compute the face size needed for detection
-		if (this.absoluteFaceSize == 0) {
-			int height = grayFrame.rows();
-			if (Math.round(facePortion * height) > 0) {
-				this.absoluteFaceSize = Math.round(facePortion * height);
-			}
-		}
-
-		// Find all faces in the frame
-		this.faceCascade.detectMultiScale(grayFrame, faces, 1.1, 2, 0 | Objdetect.CASCADE_SCALE_IMAGE,
-				new Size(this.absoluteFaceSize, this.absoluteFaceSize), new Size());
-
-		// Store the rectangle outlines of each face into this array
-		final Rect[] facesArray = faces.toArray();
-
-		// Draw a rectangle around each face
-		for (int i = 0; i < facesArray.length; i++) {
-			Point tl = new Point(10 * ((int) facesArray[i].tl().x / 10), 10 * ((int) facesArray[i].tl().y / 10));
-			Point br = new Point(10 * ((int) facesArray[i].br().x / 10), 10 * ((int) facesArray[i].br().y / 10));
-			Imgproc.rectangle(frame, tl, br, new Scalar(0, 0, 255, 255), 2);
-		}
-
-		// Store the coordinates of the center of the first detected face (if
-		// any) in two text fields
-		for (int i = 0; i < facesArray.length; i++) {
-			Rect face = facesArray[i];
-
-			Point tl = face.tl();
-			Point br = face.br();
-
-			double xPos = tl.x + ((br.x - tl.x) / 2);
-			double yPos = tl.y + ((br.y - tl.y) / 2);
-
-			this.x.setText("" + (int) xPos / 10);
-			this.y.setText("" + (int) yPos / 10);
-
-			// Focus on the center of the face
-			Imgproc.circle(frame, new Point(xPos, yPos), 1, new Scalar(0, 0, 255, 255), 2);
-
-			// Send new coordinates to the Arduino
-			if (Math.abs(xPos - prevX) > TOLERANCE || Math.abs(yPos - prevY) > TOLERANCE) {
-				this.arduino.sendCoordinates(xPos, yPos);
-				prevX = xPos;
-				prevY = yPos;
-			}
-		}
-
-		if (facesArray.length < 1 && (prevX != -1 || prevY != -1)) {
-			prevX = -1;
-			prevY = -1;
-			this.arduino.sendCoordinates(-1, -1);
+	private void updateLog() {
+		this.logText.setLength(0);
+		long cursor = Main.log.read(this.logCursor, this.logText, LOG_LINES);
+		if (cursor == this.logCursor && this.logText.length() == 0)
+			return;
+		this.logCursor = cursor;
+		this.logBox.appendText(this.logText.toString());
+		for (int i = 0; i < this.logText.length(); i++)
+			if (this.logText.charAt(i) == '\n')
+				this.logLines++;
+		if (this.logLines > LOG_LINES) {
+			String text = this.logBox.getText();
+			int end = 0;
+			for (; this.logLines > LOG_LINES && end >= 0; this.logLines--)
+				end = text.indexOf('\n', end) + 1;
+			this.logBox.deleteText(0, end);
 		}
-
-		// If there has been a long enough delay between clips, play another
-		// clip if a target was found/lost
-		if (this.autopilot && this.clip == null || !this.clip.isActive()) {
-			this.previous = this.found;
-			this.found = facesArray.length > 0;
-			if (this.found != this.previous) {
-				System.out.println("INFO: FACE " + (this.found ? "DETECTED." : "LOST."));
-				if (this.found)
-					this.playClip(this.activeSounds + (new Random().nextInt(this.activeSoundsInt) + 1));
-				else
-					this.playClip(this.searchSounds + (new Random().nextInt(this.searchSoundsInt) + 1));
-			}
-		}
-		this.overlayFrame(frame);
+		this.logBox.setScrollTop(Double.MAX_VALUE);
 	}
 
 	/**
@@ -416,140 +459,172 @@ public class FaceTrackingController {
 	}
 
 	/**
-	 * Handles playing .wav files when the play button is pressed
+	 * Shows the coordinates of a face in the coordinate text fields. Called
+	 * by the render stage, so nothing is allocated: only the latest
+	 * coordinates are shown, and only the ones that changed are turned into
+	 * text.
+	 * 
+	 * @param xPos
+	 *            The x coordinate of the center of the face.
+	 * @param yPos
+	 *            The y coordinate of the center of the face.
 	 */
-	@FXML
-	protected void playSound() {
-		String sound = soundComboBox.getValue();
-		playClip(sound);
+	private void updateCoordinates(double xPos, double yPos) {
+		this.coordX = (int) xPos / 10;
+		this.coordY = (int) yPos / 10;
+		if (this.coordinatesPending.compareAndSet(false, true))
+			Platform.runLater(this.showCoordinates);
 	}
 
-	private void playClip(String sound) {
-		// If there is already something playing, stop it first
-		if (this.clip != null && this.clip.isActive()) {
-			this.clip.stop();
-			if (this.progressUpdateTimer != null)
-				this.progressUpdateTimer.cancel();
+	/**
+	 * Shows the frame rate of each camera, how many frames missed their
+	 * deadline and how many pixels the classifiers scanned for the latest
+	 * frames, and with the latency of each stage, how long each classifier
+	 * of the ensemble takes while it is in use. At most every
+	 * {@link #STATS_INTERVAL} millis. Called by the render stage of every
+	 * camera.
+	 */
+	private void updateStats() {
+		long now = System.currentTimeMillis();
+		// Called by the render stage of every camera
+		synchronized (this.cameras) {
+			if (now - this.lastStatsUpdate < STATS_INTERVAL)
+				return;
+			this.lastStatsUpdate = now;
 		}
+		StringBuilder fps = new StringBuilder();
+		long skipped = 0, overruns = 0, dropped = 0, scanned = 0, averageScanned = 0;
+		for (Camera camera : this.cameras) {
+			FramePipeline pipeline = camera.pipeline;
+			if (pipeline == null)
+				continue;
+			FrameScheduler scheduler = pipeline.getScheduler();
+			if (fps.length() > 0)
+				fps.append(" + ");
+			fps.append(String.format("%.1f", scheduler.getFps()));
+			skipped += scheduler.getSkippedFrames();
+			overruns += scheduler.getOverruns();
+			dropped += pipeline.getDroppedFrames();
+			scanned += camera.faceDetector.getLastPixelsScanned();
+			averageScanned += camera.faceDetector.getAveragePixelsScanned();
+		}
+		final String stats = String.format("%s FPS | %d SKIPPED | %d OVERRUN | %d DROPPED | %d PX SCANNED (AVG %d)",
+				fps, skipped, overruns, dropped, scanned, averageScanned);
+		StringBuilder latency = new StringBuilder(this.metrics.toString());
+		if (this.ensembleActive)
+			for (EnsembleDetector.Member member : this.ensembleDetector.getMembers())
+				latency.append(String.format(" | %s %.1f MS", member.getName().toUpperCase(),
+						member.getAverageMillis()));
+		final String latencies = latency.toString();
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				pipelineStats.setText(stats);
+				latencyStats.setText(latencies);
+			}
+		});
+	}
 
-		if (sound != null)
-			try {
-				// Load the sound file
-				this.clip = AudioSystem.getClip();
-				InputStream is = new BufferedInputStream(
-						ClassLoader.getSystemClassLoader().getResourceAsStream("sounds/" + sound + ".wav"));
-				AudioInputStream inputStream = AudioSystem.getAudioInputStream(is);
-				this.clip.open(inputStream);
-
-				// Set volume level
-				try {
-					FloatControl gainControl = (FloatControl) this.clip.getControl(FloatControl.Type.MASTER_GAIN);
-					gainControl.setValue(((float) (this.volumeSlider.getValue() / 100.0f) * this.range) + this.minVol);
-				} catch (IllegalArgumentException e) {
-					e.printStackTrace();
-				}
-
-				// Length of the sound file
-				final long frames = inputStream.getFrameLength();
-
-				// This will update the progress bar to reflect the sound file
-				this.progressUpdateTimer = new Timer();
-				this.progressUpdateTimer.scheduleAtFixedRate(new TimerTask() {
-					@Override
-					public void run() {
-						long pos = clip.getLongFramePosition();
-						progressBar.setProgress((pos * 100.0f / frames) / 100.0d);
-					}
-				}, 0, 10);
+	/**
+	 * Builds the grammar the voice commands are recognized with. Commands
+	 * that stop the turret or start it moving need more confidence than
+	 * switching between detectors.
+	 * 
+	 * @return The grammar of every command.
+	 */
+	public static CommandGrammar commandGrammar() {
+		return new CommandGrammar().add(COMMAND_HAAR, 0.5).add(COMMAND_LBP, 0.5).add(COMMAND_ENSEMBLE, 0.5)
+				.add(COMMAND_RETIRE, 0.7).add(COMMAND_AUTOPILOT, 0.7).add(COMMAND_ACTIVATE, 0.8)
+				.add(COMMAND_SHUTDOWN, 0.8);
+	}
 
-				// Stop the timer when the clip has finished playing
-				this.clip.addLineListener(new LineListener() {
-					@Override
-					public void update(LineEvent e) {
-						if (e.getType() == LineEvent.Type.STOP) {
-							progressUpdateTimer.cancel();
-							progressBar.setProgress(0.0d);
-						}
-					}
-				});
+	/**
+	 * Handles playing .wav files when the play button is pressed
+	 */
+	@FXML
+	protected void playSound() {
+		String sound = soundComboBox.getValue();
+		this.sounds.play(sound);
+	}
 
-				System.out.println("INFO: PLAYING " + sound.toUpperCase() + ".");
+	/**
+	 * Gives a command by its phrase, e.g. from a button. Never blocks.
+	 * 
+	 * @param command
+	 *            The phrase of the command.
+	 */
+	public void processCommand(String command) {
+		this.processCommand(command, System.nanoTime());
+	}
 
-				// Finally, start the actual sound
-				this.clip.start();
-			} catch (Exception e) {
-				System.err.println("FAILED TO PLAY CLIP");
-				e.printStackTrace();
-			}
+	/**
+	 * Gives a voice command, to be applied by the command bus. Never blocks.
+	 * 
+	 * @param phrase
+	 *            The phrase heard.
+	 * @param heardAt
+	 *            When the phrase was heard, from {@link System#nanoTime()}.
+	 */
+	public void processCommand(String phrase, long heardAt) {
+		Command command = Command.parse(phrase);
+		if (command != null)
+			this.commands.post(command, heardAt);
 	}
 
 	/**
-	 * Processes voice commands
+	 * Applies a command. Only called from the command bus, one command at a
+	 * time, so it is the only thread changing what the pipelines read.
 	 */
-	public void processCommand(String command) {
+	private void applyCommand(Command command) {
 		switch (command) {
-		case COMMAND_AUTOPILOT:
-			this.autopilot = !this.autopilot;
-			System.out.println("INFO: TOGGLING AUTOPILOT " + (this.autopilot ? "ON." : "OFF."));
+		case TOGGLE_AUTOPILOT:
+			boolean autopilot = !this.follower.isAutopilot();
+			this.follower.setAutopilot(autopilot);
+			System.out.println("INFO: TOGGLING AUTOPILOT " + (autopilot ? "ON." : "OFF."));
 			break;
-		case COMMAND_ACTIVATE:
+		case ACTIVATE:
 			System.out.println("INFO: ACTIVATING.");
-			playClip(this.autoSearchSounds + (new Random().nextInt(this.autoSearchSoundsInt) + 1));
-
-			if (!this.capture.isOpened())
-				Platform.runLater(new Runnable() {
-					@Override
-					public void run() {
-						startCamera();
-					}
-				});
-			break;
-		case COMMAND_SHUTDOWN:
-			System.out.println("INFO: SHUTTING DOWN.");
-			playClip(this.disabledSounds + (new Random().nextInt(this.disabledSoundsInt) + 1));
-
-			if (this.capture.isOpened())
-				Platform.runLater(new Runnable() {
-					@Override
-					public void run() {
-						stopAcquisition();
-					}
-				});
-			break;
-		case COMMAND_HAAR:
-			System.out.println("INFO: BEGINNING FACE TRACKING PROCESSES.");
-			playClip(this.autoSearchSounds + (new Random().nextInt(this.autoSearchSoundsInt) + 1));
+			this.sounds.playRandom(SoundPlayer.AUTO_SEARCH);
 
 			Platform.runLater(new Runnable() {
 				@Override
 				public void run() {
-					toggleFaceDetection(HAAR);
+					if (!cameraActive)
+						startCamera();
 				}
 			});
 			break;
-		case COMMAND_LBP:
-			System.out.println("INFO: BEGINNING FACE TRACKING PROCESSES.");
-			playClip(this.autoSearchSounds + (new Random().nextInt(this.autoSearchSoundsInt) + 1));
+		case SHUTDOWN:
+			System.out.println("INFO: SHUTTING DOWN.");
+			this.sounds.playRandom(SoundPlayer.DISABLED);
 
 			Platform.runLater(new Runnable() {
 				@Override
 				public void run() {
-					toggleFaceDetection(LBP);
+					if (cameraActive)
+						stopAcquisition();
 				}
 			});
 			break;
-		case COMMAND_RETIRE:
-			System.out.println("INFO: HALTING FACE TRACKING PROCESSES.");
-			playClip(this.retireSounds + (new Random().nextInt(this.retireSoundsInt) + 1));
-
-			Platform.runLater(new Runnable() {
-				@Override
-				public void run() {
-					toggleFaceDetection(OFF);
-				}
-			});
+		case SEARCH_HAAR:
+			System.out.println("INFO: BEGINNING FACE TRACKING PROCESSES.");
+			this.sounds.playRandom(SoundPlayer.AUTO_SEARCH);
+			this.toggleFaceDetection(HAAR);
 			break;
-		default:
+		case SEARCH_LBP:
+			System.out.println("INFO: BEGINNING FACE TRACKING PROCESSES.");
+			this.sounds.playRandom(SoundPlayer.AUTO_SEARCH);
+			this.toggleFaceDetection(LBP);
+			break;
+		case SEARCH_ENSEMBLE:
+			System.out.println("INFO: BEGINNING ENSEMBLE TRACKING PROCESSES.");
+			this.sounds.playRandom(SoundPlayer.AUTO_SEARCH);
+			this.toggleFaceDetection(ENSEMBLE);
+			break;
+		case RETIRE:
+			System.out.println("INFO: HALTING FACE TRACKING PROCESSES.");
+			this.sounds.playRandom(SoundPlayer.RETIRE);
+			this.toggleFaceDetection(OFF);
 			break;
 		}
 	}
@@ -557,6 +632,11 @@ public class FaceTrackingController {
 	/**
 	 * Handles initialization of the scene. Only called once when the program
 	 * starts up.
+	 * <p>
+	 * The window is ready as soon as this returns. The turrets, sounds,
+	 * classifiers and speech recognizer start in the background, and the
+	 * cameras are set up once the native library, which has been loading
+	 * since launch, is ready.
 	 */
 	protected void init(Stage primaryStage) {
 		// Call the ClassLoader
@@ -564,10 +644,22 @@ public class FaceTrackingController {
 
 		// Initialize variables
 		stage = primaryStage;
-		this.capture = new VideoCapture();
-		this.faceCascade = new CascadeClassifier();
-		this.absoluteFaceSize = 0;
-		this.vcc = new VoiceCommandController();
+		final Startup startup = Main.startup;
+		// Shows how far along startup is until the cameras report instead
+		startup.setListener(new Startup.Listener() {
+			@Override
+			public void stateChanged(Startup.Subsystem subsystem, Startup.State state) {
+				final String text = startup.toString();
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if (!cameraActive)
+							pipelineStats.setText(text);
+					}
+				});
+			}
+		});
+		this.vcc = new VoiceCommandController(commandGrammar());
 		this.vcc.addCommandListener(this);
 		this.titleBar.setOnMousePressed(new EventHandler<MouseEvent>() {
 			@Override
@@ -583,48 +675,18 @@ public class FaceTrackingController {
 				FaceTrackingController.stage.setY(event.getScreenY() + yOffset);
 			}
 		});
-		Timer logUpdater = new Timer();
-		final int characters = logBox.getPrefRowCount() * logBox.getPrefColumnCount();
-		logUpdater.scheduleAtFixedRate(new TimerTask() {
+		// Runs on the FX thread
+		Timeline logUpdater = new Timeline(new KeyFrame(Duration.millis(LOG_INTERVAL), new EventHandler<ActionEvent>() {
 			@Override
-			public void run() {
-				if (Main.streamLog != null) {
-					String log = Main.streamLog.toString();
-
-					if (log.length() > characters) {
-						log = log.substring(characters);
-					}
-
-					if (!logBox.getText().equals(log)) {
-						logBox.setText(log);
-						logBox.setScrollTop(Double.MAX_VALUE);
-					}
-				}
+			public void handle(ActionEvent event) {
+				updateLog();
 			}
-		}, 0, 100);
-		this.arduino = new ArduinoCommunicator(); // PORT
-		try {
-			if (this.arduino.connect(PORT)) {
-				this.serialPort.setText("\u3014TURRET_0\u3015 ACTIVE ON \u00abCOM1\u00bb");
-			} else {
-				this.serialPort.setText("\u3014TURRET_0\u3015 NOT ACTIVE");
-			}
-		} catch (Exception e) {
-			this.serialPort.setText("\u3014TURRET_0\u3015 NOT ACTIVE");
-			e.printStackTrace();
-		}
+		}));
+		logUpdater.setCycleCount(Timeline.INDEFINITE);
+		logUpdater.play();
 
-		// Set the Capture Frame to the Aperture logo, or a black screen
-		try {
-			this.updateImageView(this.currentFrame,
-					new Image(ClassLoader.getSystemClassLoader().getResourceAsStream("images/aperture_science.jpg")));
-		} catch (Exception e) {
-			System.err.println("FAILED TO FIND CORRECT BACKGROUND IMAGE");
-			e.printStackTrace();
-			Mat blackFrame = new Mat(480, 640, CvType.CV_8U);
-			blackFrame.setTo(new Scalar(0, 0, 0, 255));
-			this.updateImageView(this.currentFrame, Utils.mat2Image(blackFrame));
-		}
+		// Set the Capture Frame to the Aperture logo, decoded in the background
+		this.showBackground();
 
 		// Setup buttons
 		try {
@@ -645,71 +707,180 @@ public class FaceTrackingController {
 			playButton.setText("||>");
 		}
 
-		// Fill combo box
-		final String path = "sounds/";
-		final File jarFile = new File(getClass().getProtectionDomain().getCodeSource().getLocation().getPath());
-		if (jarFile.isFile()) { // Jar File
-			try {
-				final JarFile jar = new JarFile(jarFile);
-				final Enumeration<JarEntry> entries = jar.entries();
-				while (entries.hasMoreElements()) {
-					final String name = entries.nextElement().getName();
-					if (name.startsWith(path) && !name.equals(path))
-						this.soundComboBox.getItems().add(name.substring(path.length(), name.indexOf(".")));
-				}
-				jar.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		} else { // IDE
-			File file = new File(this.soundPath);
-			for (File sound : file.listFiles()) {
-				this.soundComboBox.getItems().add(sound.getName().substring(0, sound.getName().indexOf(".")));
-			}
-		}
+		// Fill combo box from the manifest bundled with the sounds
+		this.soundComboBox.getItems().addAll(Main.manifest.getSounds());
 
 		// Set recommended volume
 		this.volumeSlider.setValue(85.0f);
+		this.volumeSlider.valueProperty().addListener(new ChangeListener<Number>() {
+			@Override
+			public void changed(ObservableValue<? extends Number> observable, Number oldValue, Number newValue) {
+				sounds.setVolume(newValue.doubleValue());
+			}
+		});
+		this.sounds.setProgressListener(new SoundPlayer.ProgressListener() {
+			@Override
+			public void progress(final double progress) {
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						progressBar.setProgress(progress);
+					}
+				});
+			}
+		});
+		this.serialPort.setText("CONNECTING TO \u00ab" + String.join(", ", ports) + "\u00bb...");
+		startup.set(Startup.Subsystem.INTERFACE, Startup.State.READY);
 
+		// Opening a Serial Port can take seconds, so the turrets are
+		// connected in the background
+		startup.start(Startup.Subsystem.TURRETS, new Runnable() {
+			@Override
+			public void run() {
+				connectTurrets();
+			}
+		});
+		startup.start(Startup.Subsystem.SOUNDS, new Runnable() {
+			@Override
+			public void run() {
+				sounds.preload();
+			}
+		});
 		// Start voice command recognizing on a separate thread (infinite loop)
 		voiceCommands = new Thread(new Runnable() {
 			@Override
 			public void run() {
-				vcc.init();
-				vcc.start();
+				if (startup.perform(Startup.Subsystem.VOICE, new Runnable() {
+					@Override
+					public void run() {
+						vcc.init();
+					}
+				}))
+					vcc.start();
 			}
-		});
+		}, "VOICE-COMMANDS");
 		voiceCommands.start();
+
+		// Everything that touches OpenCV needs the native library, so the
+		// cameras cannot be started until it has loaded. If it fails to load
+		// they never can
+		this.cameraButton.setDisable(true);
+		startup.whenSettled(Startup.Subsystem.NATIVE, new Startup.Listener() {
+			@Override
+			public void stateChanged(Startup.Subsystem subsystem, final Startup.State state) {
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if (state == Startup.State.READY)
+							initTracking();
+					}
+				});
+			}
+		});
 	}
 
 	/**
-	 * Closes the stream to the connected webcam.
+	 * Sets up the classifiers, cameras and detection threads, and starts
+	 * applying commands. Called on the FX thread once the native library has
+	 * loaded.
 	 */
-	protected void stopAcquisition() {
-		System.out.println("INFO: STOPPING CAMERA.");
-		if (this.timer != null && !this.timer.isShutdown()) {
-			try {
-				this.timer.shutdown();
-				this.timer.awaitTermination(interval, TimeUnit.MILLISECONDS);
-			} catch (Exception e) {
-				System.err.println("FAILED TO STOP CAMERA TIMER");
-				e.printStackTrace();
+	private void initTracking() {
+		final Startup startup = Main.startup;
+		this.frameSink = new MatImageSink(this.currentFrame);
+		this.frameSink.setMetrics(this.metrics);
+		this.turrets.setMetrics(this.metrics);
+		this.metrics.register();
+		this.cascades = new CascadeRegistry(ResourceManifest.root(), LOADED_CASCADES);
+		startup.start(Startup.Subsystem.CASCADES, new Runnable() {
+			@Override
+			public void run() {
+				if (cascades.get(haarClassifier) == null || cascades.get(lbpClassifier) == null)
+					throw new IllegalStateException("Missing face classifiers");
 			}
+		});
+		this.cameras = new Camera[cameraSources.length];
+		for (int i = 0; i < this.cameras.length; i++)
+			this.cameras[i] = new Camera(i, cameraSources[i], this.facePortion);
+		this.detectionThreads = Runtime.getRuntime().availableProcessors() - 2;
+		if (this.detectionThreads > 1) {
+			this.parallelDetector = new ParallelDetector(detectionThreads);
+			for (Camera camera : this.cameras)
+				camera.faceDetector.setParallelDetector(this.parallelDetector);
 		}
-		if (this.capture.isOpened()) {
-			this.capture.release();
+		// One detection thread per camera, as far as the cores allow
+		this.detectionPool = new DetectionPool(Math.max(1, Math.min(this.cameras.length, this.detectionThreads)));
+		this.detectionPool.start();
+		// Commands given while starting up are applied from here on
+		this.commands.start();
+		this.cameraButton.setDisable(false);
+	}
+
+	/**
+	 * Connects a turret on every Serial Port and shows which are active. Runs
+	 * on a startup thread.
+	 */
+	private void connectTurrets() {
+		StringBuilder status = new StringBuilder();
+		this.turrets.setProtocol(protocol);
+		for (String port : ports) {
+			Turret turret = this.turrets.connect(port);
+			if (status.length() > 0)
+				status.append("  ");
+			status.append("\u3014" + turret.getArduino().getName() + "\u3015 ");
+			status.append(turret.isConnected() ? "ACTIVE ON \u00ab" + port + "\u00bb" : "NOT ACTIVE");
 		}
+		final String text = status.toString();
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				serialPort.setText(text);
+			}
+		});
+	}
 
+	/**
+	 * Shows the Aperture logo in the Capture Frame, or a black screen if it
+	 * cannot be found.
+	 */
+	private void showBackground() {
 		try {
-			this.updateImageView(this.currentFrame,
-					new Image(ClassLoader.getSystemClassLoader().getResourceAsStream("images/aperture_science.jpg")));
+			this.updateImageView(this.currentFrame, new Image(
+					ClassLoader.getSystemClassLoader().getResource("images/aperture_science.jpg").toExternalForm(),
+					true));
 		} catch (Exception e) {
 			System.err.println("FAILED TO FIND CORRECT BACKGROUND IMAGE");
 			e.printStackTrace();
-			Mat blackFrame = new Mat(480, 640, CvType.CV_8U);
-			blackFrame.setTo(new Scalar(0, 0, 0, 255));
-			this.updateImageView(this.currentFrame, Utils.mat2Image(blackFrame));
+			// Drawn with OpenCV once it has loaded, if it does
+			Main.startup.whenSettled(Startup.Subsystem.NATIVE, new Startup.Listener() {
+				@Override
+				public void stateChanged(Startup.Subsystem subsystem, Startup.State state) {
+					if (state != Startup.State.READY)
+						return;
+					Mat blackFrame = new Mat(480, 640, CvType.CV_8U);
+					blackFrame.setTo(new Scalar(0, 0, 0, 255));
+					updateImageView(currentFrame, Utils.mat2Image(blackFrame));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Closes the streams to the connected webcams.
+	 */
+	protected void stopAcquisition() {
+		System.out.println("INFO: STOPPING CAMERA.");
+		for (Camera camera : this.cameras) {
+			if (camera.pipeline != null)
+				System.out.println("INFO: CLASSIFIER SCANNED " + camera.faceDetector.getAveragePixelsScanned()
+						+ " PIXELS PER FRAME ON CAMERA " + camera.source + ".");
+			camera.stop();
 		}
+		if (this.cameraActive && this.ensembleDetector != null)
+			for (EnsembleDetector.Member member : this.ensembleDetector.getMembers())
+				System.out.println(String.format("INFO: %s TOOK %.1f MS, %d DETECTIONS.",
+						member.getName().toUpperCase(), member.getAverageMillis(), member.getDetections()));
+
+		this.showBackground();
 
 		this.cameraActive = false;
 		this.cameraButton.setText("Start Camera");
@@ -720,12 +891,17 @@ public class FaceTrackingController {
 	 */
 	@FXML
 	protected void onStop() {
+		this.commands.shutdown();
 		stopAcquisition();
-		if (this.clip != null && this.clip.isActive()) {
-			this.clip.stop();
-			if (progressUpdateTimer != null)
-				progressUpdateTimer.cancel();
-		}
+		if (this.parallelDetector != null)
+			this.parallelDetector.shutdown();
+		if (this.ensembleDetector != null)
+			this.ensembleDetector.shutdown();
+		if (this.detectionPool != null)
+			this.detectionPool.shutdown();
+		this.turrets.disconnect();
+		this.metrics.unregister();
+		this.sounds.stop();
 		vcc.stop();
 		// TODO Get Thread.interrupt() to work.
 		System.exit(0);
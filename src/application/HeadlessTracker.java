@@ -0,0 +1,261 @@
+package application;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+import org.opencv.core.Core;
+
+import arduino.ArduinoCommunicator;
+import arduino.TurretManager;
+import audio.SoundPlayer;
+import metrics.PipelineMetrics;
+import tracking.CascadeRegistry;
+import tracking.DetectionPool;
+import tracking.Frame;
+import tracking.FramePipeline;
+import tracking.FrameSource;
+import tracking.ParallelDetector;
+
+/**
+ * Runs the turret without a screen: frames are captured, faces detected, the
+ * turrets aimed and sounds played, but the JavaFX toolkit is never started and
+ * nothing is drawn or converted for display. The frame rate and the share of
+ * the CPU used are logged at a fixed interval, with the latency of each stage
+ * a frame passes through.
+ * <p>
+ * The turrets are connected and the sounds decoded in the background while
+ * the cameras start, so tracking begins as soon as the classifier is loaded.
+ * <p>
+ * Usage: <code>HeadlessTracker [cam,cam,...] [port,port,...] [recorded|fast] [ascii|binary]</code>, or
+ * <code>-headless t</code> on the main program.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class HeadlessTracker {
+
+	// The longest a frame may take from capture to the turrets, in millis
+	private static final int FRAME_DEADLINE = 100;
+	// Time in millis between reports of the frame rate and CPU use
+	private static final int REPORT_INTERVAL = 5000;
+	// The number of cascade classifiers kept loaded
+	private static final int LOADED_CASCADES = 2;
+	// The classifier trained to detect faces
+	private static final String CLASSIFIER = "haarcascades/haarcascade_frontalface_alt.xml";
+	// The minimum portion of the frame a face must take up to be detected
+	private static final float FACE_PORTION = 0.2f;
+
+	private final String[] cameraSources, ports;
+	private final FrameSource.Pacing pacing;
+	private final ArduinoCommunicator.Protocol protocol;
+	private final TurretManager turrets = new TurretManager();
+	private final Startup startup;
+	private final SoundPlayer sounds = new SoundPlayer(ResourceManifest.load().getCategories());
+	// Without a window or voice commands to switch it on, always on autopilot
+	private final TargetFollower follower = new TargetFollower(this.turrets, this.sounds, true);
+	private final PipelineMetrics metrics = new PipelineMetrics();
+	private Camera[] cameras;
+	private DetectionPool detectionPool;
+	private ParallelDetector parallelDetector;
+
+	/**
+	 * @param cameraSources
+	 *            The indices of the cameras, or paths of video files.
+	 * @param ports
+	 *            The Serial Ports the turrets are connected to.
+	 * @param pacing
+	 *            How fast recordings standing in for cameras are replayed.
+	 * @param protocol
+	 *            How coordinates are written to the turrets.
+	 * @param startup
+	 *            Tracks the subsystems as they start, with the native library
+	 *            already loaded or loading.
+	 */
+	public HeadlessTracker(String[] cameraSources, String[] ports, FrameSource.Pacing pacing,
+			ArduinoCommunicator.Protocol protocol, Startup startup) {
+		this.cameraSources = cameraSources;
+		this.ports = ports;
+		this.pacing = pacing;
+		this.protocol = protocol;
+		this.startup = startup;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		Startup startup = new Startup();
+		if (!startup.perform(Startup.Subsystem.NATIVE, new Runnable() {
+			@Override
+			public void run() {
+				loadOpenCV();
+			}
+		}))
+			return;
+		new HeadlessTracker(args.length > 0 ? args[0].split(",") : new String[] { "0" },
+				args.length > 1 ? args[1].split(",") : new String[] { "COM1" },
+				args.length > 2 ? FrameSource.Pacing.valueOf(args[2].toUpperCase()) : FrameSource.Pacing.RECORDED,
+				args.length > 3 ? ArduinoCommunicator.Protocol.valueOf(args[3].toUpperCase())
+						: ArduinoCommunicator.Protocol.ASCII,
+				startup).run();
+	}
+
+	/**
+	 * Loads the OpenCV native library from the class path root, or from the
+	 * library path if it is not bundled there.
+	 */
+	static void loadOpenCV() {
+		loadOpenCV(ResourceManifest.root());
+	}
+
+	/**
+	 * Loads the OpenCV native library from a directory, or from the library
+	 * path if it is not there. The file is named the way the system names
+	 * libraries, e.g. <code>opencv_java320.dll</code> on Windows and
+	 * <code>libopencv_java320.so</code> on Linux.
+	 *
+	 * @param directory
+	 *            The directory the library may be bundled in.
+	 */
+	public static void loadOpenCV(String directory) {
+		File bundled = new File(directory, System.mapLibraryName(Core.NATIVE_LIBRARY_NAME));
+		if (bundled.isFile())
+			System.load(bundled.getAbsolutePath());
+		else
+			System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+	}
+
+	/**
+	 * Tracks faces until the program is stopped.
+	 */
+	public void run() throws InterruptedException {
+		System.out.println("INFO: RUNNING HEADLESS.");
+		this.turrets.setMetrics(this.metrics);
+		this.turrets.setProtocol(this.protocol);
+		this.metrics.register();
+		this.startup.start(Startup.Subsystem.TURRETS, new Runnable() {
+			@Override
+			public void run() {
+				for (String port : ports) {
+					TurretManager.Turret turret = turrets.connect(port);
+					System.out.println("INFO: " + turret.getArduino().getName() + " "
+							+ (turret.isConnected() ? "ACTIVE ON " + port : "NOT ACTIVE") + ".");
+				}
+			}
+		});
+		this.startup.start(Startup.Subsystem.SOUNDS, new Runnable() {
+			@Override
+			public void run() {
+				sounds.preload();
+			}
+		});
+
+		final CascadeRegistry cascades = new CascadeRegistry(ResourceManifest.root(), LOADED_CASCADES);
+		this.startup.perform(Startup.Subsystem.CASCADES, new Runnable() {
+			@Override
+			public void run() {
+				if (cascades.get(CLASSIFIER) == null)
+					throw new IllegalStateException("No classifier " + CLASSIFIER);
+			}
+		});
+		int detectionThreads = Runtime.getRuntime().availableProcessors() - 1;
+		if (detectionThreads > 1) {
+			this.parallelDetector = new ParallelDetector(detectionThreads);
+			// The workers' copies come after the cameras' copies
+			this.parallelDetector.setCascade(cascades.get(CLASSIFIER, this.cameraSources.length, detectionThreads));
+		}
+		this.cameras = new Camera[this.cameraSources.length];
+		this.detectionPool = new DetectionPool(Math.max(1, Math.min(this.cameras.length, detectionThreads)));
+		this.detectionPool.start();
+
+		FramePipeline.FrameProcessor idle = new FramePipeline.FrameProcessor() {
+			@Override
+			public void process(Frame frame) {
+			}
+		};
+		for (int i = 0; i < this.cameras.length; i++) {
+			final Camera camera = new Camera(i, this.cameraSources[i], FACE_PORTION);
+			this.cameras[i] = camera;
+			// A classifier can only be used by one thread at a time
+			camera.faceDetector.setCascade(cascades.path(CLASSIFIER), cascades.get(CLASSIFIER, i));
+			camera.faceDetector.setParallelDetector(this.parallelDetector);
+			FramePipeline.FrameProcessor detector = new FramePipeline.FrameProcessor() {
+				@Override
+				public void process(Frame frame) {
+					int faceCount = camera.faceDetector.detect(frame);
+					frame.detectTime = System.nanoTime();
+					follower.update(frame, faceCount);
+					metrics.record(frame);
+					startup.tracked();
+				}
+			};
+			camera.start(detector, idle, FRAME_DEADLINE, this.detectionPool, this.pacing);
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				stop();
+			}
+		}, "HEADLESS-SHUTDOWN"));
+		this.sounds.playRandom(SoundPlayer.AUTO_SEARCH);
+		this.report();
+	}
+
+	/**
+	 * Logs the frame rate of each camera and the CPU used by the program over
+	 * each interval, until interrupted.
+	 */
+	private void report() throws InterruptedException {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		com.sun.management.OperatingSystemMXBean process = os instanceof com.sun.management.OperatingSystemMXBean
+				? (com.sun.management.OperatingSystemMXBean) os : null;
+		int cores = os.getAvailableProcessors();
+		long lastCpu = process != null ? process.getProcessCpuTime() : 0;
+		long lastTime = System.nanoTime();
+		long lastDetected = this.detectionPool.getDetectedFrames();
+		while (!Thread.currentThread().isInterrupted()) {
+			Thread.sleep(REPORT_INTERVAL);
+			long now = System.nanoTime();
+			long detected = this.detectionPool.getDetectedFrames();
+			StringBuilder fps = new StringBuilder();
+			long scanned = 0;
+			for (Camera camera : this.cameras) {
+				if (camera.pipeline == null)
+					continue;
+				if (fps.length() > 0)
+					fps.append(" + ");
+				fps.append(String.format("%.1f", camera.pipeline.getScheduler().getFps()));
+				scanned += camera.faceDetector.getLastPixelsScanned();
+			}
+			String cpu = "UNKNOWN";
+			if (process != null) {
+				long cpuTime = process.getProcessCpuTime();
+				cpu = String.format("%.1f%% OF %d CORES", 100.0 * (cpuTime - lastCpu) / ((now - lastTime) * cores),
+						cores);
+				lastCpu = cpuTime;
+			}
+			System.out.println(String.format("INFO: %s FPS | %.1f DETECTIONS/S | %d PX SCANNED | CPU %s", fps,
+					(detected - lastDetected) * 1e9 / (now - lastTime), scanned, cpu));
+			System.out.println(this.metrics);
+			lastTime = now;
+			lastDetected = detected;
+		}
+	}
+
+	/**
+	 * Stops the cameras and disconnects the turrets.
+	 */
+	private void stop() {
+		System.out.println("INFO: STOPPING.");
+		for (Camera camera : this.cameras) {
+			if (camera == null)
+				continue;
+			camera.stop();
+		}
+		this.detectionPool.shutdown();
+		if (this.parallelDetector != null)
+			this.parallelDetector.shutdown();
+		this.sounds.stop();
+		this.turrets.disconnect();
+		this.metrics.unregister();
+	}
+}
@@ -1,11 +1,10 @@
 package application;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.PrintStream;
 import java.util.Random;
 
-import org.opencv.core.Core;
-
+import arduino.ArduinoCommunicator;
 import javafx.application.Application;
 import javafx.event.EventHandler;
 import javafx.fxml.FXMLLoader;
@@ -15,15 +14,25 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import javafx.stage.WindowEvent;
+import logging.LogOutputStream;
+import logging.LogRing;
+import tracking.FrameSource;
 
 public class Main extends Application {
 
 	static PrintStream stream;
-	static ByteArrayOutputStream streamLog = new ByteArrayOutputStream();
+	// The latest lines logged, shown in the program
+	static final LogRing log = new LogRing(1024);
+	// Tracks the subsystems as they start, side by side
+	static final Startup startup = new Startup();
+	// The bundled sounds, cascades and sound categories
+	static final ResourceManifest manifest = ResourceManifest.load();
 	// Controls where logs are displayed
 	// True = logs are shown in program
 	// False = logs are shown in console
 	private static boolean LOGGING = true, ERROR_LOGGING = false;
+	// True = track faces without the GUI
+	private static boolean HEADLESS = false;
 
 	private final String[] titles = { "BAKING CAKES", "RESETTING PORTALS", "PLACING CUBES", "TESTING GIANT BUTTONS",
 			"CALIBRATING TURRETS", "PROGRAMMING GLaDOS", "GATHERING TEST SUBJECTS", "APERTURE SCIENCE",
@@ -33,13 +42,21 @@ public class Main extends Application {
 
 	private final static String ERR_FLAG = "NAME\n\t-err : Log program warnings and errors\nOPTIONS\n\tT, t : Always display warnings and errors\n\n\tF, f : Do not display warnings and errors";
 
-	private final static String CAM_FLAG = "NAME\n\t-cam : Indicate the camera to be used\nOPTIONS\n\t[0..9] : The index of the desired camera. Typically, 0 is the built-in webcam (if one exists)";
+	private final static String CAM_FLAG = "NAME\n\t-cam : Indicate the camera to be used\nOPTIONS\n\t[0..9] : The index of the desired camera. Typically, 0 is the built-in webcam (if one exists)\n\n\t[path] : A video file or a directory of images to use in place of a camera\n\n\t[cam,cam,...] : Several cameras at once, separated by commas";
+
+	private final static String HEADLESS_FLAG = "NAME\n\t-headless : Run without a screen, skipping the GUI and all drawing\nOPTIONS\n\tT, t : Track faces without the GUI, logging the frame rate and CPU use to the console\n\n\tF, f : Show the GUI";
+
+	private final static String REPLAY_FLAG = "NAME\n\t-replay : Indicate how fast video files and image directories given to -cam are played\nOPTIONS\n\tR, r : At the pace they were recorded at, over and over\n\n\tF, f : As fast as possible, once, without dropping frames";
+
+	private final static String PORT_FLAG = "NAME\n\t-port : Indicate the Serial Ports turrets are connected to\nOPTIONS\n\t[port,port,...] : The names of the ports, separated by commas. Each port drives its own turret";
+
+	private final static String PROTOCOL_FLAG = "NAME\n\t-protocol : Indicate how coordinates are written to the turrets, which must match the sketch on their Arduinos\nOPTIONS\n\tA, a : As the text X<x>Y<y>, read by the original sketch\n\n\tB, b : As framed binary packets with a sequence number and checksum, acknowledged by the Arduino";
 
 	private final static String HELP_FLAG = "NAME\n\t-help : Displays information about a flag\nOPTIONS\n\t[flag name] : The desired flag";
 
 	private final static String LIST_FLAG = "NAME\n\t-list : Lists all available flags";
 
-	private final static String list = "log\terr\ncam\thelp\nlist";
+	private final static String list = "log\terr\ncam\treplay\nport\tprotocol\nheadless\thelp\nlist";
 
 	@Override
 	public void start(Stage primaryStage) {
@@ -81,7 +98,7 @@ public class Main extends Application {
 		if (arglen == 1 && args[0].equals("-list")) {
 			System.out.println(list);
 			System.exit(0);
-		} else if (arglen > 0 && arglen < 7 && arglen % 2 == 0) {
+		} else if (arglen > 0 && arglen < 15 && arglen % 2 == 0) {
 			for (int i = 0; i < arglen; i += 2) {
 				if (args[i].equals("-help")) {
 					switch (args[i + 1]) {
@@ -94,6 +111,18 @@ public class Main extends Application {
 					case "cam":
 						System.out.println(CAM_FLAG);
 						break;
+					case "replay":
+						System.out.println(REPLAY_FLAG);
+						break;
+					case "port":
+						System.out.println(PORT_FLAG);
+						break;
+					case "protocol":
+						System.out.println(PROTOCOL_FLAG);
+						break;
+					case "headless":
+						System.out.println(HEADLESS_FLAG);
+						break;
 					case "list":
 						System.out.println(LIST_FLAG);
 						break;
@@ -130,29 +159,85 @@ public class Main extends Application {
 						System.out.println(ERR_FLAG);
 						System.exit(2);
 					}
-				else if (args[i].equals("-cam"))
-					try {
-						int cam = Integer.parseInt(args[i + 1]);
-						FaceTrackingController.cameraID = cam;
-					} catch (NumberFormatException e) {
+				else if (args[i].equals("-cam")) {
+					String[] sources = args[i + 1].split(",");
+					// Each camera is an index, a video file or a directory
+					// of images
+					for (String source : sources)
+						if (!source.matches("\\d+") && !new File(source).isFile()
+								&& !new File(source).isDirectory()) {
+							System.err.println("INVALID CAMERA " + source + "\n");
+							System.out.println(CAM_FLAG);
+							System.exit(6);
+						}
+					FaceTrackingController.cameraSources = sources;
+				} else if (args[i].equals("-replay"))
+					if (args[i + 1].equalsIgnoreCase("r"))
+						FaceTrackingController.pacing = FrameSource.Pacing.RECORDED;
+					else if (args[i + 1].equalsIgnoreCase("f"))
+						FaceTrackingController.pacing = FrameSource.Pacing.FAST;
+					else {
 						System.err.println("INVALID FLAG\n");
-						System.out.println(CAM_FLAG);
+						System.out.println(REPLAY_FLAG);
+						System.exit(5);
+					}
+				else if (args[i].equals("-port"))
+					FaceTrackingController.ports = args[i + 1].split(",");
+				else if (args[i].equals("-protocol"))
+					if (args[i + 1].equalsIgnoreCase("a"))
+						FaceTrackingController.protocol = ArduinoCommunicator.Protocol.ASCII;
+					else if (args[i + 1].equalsIgnoreCase("b"))
+						FaceTrackingController.protocol = ArduinoCommunicator.Protocol.BINARY;
+					else {
+						System.err.println("INVALID FLAG\n");
+						System.out.println(PROTOCOL_FLAG);
+						System.exit(7);
+					}
+				else if (args[i].equals("-headless"))
+					if (args[i + 1].equalsIgnoreCase("t"))
+						HEADLESS = true;
+					else if (args[i + 1].equalsIgnoreCase("f"))
+						HEADLESS = false;
+					else {
+						System.err.println("INVALID FLAG\n");
+						System.out.println(HEADLESS_FLAG);
+						System.exit(4);
 					}
 			}
 		} else if (arglen != 0) {
 			System.out.println("NO ARGS OR WRONG NUMBER OF ARGS PASSED");
 		}
 
-		// Load the OpenCV Native Library
-		// System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+		// Without the GUI, logs can only go to the console
+		if (!HEADLESS) {
+			stream = new PrintStream(new LogOutputStream(log), true);
+			if (LOGGING)
+				System.setOut(stream);
+			if (ERROR_LOGGING)
+				System.setErr(stream);
+		}
+
+		// Load the OpenCV Native Library while the GUI starts up
 		Main.class.getClassLoader();
-		System.load(ClassLoader.getSystemClassLoader().getResource(".").getPath() + Core.NATIVE_LIBRARY_NAME + ".dll");
+		startup.start(Startup.Subsystem.NATIVE, new Runnable() {
+			@Override
+			public void run() {
+				HeadlessTracker.loadOpenCV();
+			}
+		});
+
+		if (HEADLESS) {
+			if (!startup.await(Startup.Subsystem.NATIVE))
+				return;
+			try {
+				new HeadlessTracker(FaceTrackingController.cameraSources, FaceTrackingController.ports,
+						FaceTrackingController.pacing, FaceTrackingController.protocol, startup).run();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return;
+		}
 
-		stream = new PrintStream(streamLog);
-		if (LOGGING)
-			System.setOut(stream);
-		if (ERROR_LOGGING)
-			System.setErr(stream);
 		launch(args);
 	}
 }
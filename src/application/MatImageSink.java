@@ -0,0 +1,164 @@
+package application;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import javafx.application.Platform;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import metrics.PipelineMetrics;
+
+/**
+ * Displays {@link Mat}s in an {@link ImageView} without creating a new
+ * {@link javafx.scene.image.Image} for every frame. The frame is converted to
+ * BGRA once, copied into one of a few reusable byte buffers, and written
+ * straight into a {@link WritableImage} that is kept for as long as the
+ * resolution stays the same.
+ * <p>
+ * {@link #show(Mat)} may be called from a single non-FX thread. If the FX
+ * thread falls behind, frames that were never displayed are overwritten by
+ * newer ones.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class MatImageSink {
+
+	/**
+	 * A converted frame waiting to be written into the image.
+	 */
+	private static class Buffer {
+		byte[] data = new byte[0];
+		int width, height;
+		// When the frame was captured, or 0 if unknown
+		long captureTime;
+	}
+
+	// One buffer being filled, one waiting and one being displayed
+	private static final int BUFFERS = 3;
+
+	private final ImageView view;
+	private final ArrayBlockingQueue<Buffer> free = new ArrayBlockingQueue<Buffer>(BUFFERS);
+	private final AtomicReference<Buffer> ready = new AtomicReference<Buffer>();
+	// The BGRA copy of the frame, only used by the calling thread
+	private final Mat bgra = new Mat();
+	// The image currently shown, only used by the FX thread
+	private WritableImage image;
+	private final Runnable present = new Runnable() {
+		@Override
+		public void run() {
+			present();
+		}
+	};
+
+	private final AtomicLong presented = new AtomicLong(), dropped = new AtomicLong();
+	private volatile PipelineMetrics metrics;
+
+	public MatImageSink(ImageView view) {
+		this.view = view;
+		for (int i = 0; i < BUFFERS; i++)
+			this.free.add(new Buffer());
+	}
+
+	/**
+	 * Queues a frame to be shown on the next FX pulse.
+	 * 
+	 * @param frame
+	 *            A BGR, BGRA or gray scale <code>Mat</code>.
+	 * @return True if the frame was queued, false if it had to be dropped.
+	 */
+	public boolean show(Mat frame) {
+		return this.show(frame, 0);
+	}
+
+	/**
+	 * @param captureTime
+	 *            System.nanoTime() when the frame was captured, or 0 if
+	 *            unknown.
+	 * @see #show(Mat)
+	 */
+	public boolean show(Mat frame, long captureTime) {
+		Buffer buffer = this.free.poll();
+		if (buffer == null) {
+			this.dropped.incrementAndGet();
+			return false;
+		}
+
+		Mat source = frame;
+		if (frame.channels() == 1) {
+			Imgproc.cvtColor(frame, this.bgra, Imgproc.COLOR_GRAY2BGRA);
+			source = this.bgra;
+		} else if (frame.channels() == 3) {
+			Imgproc.cvtColor(frame, this.bgra, Imgproc.COLOR_BGR2BGRA);
+			source = this.bgra;
+		}
+
+		buffer.captureTime = captureTime;
+		buffer.width = source.cols();
+		buffer.height = source.rows();
+		int size = buffer.width * buffer.height * 4;
+		if (buffer.data.length != size)
+			buffer.data = new byte[size];
+		source.get(0, 0, buffer.data);
+
+		Buffer stale = this.ready.getAndSet(buffer);
+		if (stale != null) {
+			// The FX thread has not picked up the previous frame yet, and
+			// will show this one instead
+			this.dropped.incrementAndGet();
+			this.free.offer(stale);
+		} else {
+			Platform.runLater(this.present);
+		}
+		return true;
+	}
+
+	/**
+	 * @param metrics
+	 *            Told how long frames take from capture to the screen, or
+	 *            null.
+	 */
+	public void setMetrics(PipelineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return The number of frames written into the image.
+	 */
+	public long getPresentedFrames() {
+		return this.presented.get();
+	}
+
+	/**
+	 * @return The number of frames that were never displayed.
+	 */
+	public long getDroppedFrames() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Writes the latest frame into the image. Runs on the FX thread.
+	 */
+	private void present() {
+		Buffer buffer = this.ready.getAndSet(null);
+		if (buffer == null)
+			return;
+		if (this.image == null || (int) this.image.getWidth() != buffer.width
+				|| (int) this.image.getHeight() != buffer.height)
+			this.image = new WritableImage(buffer.width, buffer.height);
+		this.image.getPixelWriter().setPixels(0, 0, buffer.width, buffer.height, PixelFormat.getByteBgraInstance(),
+				buffer.data, 0, buffer.width * 4);
+		if (this.view.getImage() != this.image)
+			this.view.setImage(this.image);
+		PipelineMetrics metrics = this.metrics;
+		if (metrics != null && buffer.captureTime != 0)
+			metrics.record(PipelineMetrics.Stage.DISPLAY, System.nanoTime() - buffer.captureTime);
+		this.free.offer(buffer);
+		this.presented.incrementAndGet();
+	}
+}
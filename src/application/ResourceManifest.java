@@ -0,0 +1,251 @@
+package application;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Lists the bundled sounds, cascade classifiers and sound categories, so
+ * startup reads one small file instead of walking the resources directory or
+ * the entries of the jar.
+ * <p>
+ * The manifest is generated when the resources change, by running this class
+ * on the resources directory, and is bundled with them:
+ * <code>ResourceManifest [resources directory]</code>. A category is every
+ * sound whose name only differs in the number it ends with, e.g.
+ * <code>turret_active_1</code> to <code>turret_active_8</code> make up
+ * <code>turret_active</code>.
+ *
+ * @author Michael Huyler
+ *
+ */
+public class ResourceManifest {
+
+	// The name of the manifest, at the root of the resources directory
+	public static final String FILE = "manifest.properties";
+	// The directories the sounds and cascades are bundled in
+	private static final String SOUNDS = "sounds";
+	private static final String[] CASCADES = { "haarcascades", "lbpcascades" };
+	// The keys of the manifest
+	private static final String SOUNDS_KEY = "sounds", CASCADES_KEY = "cascades", CATEGORY_KEY = "category.";
+
+	private final List<String> sounds;
+	private final List<String> cascades;
+	private final Map<String, List<String>> categories;
+
+	private ResourceManifest(List<String> sounds, List<String> cascades, Map<String, List<String>> categories) {
+		this.sounds = Collections.unmodifiableList(sounds);
+		this.cascades = Collections.unmodifiableList(cascades);
+		this.categories = Collections.unmodifiableMap(categories);
+	}
+
+	/**
+	 * Generates the manifest of a resources directory.
+	 */
+	public static void main(String[] args) throws IOException {
+		File root = new File(args.length > 0 ? args[0] : "resources");
+		ResourceManifest manifest = scan(root);
+		File file = new File(root, FILE);
+		manifest.write(file);
+		System.out.println(String.format("INFO: WROTE %d SOUNDS, %d CATEGORIES AND %d CASCADES TO %s.",
+				manifest.sounds.size(), manifest.categories.size(), manifest.cascades.size(), file));
+	}
+
+	/**
+	 * Reads the manifest bundled with the resources, or lists the resources
+	 * directory if there is none.
+	 *
+	 * @return The manifest.
+	 */
+	public static ResourceManifest load() {
+		try (InputStream in = ClassLoader.getSystemClassLoader().getResourceAsStream(FILE)) {
+			if (in != null) {
+				Properties properties = new Properties();
+				properties.load(in);
+				return parse(properties);
+			}
+		} catch (IOException e) {
+			System.err.println("ERROR: COULD NOT READ " + FILE.toUpperCase() + ".");
+			e.printStackTrace();
+		}
+		System.out.println("INFO: NO RESOURCE MANIFEST, LISTING THE RESOURCES DIRECTORY.");
+		return scan(new File(root()));
+	}
+
+	/**
+	 * @return The class path root the resources are bundled in, as a file
+	 *         path ending in a separator, on any system.
+	 */
+	public static String root() {
+		return root(ClassLoader.getSystemClassLoader().getResource("."));
+	}
+
+	/**
+	 * @param url
+	 *            A directory URL on the class path.
+	 * @return The directory as a file path ending in a separator.
+	 */
+	public static String root(URL url) {
+		try {
+			// A URL path keeps the drive's leading slash on Windows and
+			// escapes spaces
+			return new File(url.toURI()).getPath() + File.separator;
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Not a directory: " + url, e);
+		}
+	}
+
+	/**
+	 * Lists the sounds and cascades in a resources directory.
+	 *
+	 * @param root
+	 *            The resources directory.
+	 * @return The manifest.
+	 */
+	public static ResourceManifest scan(File root) {
+		List<String> sounds = new ArrayList<String>();
+		File[] files = new File(root, SOUNDS).listFiles();
+		if (files != null)
+			for (File file : files)
+				if (file.getName().endsWith(".wav"))
+					sounds.add(file.getName().substring(0, file.getName().length() - 4));
+		Collections.sort(sounds);
+
+		List<String> cascades = new ArrayList<String>();
+		for (String directory : CASCADES) {
+			files = new File(root, directory).listFiles();
+			if (files == null)
+				continue;
+			for (File file : files)
+				if (file.getName().endsWith(".xml"))
+					cascades.add(directory + "/" + file.getName());
+		}
+		Collections.sort(cascades);
+		return new ResourceManifest(sounds, cascades, categorize(sounds));
+	}
+
+	/**
+	 * Groups the sounds ending in a number by the rest of their name, in the
+	 * order of their numbers.
+	 */
+	private static Map<String, List<String>> categorize(List<String> sounds) {
+		Map<String, List<String>> categories = new TreeMap<String, List<String>>();
+		for (String sound : sounds) {
+			String category = category(sound);
+			if (category == null)
+				continue;
+			List<String> members = categories.get(category);
+			if (members == null) {
+				members = new ArrayList<String>();
+				categories.put(category, members);
+			}
+			members.add(sound);
+		}
+		for (final List<String> members : categories.values())
+			Collections.sort(members, new Comparator<String>() {
+				@Override
+				public int compare(String a, String b) {
+					return Integer.compare(number(a), number(b));
+				}
+			});
+		return new LinkedHashMap<String, List<String>>(categories);
+	}
+
+	/**
+	 * @return The name of a sound without the number it ends with or the
+	 *         underscore before it, or null if it does not end with a number.
+	 */
+	private static String category(String sound) {
+		int end = sound.length();
+		while (end > 0 && Character.isDigit(sound.charAt(end - 1)))
+			end--;
+		if (end == sound.length() || end == 0)
+			return null;
+		return sound.substring(0, sound.charAt(end - 1) == '_' ? end - 1 : end);
+	}
+
+	private static int number(String sound) {
+		int start = sound.length();
+		while (start > 0 && Character.isDigit(sound.charAt(start - 1)))
+			start--;
+		return Integer.parseInt(sound.substring(start));
+	}
+
+	private static ResourceManifest parse(Properties properties) {
+		Map<String, List<String>> categories = new TreeMap<String, List<String>>();
+		for (String key : properties.stringPropertyNames())
+			if (key.startsWith(CATEGORY_KEY))
+				categories.put(key.substring(CATEGORY_KEY.length()), split(properties.getProperty(key)));
+		return new ResourceManifest(split(properties.getProperty(SOUNDS_KEY)),
+				split(properties.getProperty(CASCADES_KEY)), new LinkedHashMap<String, List<String>>(categories));
+	}
+
+	private static List<String> split(String value) {
+		if (value == null || value.trim().isEmpty())
+			return new ArrayList<String>();
+		return new ArrayList<String>(Arrays.asList(value.trim().split("\\s*,\\s*")));
+	}
+
+	/**
+	 * Writes the manifest as a properties file, one entry per line and in the
+	 * same order every time, so it only changes when the resources do.
+	 *
+	 * @param file
+	 *            Where the manifest is written.
+	 */
+	public void write(File file) throws IOException {
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1)) {
+			out.write("# The bundled resources, generated by application.ResourceManifest. Do not edit.\n");
+			out.write(entry(SOUNDS_KEY, this.sounds));
+			out.write(entry(CASCADES_KEY, this.cascades));
+			for (Map.Entry<String, List<String>> category : this.categories.entrySet())
+				out.write(entry(CATEGORY_KEY + category.getKey(), category.getValue()));
+		}
+	}
+
+	private static String entry(String key, List<String> values) {
+		StringBuilder entry = new StringBuilder(key).append('=');
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0)
+				entry.append(",\\\n\t");
+			entry.append(values.get(i));
+		}
+		return entry.append('\n').toString();
+	}
+
+	/**
+	 * @return The names of the bundled sounds, without their extension.
+	 */
+	public List<String> getSounds() {
+		return this.sounds;
+	}
+
+	/**
+	 * @return The bundled cascade files, relative to the resources directory.
+	 */
+	public List<String> getCascades() {
+		return this.cascades;
+	}
+
+	/**
+	 * @return The sounds of each category, by the name of the category.
+	 */
+	public Map<String, List<String>> getCategories() {
+		return this.categories;
+	}
+}
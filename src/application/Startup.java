@@ -0,0 +1,249 @@
+package application;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Brings the program's subsystems up side by side and keeps track of how far
+ * along each one is, so the window can be shown at once and the slow parts,
+ * such as opening the Serial Ports or building the speech recognizer, warm up
+ * in the background. Whoever needs a subsystem waits for it with
+ * {@link #await(Subsystem)}, or, on a thread that must not wait, is told once
+ * it is ready with {@link #whenSettled(Subsystem, Listener)}.
+ * <p>
+ * Also measures the time from the launch of the JVM to the first frame a face
+ * detector has looked at, which is how long the turret is blind for.
+ *
+ * @author Michael Huyler
+ *
+ */
+public class Startup {
+
+	/**
+	 * The parts of the program started separately.
+	 */
+	public enum Subsystem {
+		// The OpenCV native library
+		NATIVE,
+		// The window and its controls
+		INTERFACE,
+		// The Serial Ports of the turrets
+		TURRETS,
+		// The face detection cascade classifiers
+		CASCADES,
+		// The decoded sound effects
+		SOUNDS,
+		// The speech recognizer
+		VOICE
+	}
+
+	/**
+	 * How far along a subsystem is.
+	 */
+	public enum State {
+		PENDING, STARTING, READY, FAILED
+	}
+
+	/**
+	 * Told whenever a subsystem changes state.
+	 */
+	public interface Listener {
+		/**
+		 * Called from the thread starting the subsystem.
+		 */
+		void stateChanged(Subsystem subsystem, State state);
+	}
+
+	private static final Subsystem[] SUBSYSTEMS = Subsystem.values();
+
+	private final AtomicReferenceArray<State> states = new AtomicReferenceArray<State>(SUBSYSTEMS.length);
+	// Millis after launch each subsystem became ready or failed
+	private final long[] settledAt = new long[SUBSYSTEMS.length];
+	private final CountDownLatch[] settled = new CountDownLatch[SUBSYSTEMS.length];
+	// Told once each subsystem settles, guarded by itself
+	private final List<List<Listener>> waiting = new ArrayList<List<Listener>>();
+	// Millis after launch the first frame was tracked, or -1
+	private final AtomicLong firstTrackedFrame = new AtomicLong(-1);
+	private volatile Listener listener;
+
+	public Startup() {
+		for (int i = 0; i < SUBSYSTEMS.length; i++) {
+			this.states.set(i, State.PENDING);
+			this.settled[i] = new CountDownLatch(1);
+			this.waiting.add(new ArrayList<Listener>());
+		}
+	}
+
+	/**
+	 * @param listener
+	 *            Told whenever a subsystem changes state, or null.
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts a subsystem on a thread of its own.
+	 *
+	 * @param subsystem
+	 *            The subsystem being started.
+	 * @param task
+	 *            Starts the subsystem, throwing if it fails.
+	 */
+	public void start(final Subsystem subsystem, final Runnable task) {
+		this.set(subsystem, State.STARTING);
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				perform(subsystem, task);
+			}
+		}, "STARTUP-" + subsystem);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts a subsystem on the calling thread.
+	 *
+	 * @param subsystem
+	 *            The subsystem being started.
+	 * @param task
+	 *            Starts the subsystem, throwing if it fails.
+	 * @return True if the subsystem is ready.
+	 */
+	public boolean perform(Subsystem subsystem, Runnable task) {
+		this.set(subsystem, State.STARTING);
+		try {
+			task.run();
+		} catch (Throwable e) {
+			System.err.println("ERROR: COULD NOT START " + subsystem + ".");
+			e.printStackTrace();
+			this.set(subsystem, State.FAILED);
+			return false;
+		}
+		this.set(subsystem, State.READY);
+		return true;
+	}
+
+	/**
+	 * Marks a subsystem started elsewhere as ready or failed.
+	 */
+	public void set(Subsystem subsystem, State state) {
+		int i = subsystem.ordinal();
+		boolean settles = state == State.READY || state == State.FAILED;
+		// Written before the state, so whoever sees the state sees the time
+		if (settles)
+			this.settledAt[i] = uptime();
+		State previous = this.states.getAndSet(i, state);
+		if (previous == state)
+			return;
+		List<Listener> waiting = null;
+		if (settles) {
+			System.out.println(String.format("INFO: %s %s AFTER %d MS.", subsystem, state, this.settledAt[i]));
+			synchronized (this.waiting) {
+				this.settled[i].countDown();
+				waiting = new ArrayList<Listener>(this.waiting.get(i));
+				this.waiting.get(i).clear();
+			}
+		}
+		Listener listener = this.listener;
+		if (listener != null)
+			listener.stateChanged(subsystem, state);
+		if (waiting != null)
+			for (Listener settledListener : waiting)
+				settledListener.stateChanged(subsystem, state);
+	}
+
+	/**
+	 * @return How far along a subsystem is.
+	 */
+	public State getState(Subsystem subsystem) {
+		return this.states.get(subsystem.ordinal());
+	}
+
+	/**
+	 * Waits until a subsystem is ready or has failed.
+	 *
+	 * @return True if the subsystem is ready.
+	 */
+	public boolean await(Subsystem subsystem) {
+		try {
+			this.settled[subsystem.ordinal()].await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return this.getState(subsystem) == State.READY;
+	}
+
+	/**
+	 * Tells a listener once a subsystem is ready or has failed, without
+	 * waiting for it. The listener is told on the thread starting the
+	 * subsystem, or at once on the calling thread if it has already settled.
+	 *
+	 * @param subsystem
+	 *            The subsystem to wait for.
+	 * @param listener
+	 *            Told the state the subsystem settled in, once.
+	 */
+	public void whenSettled(Subsystem subsystem, Listener listener) {
+		int i = subsystem.ordinal();
+		synchronized (this.waiting) {
+			if (this.settled[i].getCount() > 0) {
+				this.waiting.get(i).add(listener);
+				return;
+			}
+		}
+		listener.stateChanged(subsystem, this.getState(subsystem));
+	}
+
+	/**
+	 * Records that a frame has been through a face detector, and reports how
+	 * long after launch the first one was. Cheap enough to call every frame.
+	 */
+	public void tracked() {
+		if (this.firstTrackedFrame.get() >= 0)
+			return;
+		long now = uptime();
+		if (this.firstTrackedFrame.compareAndSet(-1, now))
+			System.out.println(String.format("INFO: FIRST FRAME TRACKED %d MS AFTER LAUNCH. %s", now, this));
+	}
+
+	/**
+	 * @return The millis from launch to the first tracked frame, or -1 if no
+	 *         frame has been tracked yet.
+	 */
+	public long getFirstTrackedFrame() {
+		return this.firstTrackedFrame.get();
+	}
+
+	/**
+	 * @return The millis since the JVM was launched.
+	 */
+	public static long uptime() {
+		return ManagementFactory.getRuntimeMXBean().getUptime();
+	}
+
+	/**
+	 * @return The state of every subsystem that has been started, with when
+	 *         it settled.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < SUBSYSTEMS.length; i++) {
+			State state = this.states.get(i);
+			if (state == State.PENDING)
+				continue;
+			if (text.length() > 0)
+				text.append(" | ");
+			text.append(SUBSYSTEMS[i]).append(' ').append(state);
+			if (state == State.READY || state == State.FAILED)
+				text.append(" @ ").append(this.settledAt[i]).append(" MS");
+		}
+		return text.toString();
+	}
+}
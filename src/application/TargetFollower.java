@@ -0,0 +1,137 @@
+package application;
+
+import arduino.TurretManager;
+import audio.SoundPlayer;
+import tracking.Frame;
+import tracking.KalmanTarget;
+
+/**
+ * Turns the faces detected in each frame into coordinates for the turrets,
+ * and, on autopilot, plays a sound when a target is found or lost. Used both
+ * by the GUI and when running headless.
+ * <p>
+ * The turrets follow one camera at a time. Another camera only takes over once
+ * the followed one has lost its face.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class TargetFollower {
+
+	// How sharply faces change speed, in pixels per second squared
+	private static final double ACCELERATION = 800;
+	// How far the center of a detection is typically off, in pixels
+	private static final double DETECTION_ERROR = 4;
+	// The number of frames without a face that the target is followed through
+	private static final int MAX_MISSES = 5;
+	// Coordinates closer than this to the last ones sent are not sent
+	private static final int TOLERANCE = 5;
+
+	private final TurretManager turrets;
+	private final SoundPlayer sounds;
+	// Follows the first face between frames, so the turret can aim where it
+	// will be by the time the servos move
+	private final KalmanTarget target = new KalmanTarget(ACCELERATION, DETECTION_ERROR, MAX_MISSES);
+	// The camera whose face the turrets follow
+	private volatile int followed = 0;
+	// Previous coordinates
+	private double prevX = -1, prevY = -1;
+	// Whether there was a target in the last frame
+	private boolean found = false;
+	// Whether a sound is played when a target is found or lost
+	private volatile boolean autopilot;
+
+	/**
+	 * @param turrets
+	 *            Sent the coordinates of the target.
+	 * @param sounds
+	 *            Plays a sound when a target is found or lost.
+	 * @param autopilot
+	 *            Whether to start on autopilot.
+	 */
+	public TargetFollower(TurretManager turrets, SoundPlayer sounds, boolean autopilot) {
+		this.turrets = turrets;
+		this.sounds = sounds;
+		this.autopilot = autopilot;
+	}
+
+	/**
+	 * @return Whether a sound is played when a target is found or lost.
+	 */
+	public boolean isAutopilot() {
+		return this.autopilot;
+	}
+
+	/**
+	 * @param autopilot
+	 *            Whether to play a sound when a target is found or lost,
+	 *            from the next frame on.
+	 */
+	public void setAutopilot(boolean autopilot) {
+		this.autopilot = autopilot;
+	}
+
+	/**
+	 * @return The id of the camera being followed.
+	 */
+	public int getFollowed() {
+		return this.followed;
+	}
+
+	/**
+	 * Follows the first face in a frame, if it comes from the followed
+	 * camera. Called by the detection stage of every camera.
+	 * 
+	 * @param input
+	 *            The frame, with its faces detected. The coordinates the
+	 *            turrets are aimed at are stored in it.
+	 * @param faceCount
+	 *            The number of faces in the frame.
+	 */
+	public synchronized void update(Frame input, int faceCount) {
+		if (faceCount > 0 && !this.target.isActive())
+			this.followed = input.sourceId;
+		if (input.sourceId != this.followed)
+			return;
+
+		final int[] rects = input.rects;
+		if (faceCount > 0)
+			this.target.update(rects[0] + (rects[2] / 2.0), rects[1] + (rects[3] / 2.0), input.sourceTime);
+
+		// Motion is measured on the time the source recorded the frame at, so
+		// replays move as they were recorded. Aim where the first face will
+		// be once the coordinates reach the servos, coasting through a few
+		// frames without a face
+		if (faceCount > 0 || this.target.miss(input.sourceTime)) {
+			long lead = System.nanoTime() - input.captureTime + (long) this.turrets.getSendLatency();
+			double xPos = this.target.predictX(lead);
+			double yPos = this.target.predictY(lead);
+			input.targetX = xPos;
+			input.targetY = yPos;
+			if (Math.abs(xPos - prevX) > TOLERANCE || Math.abs(yPos - prevY) > TOLERANCE) {
+				this.turrets.sendCoordinates(xPos, yPos, input.captureTime);
+				input.enqueueTime = System.nanoTime();
+				prevX = xPos;
+				prevY = yPos;
+			}
+		} else if (prevX != -1 || prevY != -1) {
+			prevX = -1;
+			prevY = -1;
+			this.turrets.sendCoordinates(-1, -1);
+		}
+
+		// On autopilot, if there has been a long enough delay between clips,
+		// play another clip if a target was found/lost
+		if (this.autopilot && !this.sounds.isPlaying()) {
+			boolean previous = this.found;
+			this.found = faceCount > 0;
+			if (this.found != previous) {
+				System.out.println("INFO: FACE " + (this.found ? "DETECTED." : "LOST."));
+				if (this.found)
+					this.sounds.playRandom(SoundPlayer.ACTIVE);
+				else
+					this.sounds.playRandom(SoundPlayer.SEARCH);
+			}
+		}
+	}
+}
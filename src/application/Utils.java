@@ -4,6 +4,9 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
 
 import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
 
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
@@ -11,8 +14,8 @@ import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
 
 /**
- * This class contains various utilities that are useful for image conversions
- * and thread handling.
+ * This class contains various utilities that are useful for image conversions,
+ * drawing and thread handling.
  * 
  * @author Michael Huyler
  *
@@ -62,6 +65,78 @@ public class Utils {
 		return image;
 	}
 
+	/**
+	 * Draws a grid over a frame.
+	 * 
+	 * @param frame
+	 *            The frame to draw on.
+	 * @param spacing
+	 *            The distance between two lines in pixels.
+	 * @param color
+	 *            The color of the lines.
+	 * @param tl
+	 *            A point reused for the start of each line.
+	 * @param br
+	 *            A point reused for the end of each line.
+	 */
+	public static void drawGrid(Mat frame, int spacing, Scalar color, Point tl, Point br) {
+		int width = frame.cols() / spacing;
+		int height = frame.rows() / spacing;
+
+		for (int x = 0; x < width - 1; x++) {
+			tl.x = br.x = x * spacing;
+			tl.y = 0;
+			br.y = height * spacing;
+			Imgproc.line(frame, tl, br, color);
+		}
+		for (int y = 0; y < height - 1; y++) {
+			tl.y = br.y = y * spacing;
+			tl.x = 0;
+			br.x = width * spacing;
+			Imgproc.line(frame, tl, br, color);
+		}
+	}
+
+	/**
+	 * Draws a rectangle around each face, snapped to a 10 pixel grid, and
+	 * marks its center.
+	 * 
+	 * @param frame
+	 *            The frame to draw on.
+	 * @param rects
+	 *            The faces, as x, y, width and height.
+	 * @param faceCount
+	 *            The number of faces.
+	 * @param color
+	 *            The color of the rectangles.
+	 * @param tl
+	 *            A point reused for the top left corner of each rectangle.
+	 * @param br
+	 *            A point reused for the bottom right corner of each
+	 *            rectangle.
+	 * @param center
+	 *            A point reused for the center of each face.
+	 */
+	public static void drawFaces(Mat frame, int[] rects, int faceCount, Scalar color, Point tl, Point br,
+			Point center) {
+		// Draw a rectangle around each face
+		for (int i = 0; i < faceCount * 4; i += 4) {
+			tl.x = 10 * (rects[i] / 10);
+			tl.y = 10 * (rects[i + 1] / 10);
+			br.x = 10 * ((rects[i] + rects[i + 2]) / 10);
+			br.y = 10 * ((rects[i + 1] + rects[i + 3]) / 10);
+			Imgproc.rectangle(frame, tl, br, color, 2);
+		}
+
+		// Mark the center of each face
+		for (int i = 0; i < faceCount * 4; i += 4) {
+			// Focus on the center of the face
+			center.x = rects[i] + (rects[i + 2] / 2.0);
+			center.y = rects[i + 1] + (rects[i + 3] / 2.0);
+			Imgproc.circle(frame, center, 1, color, 2);
+		}
+	}
+
 	/**
 	 * Safely updates {@link ObjectProperty} on the correct {@link Thread}.
 	 * 
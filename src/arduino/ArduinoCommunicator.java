@@ -2,11 +2,16 @@ package arduino;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import gnu.io.CommPort;
 import gnu.io.CommPortIdentifier;
 import gnu.io.SerialPort;
+import metrics.PipelineMetrics;
 
 /**
  * The class is used to interface with the Arduino. The Arduino has a sketch
@@ -19,14 +24,35 @@ import gnu.io.SerialPort;
  */
 public class ArduinoCommunicator {
 
+	/**
+	 * How coordinates are written to the Arduino. The sketch on the Arduino
+	 * must read the same one.
+	 */
+	public enum Protocol {
+		// The text X<x>Y<y>, read by the sketches already on the turrets,
+		// which do not report back
+		ASCII,
+		// Framed packets with a sequence number and checksum, acknowledged
+		// by the Arduino, see SerialWriter and SerialReader
+		BINARY
+	}
+
 	private final static int BAUD_RATE = 9600;
 	private InputStream in;
 	private OutputStream out;
 
-	private static SerialReader reader;
-	private static SerialWriter writer;
+	// Each turret has its own port, reader and writer
+	private final String name;
+	private final Protocol protocol;
+	private CommPort commPort;
+	private volatile SerialReader reader;
+	private volatile SerialWriter writer;
+	private Thread readerThread, writerThread;
+	private final TurretTelemetry telemetry = new TurretTelemetry();
+	private volatile PipelineMetrics metrics;
 
 	public ArduinoCommunicator() { // String port
+		this("TURRET_0");
 //		try {
 //			connect(port);
 //		} catch (Exception e) {
@@ -34,13 +60,91 @@ public class ArduinoCommunicator {
 //		}
 	}
 
+	/**
+	 * @param name
+	 *            The name of the turret, used to tell its threads apart.
+	 */
+	public ArduinoCommunicator(String name) {
+		this(name, Protocol.ASCII);
+	}
+
+	/**
+	 * @param name
+	 *            The name of the turret, used to tell its threads apart.
+	 * @param protocol
+	 *            How coordinates are written to the Arduino.
+	 */
+	public ArduinoCommunicator(String name, Protocol protocol) {
+		this.name = name;
+		this.protocol = protocol;
+	}
+
 	/**
 	 * The x and y coordinates within the webcam's frame, formatted such that
 	 * the Arduino simply has to move its servos to the coordinates in order to
 	 * be centered on a face.
 	 */
 	public void sendCoordinates(double xPos, double yPos) {
-		writer.write((int) xPos / 10, (int) yPos / 10);
+		this.sendCoordinates(xPos, yPos, 0);
+	}
+
+	/**
+	 * @param captureTime
+	 *            System.nanoTime() when the frame the coordinates come from
+	 *            was captured, or 0 if unknown.
+	 * @see #sendCoordinates(double, double)
+	 */
+	public void sendCoordinates(double xPos, double yPos, long captureTime) {
+		SerialWriter writer = this.writer;
+		if (writer != null)
+			writer.write((int) xPos / 10, (int) yPos / 10, captureTime);
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public Protocol getProtocol() {
+		return this.protocol;
+	}
+
+	/**
+	 * @return The writer of the connection, or null if not connected.
+	 */
+	public SerialWriter getWriter() {
+		return this.writer;
+	}
+
+	/**
+	 * @return How long coordinates take to reach the Arduino once written, in
+	 *         nanos: the recent time it takes to acknowledge them, less the
+	 *         time the acknowledgement takes to come back over the port. 0
+	 *         until the first acknowledgement.
+	 */
+	public double getSendLatency() {
+		double ack = this.telemetry.getRecentAckLatency();
+		if (ack == 0)
+			return 0;
+		// Every byte is sent with a start and a stop bit
+		return Math.max(0, ack - SerialReader.ACK_LENGTH * 10 * 1e9 / BAUD_RATE);
+	}
+
+	/**
+	 * @return What the Arduino has reported back since connecting.
+	 */
+	public TurretTelemetry getTelemetry() {
+		return this.telemetry;
+	}
+
+	/**
+	 * @param metrics
+	 *            Told how long coordinates take to reach the port, or null.
+	 */
+	public void setMetrics(PipelineMetrics metrics) {
+		this.metrics = metrics;
+		SerialWriter writer = this.writer;
+		if (writer != null)
+			writer.setMetrics(metrics);
 	}
 
 	/**
@@ -63,15 +167,8 @@ public class ArduinoCommunicator {
 				serialPort.setSerialPortParams(BAUD_RATE, SerialPort.DATABITS_8, SerialPort.STOPBITS_1,
 						SerialPort.PARITY_NONE);
 
-				this.in = serialPort.getInputStream();
-				this.out = serialPort.getOutputStream();
-
-				reader = new SerialReader(this.in);
-				writer = new SerialWriter(this.out);
-
-				(new Thread(reader)).start();
-				(new Thread(writer)).start();
-
+				this.commPort = commPort;
+				this.connect(serialPort.getInputStream(), serialPort.getOutputStream());
 			} else {
 				System.err.println("ERROR: NOT A SERIAL PORT");
 				return false;
@@ -80,66 +177,441 @@ public class ArduinoCommunicator {
 		return true;
 	}
 
+	/**
+	 * Start talking to an Arduino over a pair of streams. This is what
+	 * {@link #connect(String)} does once the port is open, and can also be
+	 * used with piped streams to talk to a {@link SimulatedTurret}.
+	 * 
+	 * @param in
+	 *            The stream the Arduino writes to.
+	 * @param out
+	 *            The stream the Arduino reads from.
+	 */
+	public void connect(InputStream in, OutputStream out) {
+		this.in = in;
+		this.out = out;
+
+		this.reader = new SerialReader(this.in, this.telemetry);
+		this.writer = new SerialWriter(this.out, BAUD_RATE, this.telemetry, this.protocol);
+		this.writer.setMetrics(this.metrics);
+
+		this.readerThread = new Thread(this.reader, "SERIAL-READER " + this.name);
+		this.readerThread.setDaemon(true);
+		this.readerThread.start();
+		this.writerThread = new Thread(this.writer, "SERIAL-WRITER " + this.name);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Stops the reader and writer and closes the connection.
+	 */
+	public void disconnect() {
+		this.writer = null;
+		if (this.writerThread != null)
+			this.writerThread.interrupt();
+		if (this.readerThread != null)
+			this.readerThread.interrupt();
+		try {
+			if (this.in != null)
+				this.in.close();
+			if (this.out != null)
+				this.out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (this.commPort != null)
+			this.commPort.close();
+		this.commPort = null;
+		this.readerThread = this.writerThread = null;
+	}
+
 	/**
 	 * Read from the Serial Port
+	 * <p>
+	 * The Arduino answers every packet of coordinates with an acknowledgement,
+	 * and reports where its servos are:
+	 * 
+	 * <pre>
+	 * 0x5A | 'A' | sequence | checksum
+	 * 0x5A | 'P' | pan high | pan low | tilt high | tilt low | checksum
+	 * </pre>
+	 * 
+	 * The checksum is the sum of the bytes between the sync byte and the
+	 * checksum, modulo 256. Bytes are collected in a ring buffer until a whole
+	 * packet has arrived. Anything that is not a valid packet is skipped one
+	 * byte at a time until the next sync byte.
 	 * 
 	 * @author Michael
 	 *
 	 */
 	public static class SerialReader implements Runnable {
+		// Marks the start of every packet
+		public static final int SYNC = 0x5A;
+		public static final int ACK = 'A', POSITION = 'P';
+		public static final int ACK_LENGTH = 4, POSITION_LENGTH = 7;
+		// Must be a power of two
+		private static final int RING_SIZE = 256;
+
 		InputStream in;
+		private final TurretTelemetry telemetry;
+		private final byte[] buffer = new byte[64];
+		private final byte[] ring = new byte[RING_SIZE];
+		// Where the oldest unparsed byte is, and how many there are
+		private int head = 0, size = 0;
 
-		public SerialReader(InputStream in) {
+		public SerialReader(InputStream in, TurretTelemetry telemetry) {
 			this.in = in;
+			this.telemetry = telemetry;
 		}
 
 		public void run() {
-			byte[] buffer = new byte[1024];
 			int len = -1;
 			try {
-				while (true) {
-					while ((len = this.in.read(buffer)) > -1) {
-						String read = new String(buffer, 0, len);
-						if (read.trim().length() > 0)
-							System.out.print(read);
+				while ((len = this.in.read(this.buffer)) > -1) {
+					long now = System.nanoTime();
+					for (int i = 0; i < len; i++) {
+						if (this.size == RING_SIZE)
+							this.parse(now);
+						if (this.size == RING_SIZE) {
+							// Nothing in the ring is a packet, forget it all
+							this.head = this.size = 0;
+						}
+						this.ring[(this.head + this.size++) & (RING_SIZE - 1)] = this.buffer[i];
 					}
-					System.out.println();
+					this.parse(now);
 				}
+			} catch (InterruptedIOException e) {
+				// Disconnected
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
+
+		/**
+		 * Consumes every whole packet in the ring.
+		 */
+		private void parse(long now) {
+			while (this.size > 0) {
+				if (this.peek(0) != SYNC) {
+					this.skip(1);
+					continue;
+				}
+				if (this.size < 2)
+					return;
+				int type = this.peek(1);
+				int length = type == ACK ? ACK_LENGTH : type == POSITION ? POSITION_LENGTH : 0;
+				if (length == 0) {
+					this.skip(1);
+					continue;
+				}
+				if (this.size < length)
+					return;
+
+				int sum = 0;
+				for (int i = 1; i < length - 1; i++)
+					sum += this.peek(i);
+				if ((sum & 0xFF) != this.peek(length - 1)) {
+					this.telemetry.corrupt();
+					this.skip(1);
+					continue;
+				}
+				if (type == ACK)
+					this.telemetry.acknowledged(this.peek(2), now);
+				else
+					this.telemetry.position((short) (this.peek(2) << 8 | this.peek(3)),
+							(short) (this.peek(4) << 8 | this.peek(5)), now);
+				this.skip(length);
+			}
+		}
+
+		private int peek(int offset) {
+			return this.ring[(this.head + offset) & (RING_SIZE - 1)] & 0xFF;
+		}
+
+		private void skip(int count) {
+			this.head = (this.head + count) & (RING_SIZE - 1);
+			this.size -= count;
+		}
 	}
 
 	/**
 	 * Write to the Serial Port
+	 * <p>
+	 * Coordinates are left in a mailbox that only holds the latest pair, so
+	 * the caller never waits on the port. The times the coordinates were left
+	 * and captured at are left with them, in one of three slots that the
+	 * caller and the writer thread swap through the mailbox, so they always
+	 * belong to the coordinates they are read with. The writer thread sends
+	 * whatever is in the mailbox, no faster than the port can carry it.
+	 * <p>
+	 * With {@link Protocol#BINARY}, the coordinates are sent as a 7 byte
+	 * packet:
+	 * 
+	 * <pre>
+	 * 0xA5 | sequence | x high | x low | y high | y low | checksum
+	 * </pre>
+	 * 
+	 * x and y are signed 16 bit big-endian values, and the checksum is the sum
+	 * of the sequence number and coordinate bytes, modulo 256. With
+	 * {@link Protocol#ASCII}, they are sent as the text
+	 * <code>X&lt;x&gt;Y&lt;y&gt;</code>, which is not acknowledged.
 	 * 
 	 * @author Michael
 	 *
 	 */
 	public static class SerialWriter implements Runnable {
+		// Marks the start of every packet
+		public static final int SYNC = 0xA5;
+		public static final int PACKET_LENGTH = 7;
+		// The longest text, X and Y with two signed ints
+		public static final int ASCII_LENGTH = 2 + 2 * 11;
+		// Set in the mailbox while the slot in it has not been sent
+		private static final int FRESH = 4;
+
+		/**
+		 * Coordinates and the times they were left and captured at.
+		 */
+		private static class Slot {
+			int x, y;
+			long enqueued, captured;
+		}
+
 		OutputStream out;
+		private final TurretTelemetry telemetry;
+		private final Protocol protocol;
+		// Time in nanos it takes the port to carry one byte
+		private final long byteTime;
+		private final byte[] packet = new byte[Math.max(PACKET_LENGTH, ASCII_LENGTH)];
+		// The slot being filled by write(), the one being sent, and the one
+		// with the latest coordinates, whose index is in the mailbox
+		private final Slot[] slots = { new Slot(), new Slot(), new Slot() };
+		private final AtomicInteger mailbox = new AtomicInteger(2);
+		private int filling = 0, sending = 1;
+		private volatile Thread thread;
+		private volatile PipelineMetrics metrics;
+		private int sequence = 0;
+		private volatile long written = 0;
+		private final AtomicLong coalesced = new AtomicLong();
 
-		public SerialWriter(OutputStream out) {
+		/**
+		 * @param out
+		 *            The stream of the Serial Port.
+		 * @param baudRate
+		 *            The speed of the port, used to avoid sending faster than
+		 *            it can carry.
+		 * @param telemetry
+		 *            Told when each packet is sent, to measure how long the
+		 *            Arduino takes to acknowledge it.
+		 * @param protocol
+		 *            How the coordinates are written.
+		 */
+		public SerialWriter(OutputStream out, int baudRate, TurretTelemetry telemetry, Protocol protocol) {
 			this.out = out;
+			this.telemetry = telemetry;
+			this.protocol = protocol;
+			// Every byte is sent with a start and a stop bit
+			this.byteTime = 10 * 1000000000L / baudRate;
 		}
 
 		/**
-		 * The method actually used to write the coordinates to the Serial port
+		 * Leaves coordinates for the writer thread to send. Coordinates that
+		 * have not been sent yet are replaced. Never blocks. Called by one
+		 * thread at a time.
 		 */
 		public void write(int x, int y) {
-			try {
-				System.out.println("WRITE: " + String.format("X%dY%d", x, y));
-				this.out.write(String.format("X%dY%d", x, y).getBytes());
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			this.write(x, y, 0);
+		}
+
+		/**
+		 * @param captureTime
+		 *            System.nanoTime() when the frame the coordinates come
+		 *            from was captured, or 0 if unknown.
+		 * @see #write(int, int)
+		 */
+		public void write(int x, int y, long captureTime) {
+			Slot slot = this.slots[this.filling];
+			slot.x = x;
+			slot.y = y;
+			slot.captured = captureTime;
+			slot.enqueued = System.nanoTime();
+			// Swap the filled slot for the one in the mailbox, which is
+			// either sent already or replaced
+			int previous = this.mailbox.getAndSet(this.filling | FRESH);
+			if ((previous & FRESH) != 0)
+				this.coalesced.incrementAndGet();
+			this.filling = previous & ~FRESH;
+			LockSupport.unpark(this.thread);
+		}
+
+		/**
+		 * @param metrics
+		 *            Told how long coordinates take to reach the port, or
+		 *            null.
+		 */
+		public void setMetrics(PipelineMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		/**
+		 * @return The number of packets sent.
+		 */
+		public long getWrittenPackets() {
+			return this.written;
+		}
+
+		/**
+		 * @return The number of coordinates replaced before they were sent.
+		 */
+		public long getCoalescedWrites() {
+			return this.coalesced.get();
 		}
 
 		/**
-		 * Required as a Runnable
+		 * Sends the latest coordinates whenever there are new ones.
 		 */
 		public void run() {
+			this.thread = Thread.currentThread();
+			long nextSend = 0;
+			while (!Thread.interrupted()) {
+				Slot slot = this.take();
+				if (slot == null) {
+					LockSupport.park(this);
+					continue;
+				}
+				// Don't send faster than the port can carry
+				long wait = nextSend - System.nanoTime();
+				if (wait > 0) {
+					do {
+						LockSupport.parkNanos(this, wait);
+					} while ((wait = nextSend - System.nanoTime()) > 0);
+					// Newer coordinates may have arrived in the meantime
+					Slot newer = this.take();
+					if (newer != null) {
+						slot = newer;
+						this.coalesced.incrementAndGet();
+					}
+				}
+				int length = encode(slot.x, slot.y);
+				// Before writing, the acknowledgement can arrive before write()
+				// returns
+				if (this.protocol == Protocol.BINARY)
+					this.telemetry.sent(this.sequence, System.nanoTime());
+				try {
+					this.out.write(this.packet, 0, length);
+					this.out.flush();
+					this.written++;
+					PipelineMetrics metrics = this.metrics;
+					if (metrics != null) {
+						// The times of the coordinates sent
+						long now = System.nanoTime();
+						metrics.record(PipelineMetrics.Stage.SERIAL_WRITE, now - slot.enqueued);
+						if (slot.captured != 0)
+							metrics.record(PipelineMetrics.Stage.END_TO_END, now - slot.captured);
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				nextSend = System.nanoTime() + length * this.byteTime;
+			}
+		}
+
+		/**
+		 * Swaps the slot just sent for the one in the mailbox, if it has not
+		 * been sent yet. Only write() swaps in unsent slots, so the mailbox
+		 * still holds one after it was seen to.
+		 * 
+		 * @return The slot with the latest coordinates, or <code>null</code>
+		 *         if they were all sent.
+		 */
+		private Slot take() {
+			if ((this.mailbox.get() & FRESH) == 0)
+				return null;
+			this.sending = this.mailbox.getAndSet(this.sending) & ~FRESH;
+			return this.slots[this.sending];
+		}
+
+		/**
+		 * Fills the packet buffer.
+		 * 
+		 * @return The length of the packet.
+		 */
+		private int encode(int x, int y) {
+			if (this.protocol == Protocol.ASCII)
+				return encodeAscii(this.packet, x, y);
+			this.sequence = (this.sequence + 1) & 0xFF;
+			return encode(this.packet, this.sequence, x, y);
+		}
+
+		/**
+		 * Writes one packet into a buffer.
+		 * 
+		 * @param packet
+		 *            The buffer, at least {@link #PACKET_LENGTH} bytes long.
+		 * @param sequence
+		 *            The sequence number of the packet.
+		 * @param x
+		 *            The x coordinate.
+		 * @param y
+		 *            The y coordinate.
+		 * @return The length of the packet.
+		 */
+		public static int encode(byte[] packet, int sequence, int x, int y) {
+			packet[0] = (byte) SYNC;
+			packet[1] = (byte) sequence;
+			packet[2] = (byte) (x >> 8);
+			packet[3] = (byte) x;
+			packet[4] = (byte) (y >> 8);
+			packet[5] = (byte) y;
+			int sum = 0;
+			for (int i = 1; i < PACKET_LENGTH - 1; i++)
+				sum += packet[i] & 0xFF;
+			packet[PACKET_LENGTH - 1] = (byte) sum;
+			return PACKET_LENGTH;
+		}
+
+		/**
+		 * Writes coordinates into a buffer as the text
+		 * <code>X&lt;x&gt;Y&lt;y&gt;</code>, without allocating.
+		 * 
+		 * @param packet
+		 *            The buffer, at least {@link #ASCII_LENGTH} bytes long.
+		 * @param x
+		 *            The x coordinate.
+		 * @param y
+		 *            The y coordinate.
+		 * @return The length of the text.
+		 */
+		public static int encodeAscii(byte[] packet, int x, int y) {
+			packet[0] = 'X';
+			int length = digits(packet, 1, x);
+			packet[length++] = 'Y';
+			return digits(packet, length, y);
+		}
+
+		/**
+		 * Writes a number in decimal.
+		 * 
+		 * @return The offset after the last digit.
+		 */
+		private static int digits(byte[] packet, int offset, int value) {
+			long rest = value;
+			if (rest < 0) {
+				packet[offset++] = '-';
+				rest = -rest;
+			}
+			int first = offset;
+			do {
+				packet[offset++] = (byte) ('0' + rest % 10);
+				rest /= 10;
+			} while (rest > 0);
+			// The digits were written last first
+			for (int i = first, j = offset - 1; i < j; i++, j--) {
+				byte digit = packet[i];
+				packet[i] = packet[j];
+				packet[j] = digit;
+			}
+			return offset;
 		}
 	}
 
@@ -0,0 +1,134 @@
+package arduino;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import arduino.ArduinoCommunicator.SerialReader;
+import arduino.ArduinoCommunicator.SerialWriter;
+
+/**
+ * Stands in for the Arduino sketch, so the serial protocol can be exercised
+ * without a turret. It reads packets of coordinates the way the sketch does,
+ * acknowledges each one, moves its servos toward the coordinates at a limited
+ * speed and reports where they are.
+ * <p>
+ * Connect it to an {@link ArduinoCommunicator} through a pair of piped
+ * streams.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class SimulatedTurret implements Runnable {
+
+	private final InputStream in;
+	private final OutputStream out;
+	// How far the servos move for each packet
+	private final int step;
+	// How long the sketch takes to handle a packet, in milliseconds
+	private final long delay;
+	private final byte[] packet = new byte[SerialWriter.PACKET_LENGTH];
+	private final byte[] ack = new byte[SerialReader.ACK_LENGTH];
+	private final byte[] position = new byte[SerialReader.POSITION_LENGTH];
+	private int pan = 0, tilt = 0;
+	private volatile long received = 0, corrupt = 0;
+
+	/**
+	 * @param in
+	 *            The stream the host writes to.
+	 * @param out
+	 *            The stream the host reads from.
+	 * @param step
+	 *            How far the servos move for each packet.
+	 * @param delay
+	 *            How long to take over each packet, in milliseconds.
+	 */
+	public SimulatedTurret(InputStream in, OutputStream out, int step, long delay) {
+		this.in = in;
+		this.out = out;
+		this.step = step;
+		this.delay = delay;
+	}
+
+	/**
+	 * @return The number of valid packets received.
+	 */
+	public long getReceivedPackets() {
+		return this.received;
+	}
+
+	/**
+	 * @return The number of packets that failed their checksum.
+	 */
+	public long getCorruptPackets() {
+		return this.corrupt;
+	}
+
+	public void run() {
+		try {
+			int b;
+			while ((b = this.in.read()) > -1) {
+				if (b != SerialWriter.SYNC)
+					continue;
+				this.packet[0] = (byte) b;
+				if (!this.readFully(this.packet, 1, SerialWriter.PACKET_LENGTH - 1))
+					return;
+				int sum = 0;
+				for (int i = 1; i < SerialWriter.PACKET_LENGTH - 1; i++)
+					sum += this.packet[i] & 0xFF;
+				if ((sum & 0xFF) != (this.packet[SerialWriter.PACKET_LENGTH - 1] & 0xFF)) {
+					this.corrupt++;
+					continue;
+				}
+				this.received++;
+				if (this.delay > 0)
+					Thread.sleep(this.delay);
+				int x = (short) ((this.packet[2] & 0xFF) << 8 | (this.packet[3] & 0xFF));
+				int y = (short) ((this.packet[4] & 0xFF) << 8 | (this.packet[5] & 0xFF));
+				this.pan += Math.max(-this.step, Math.min(this.step, x - this.pan));
+				this.tilt += Math.max(-this.step, Math.min(this.step, y - this.tilt));
+				this.acknowledge(this.packet[1] & 0xFF);
+				this.report();
+			}
+		} catch (IOException e) {
+			// The host has closed the port
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void acknowledge(int sequence) throws IOException {
+		this.ack[0] = (byte) SerialReader.SYNC;
+		this.ack[1] = (byte) SerialReader.ACK;
+		this.ack[2] = (byte) sequence;
+		this.ack[3] = (byte) (SerialReader.ACK + sequence);
+		this.out.write(this.ack);
+		this.out.flush();
+	}
+
+	private void report() throws IOException {
+		this.position[0] = (byte) SerialReader.SYNC;
+		this.position[1] = (byte) SerialReader.POSITION;
+		this.position[2] = (byte) (this.pan >> 8);
+		this.position[3] = (byte) this.pan;
+		this.position[4] = (byte) (this.tilt >> 8);
+		this.position[5] = (byte) this.tilt;
+		int sum = 0;
+		for (int i = 1; i < SerialReader.POSITION_LENGTH - 1; i++)
+			sum += this.position[i] & 0xFF;
+		this.position[SerialReader.POSITION_LENGTH - 1] = (byte) sum;
+		this.out.write(this.position);
+		this.out.flush();
+	}
+
+	private boolean readFully(byte[] buffer, int offset, int length) throws IOException {
+		while (length > 0) {
+			int read = this.in.read(buffer, offset, length);
+			if (read < 0)
+				return false;
+			offset += read;
+			length -= read;
+		}
+		return true;
+	}
+}
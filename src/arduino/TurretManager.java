@@ -0,0 +1,206 @@
+package arduino;
+
+import java.util.Arrays;
+
+import metrics.PipelineMetrics;
+
+/**
+ * Owns every turret the program drives. Each turret has its own
+ * {@link ArduinoCommunicator}, with its own reader and writer threads, and its
+ * own transform from frame coordinates to the coordinates its servos expect,
+ * so turrets mounted in different places or orientations can follow the same
+ * face.
+ * <p>
+ * Sending coordinates only leaves them in each turret's writer, so fanning a
+ * detection out to every turret never blocks the caller.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class TurretManager {
+
+	private volatile Turret[] turrets = new Turret[0];
+	private PipelineMetrics metrics;
+	// How the turrets connected from now on are written to
+	private volatile ArduinoCommunicator.Protocol protocol = ArduinoCommunicator.Protocol.ASCII;
+
+	/**
+	 * A turret and where it is aimed relative to the camera.
+	 */
+	public static class Turret {
+		private final ArduinoCommunicator arduino;
+		private final String port;
+		private final double scaleX, offsetX, scaleY, offsetY;
+		private volatile boolean connected = false;
+
+		/**
+		 * Frame coordinates are mapped to <code>x * scaleX + offsetX</code>
+		 * and <code>y * scaleY + offsetY</code>.
+		 */
+		Turret(ArduinoCommunicator arduino, String port, double scaleX, double offsetX, double scaleY,
+				double offsetY) {
+			this.arduino = arduino;
+			this.port = port;
+			this.scaleX = scaleX;
+			this.offsetX = offsetX;
+			this.scaleY = scaleY;
+			this.offsetY = offsetY;
+		}
+
+		public ArduinoCommunicator getArduino() {
+			return this.arduino;
+		}
+
+		/**
+		 * @return The Serial Port the turret is on, or null if it was
+		 *         connected some other way.
+		 */
+		public String getPort() {
+			return this.port;
+		}
+
+		public boolean isConnected() {
+			return this.connected;
+		}
+
+		void send(double xPos, double yPos, long captureTime) {
+			// (-1, -1) means there is no target, and is passed on as it is
+			if (xPos == -1 && yPos == -1)
+				this.arduino.sendCoordinates(xPos, yPos, captureTime);
+			else
+				this.arduino.sendCoordinates(xPos * this.scaleX + this.offsetX, yPos * this.scaleY + this.offsetY,
+						captureTime);
+		}
+	}
+
+	/**
+	 * @param protocol
+	 *            How the turrets connected from now on are written to, which
+	 *            must match the sketch on their Arduinos.
+	 */
+	public void setProtocol(ArduinoCommunicator.Protocol protocol) {
+		this.protocol = protocol;
+	}
+
+	/**
+	 * Opens a turret on a Serial Port, with frame coordinates passed on as
+	 * they are.
+	 * 
+	 * @param port
+	 *            The name of the Serial Port the Arduino is on.
+	 * @return The turret, whether or not the connection was a success.
+	 */
+	public Turret connect(String port) {
+		return this.connect(port, 1, 0, 1, 0);
+	}
+
+	/**
+	 * Opens a turret on a Serial Port.
+	 * 
+	 * @param port
+	 *            The name of the Serial Port the Arduino is on.
+	 * @param scaleX
+	 *            Multiplies the x coordinate, -1 for a turret facing the
+	 *            camera.
+	 * @param offsetX
+	 *            Added to the x coordinate after scaling.
+	 * @param scaleY
+	 *            Multiplies the y coordinate.
+	 * @param offsetY
+	 *            Added to the y coordinate after scaling.
+	 * @return The turret, whether or not the connection was a success.
+	 */
+	public Turret connect(String port, double scaleX, double offsetX, double scaleY, double offsetY) {
+		Turret turret = new Turret(new ArduinoCommunicator("TURRET_" + this.turrets.length, this.protocol), port,
+				scaleX, offsetX, scaleY, offsetY);
+		try {
+			turret.connected = turret.arduino.connect(port);
+		} catch (Exception e) {
+			System.err.println("ERROR: COULD NOT CONNECT TO " + port);
+			e.printStackTrace();
+		}
+		this.add(turret);
+		return turret;
+	}
+
+	/**
+	 * Adds a turret that has already been connected, for example to a
+	 * {@link SimulatedTurret}.
+	 * 
+	 * @return The turret.
+	 */
+	public Turret add(ArduinoCommunicator arduino, double scaleX, double offsetX, double scaleY, double offsetY) {
+		Turret turret = new Turret(arduino, null, scaleX, offsetX, scaleY, offsetY);
+		turret.connected = true;
+		this.add(turret);
+		return turret;
+	}
+
+	private synchronized void add(Turret turret) {
+		turret.arduino.setMetrics(this.metrics);
+		Turret[] turrets = Arrays.copyOf(this.turrets, this.turrets.length + 1);
+		turrets[turrets.length - 1] = turret;
+		this.turrets = turrets;
+	}
+
+	/**
+	 * Sends frame coordinates to every turret. Never blocks.
+	 */
+	public void sendCoordinates(double xPos, double yPos) {
+		this.sendCoordinates(xPos, yPos, 0);
+	}
+
+	/**
+	 * Sends frame coordinates to every turret. Never blocks.
+	 * 
+	 * @param captureTime
+	 *            System.nanoTime() when the frame the coordinates come from
+	 *            was captured, or 0 if unknown.
+	 */
+	public void sendCoordinates(double xPos, double yPos, long captureTime) {
+		for (Turret turret : this.turrets)
+			turret.send(xPos, yPos, captureTime);
+	}
+
+	/**
+	 * @param metrics
+	 *            Told how long coordinates take to reach the port of every
+	 *            turret, now and later connected, or null.
+	 */
+	public synchronized void setMetrics(PipelineMetrics metrics) {
+		this.metrics = metrics;
+		for (Turret turret : this.turrets)
+			turret.arduino.setMetrics(metrics);
+	}
+
+	/**
+	 * @return The time coordinates recently took to reach the slowest
+	 *         connected turret once written, one way, in nanos.
+	 * @see ArduinoCommunicator#getSendLatency()
+	 */
+	public double getSendLatency() {
+		double latency = 0;
+		for (Turret turret : this.turrets)
+			if (turret.connected)
+				latency = Math.max(latency, turret.arduino.getSendLatency());
+		return latency;
+	}
+
+	/**
+	 * @return Every turret, in the order they were added.
+	 */
+	public Turret[] getTurrets() {
+		return this.turrets.clone();
+	}
+
+	/**
+	 * Disconnects every turret.
+	 */
+	public synchronized void disconnect() {
+		for (Turret turret : this.turrets) {
+			turret.connected = false;
+			turret.arduino.disconnect();
+		}
+		this.turrets = new Turret[0];
+	}
+}
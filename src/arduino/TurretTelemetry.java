@@ -0,0 +1,118 @@
+package arduino;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import metrics.LatencyHistogram;
+
+/**
+ * What the Arduino has reported back: where its servos are, and how long it
+ * took to acknowledge each packet of coordinates. Packets are matched to their
+ * acknowledgements by sequence number.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class TurretTelemetry {
+
+	// How much each acknowledgement moves the recent latency
+	private static final double RECENT_WEIGHT = 1 / 16.0;
+
+	// When each sequence number was last sent, or 0 once acknowledged
+	private final AtomicLongArray sentAt = new AtomicLongArray(256);
+	private final LatencyHistogram ackLatency = new LatencyHistogram();
+	// A moving average of the latest acknowledgement times, or 0 before the
+	// first, only written by the reader thread
+	private volatile double recentAckLatency = 0;
+	// The last reported servo positions, or -1 before the first report
+	private volatile int pan = -1, tilt = -1;
+	// System.nanoTime() of the last position report
+	private volatile long positionTime = 0;
+	private final AtomicLong acks = new AtomicLong(), unmatched = new AtomicLong(), corrupt = new AtomicLong();
+
+	/**
+	 * Records that a packet has been written to the port.
+	 */
+	void sent(int sequence, long now) {
+		this.sentAt.set(sequence & 0xFF, now);
+	}
+
+	/**
+	 * Records that the Arduino acknowledged a packet.
+	 */
+	void acknowledged(int sequence, long now) {
+		long sent = this.sentAt.getAndSet(sequence & 0xFF, 0);
+		if (sent == 0) {
+			this.unmatched.incrementAndGet();
+		} else {
+			this.acks.incrementAndGet();
+			this.ackLatency.record(now - sent);
+			double recent = this.recentAckLatency;
+			this.recentAckLatency = recent == 0 ? now - sent : recent + (now - sent - recent) * RECENT_WEIGHT;
+		}
+	}
+
+	/**
+	 * Records a servo position report.
+	 */
+	void position(int pan, int tilt, long now) {
+		this.pan = pan;
+		this.tilt = tilt;
+		this.positionTime = now;
+	}
+
+	/**
+	 * Records a packet that failed its checksum.
+	 */
+	void corrupt() {
+		this.corrupt.incrementAndGet();
+	}
+
+	/**
+	 * @return The time from writing a packet to reading its acknowledgement.
+	 */
+	public LatencyHistogram getAckLatency() {
+		return this.ackLatency;
+	}
+
+	/**
+	 * @return The time from writing a packet to reading its acknowledgement,
+	 *         averaged over the last few dozen, so it follows the port as it
+	 *         speeds up or slows down. In nanos, or 0 before the first.
+	 */
+	public double getRecentAckLatency() {
+		return this.recentAckLatency;
+	}
+
+	public int getPan() {
+		return this.pan;
+	}
+
+	public int getTilt() {
+		return this.tilt;
+	}
+
+	/**
+	 * @return System.nanoTime() of the last position report, or 0 if there
+	 *         has been none.
+	 */
+	public long getPositionTime() {
+		return this.positionTime;
+	}
+
+	public long getAcknowledgements() {
+		return this.acks.get();
+	}
+
+	/**
+	 * @return The number of acknowledgements for packets that were never
+	 *         sent or were already acknowledged.
+	 */
+	public long getUnmatchedAcknowledgements() {
+		return this.unmatched.get();
+	}
+
+	public long getCorruptPackets() {
+		return this.corrupt.get();
+	}
+}
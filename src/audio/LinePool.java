@@ -0,0 +1,78 @@
+package audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A few output lines kept open between sounds, so playing a sound does not
+ * mean opening a line on the sound card every time. Lines are matched to
+ * sounds by their format, and the least recently used idle line is closed to
+ * make room for a new format. Only used by the thread playing the sounds.
+ *
+ * @author Michael Huyler
+ *
+ */
+class LinePool {
+
+	private final int capacity;
+	// The bytes each line buffers, as millis of sound
+	private final int bufferMillis;
+	// Idle lines, least recently used first
+	private final List<SourceDataLine> idle = new ArrayList<SourceDataLine>();
+
+	/**
+	 * @param capacity
+	 *            The number of idle lines kept open.
+	 * @param bufferMillis
+	 *            How much sound each line buffers, in millis.
+	 */
+	LinePool(int capacity, int bufferMillis) {
+		this.capacity = capacity;
+		this.bufferMillis = bufferMillis;
+	}
+
+	/**
+	 * Takes an idle line of the given format, or opens a new one.
+	 *
+	 * @return The open line, or null if none could be opened.
+	 */
+	SourceDataLine acquire(AudioFormat format) {
+		for (int i = this.idle.size() - 1; i >= 0; i--)
+			if (this.idle.get(i).getFormat().matches(format))
+				return this.idle.remove(i);
+		try {
+			SourceDataLine line = AudioSystem.getSourceDataLine(format);
+			int frames = (int) (format.getFrameRate() * this.bufferMillis / 1000);
+			line.open(format, frames * format.getFrameSize());
+			return line;
+		} catch (LineUnavailableException | IllegalArgumentException e) {
+			System.err.println("ERROR: NO AUDIO LINE FOR " + format + ".");
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Puts a stopped line back, closing the least recently used idle line if
+	 * there are too many.
+	 */
+	void release(SourceDataLine line) {
+		this.idle.add(line);
+		while (this.idle.size() > this.capacity)
+			this.idle.remove(0).close();
+	}
+
+	/**
+	 * Closes every idle line.
+	 */
+	void close() {
+		for (SourceDataLine line : this.idle)
+			line.close();
+		this.idle.clear();
+	}
+}
@@ -0,0 +1,173 @@
+package audio;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * The bundled sound effects, decoded once into PCM and shared by everyone who
+ * plays them. Sounds are decoded the first time they are asked for, or ahead
+ * of time with {@link #preload(List)}, and the least recently played
+ * ones are dropped once the decoded sounds take up more than the memory cap.
+ *
+ * @author Michael Huyler
+ *
+ */
+public class SoundBank {
+
+	/**
+	 * A decoded sound. The samples are never changed once decoded.
+	 */
+	public static class Sound {
+		final String name;
+		final AudioFormat format;
+		final byte[] pcm;
+		final long frames;
+
+		Sound(String name, AudioFormat format, byte[] pcm) {
+			this.name = name;
+			this.format = format;
+			this.pcm = pcm;
+			this.frames = pcm.length / format.getFrameSize();
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return The length of the sound in millis.
+		 */
+		public long getMillis() {
+			return (long) (this.frames * 1000 / this.format.getFrameRate());
+		}
+	}
+
+	private final String directory;
+	private final long capacity;
+	// Least recently played first
+	private final LinkedHashMap<String, Sound> sounds = new LinkedHashMap<String, Sound>(64, 0.75f, true);
+	private long size = 0;
+
+	/**
+	 * @param directory
+	 *            The class path directory the .wav files are in, e.g.
+	 *            <code>sounds/</code>.
+	 * @param capacity
+	 *            The most bytes of decoded sound to keep.
+	 */
+	public SoundBank(String directory, long capacity) {
+		this.directory = directory;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns a decoded sound, decoding it if necessary.
+	 *
+	 * @param name
+	 *            The name of the .wav file, without its extension.
+	 * @return The sound, or null if it could not be decoded.
+	 */
+	public Sound get(String name) {
+		synchronized (this) {
+			Sound sound = this.sounds.get(name);
+			if (sound != null)
+				return sound;
+		}
+		// Decoded outside the lock, so a slow file does not hold up others
+		Sound sound = this.decode(name);
+		if (sound == null)
+			return null;
+		synchronized (this) {
+			Sound existing = this.sounds.get(name);
+			if (existing != null)
+				return existing;
+			this.sounds.put(name, sound);
+			this.size += sound.pcm.length;
+			this.evict();
+			return sound;
+		}
+	}
+
+	/**
+	 * Decodes a set of sounds ahead of time.
+	 *
+	 * @param names
+	 *            The names of the .wav files, without their extension.
+	 */
+	public void preload(List<String> names) {
+		for (String name : names)
+			this.get(name);
+	}
+
+	/**
+	 * @return The bytes of decoded sound held.
+	 */
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return The number of decoded sounds held.
+	 */
+	public synchronized int getCount() {
+		return this.sounds.size();
+	}
+
+	/**
+	 * Drops the least recently played sounds until the rest fit, always
+	 * keeping the newest.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Sound>> eldest = this.sounds.entrySet().iterator();
+		while (this.size > this.capacity && this.sounds.size() > 1) {
+			Sound sound = eldest.next().getValue();
+			eldest.remove();
+			this.size -= sound.pcm.length;
+		}
+	}
+
+	/**
+	 * Reads a .wav file and converts it to signed PCM if it is in any other
+	 * encoding.
+	 */
+	private Sound decode(String name) {
+		InputStream resource = ClassLoader.getSystemClassLoader()
+				.getResourceAsStream(this.directory + name + ".wav");
+		if (resource == null) {
+			System.err.println("ERROR: NO SOUND NAMED " + name.toUpperCase() + ".");
+			return null;
+		}
+		try (AudioInputStream in = pcm(AudioSystem.getAudioInputStream(new BufferedInputStream(resource)))) {
+			ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				pcm.write(buffer, 0, read);
+			return new Sound(name, in.getFormat(), pcm.toByteArray());
+		} catch (UnsupportedAudioFileException | IOException e) {
+			System.err.println("ERROR: COULD NOT DECODE " + name.toUpperCase() + ".");
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static AudioInputStream pcm(AudioInputStream in) {
+		AudioFormat format = in.getFormat();
+		AudioFormat.Encoding encoding = format.getEncoding();
+		if (encoding.equals(AudioFormat.Encoding.PCM_SIGNED) || encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED))
+			return in;
+		return AudioSystem.getAudioInputStream(new AudioFormat(format.getSampleRate(), 16, format.getChannels(), true,
+				false), in);
+	}
+}
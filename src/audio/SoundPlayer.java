@@ -0,0 +1,287 @@
+package audio;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays the turret's sound effects, one at a time. Used both by the GUI and
+ * when running headless.
+ * <p>
+ * Asking for a sound only leaves its name for the player thread, which never
+ * blocks the caller, so sounds can be triggered from the detection stage.
+ * The player thread takes the sound from a {@link SoundBank}, writes it to a
+ * line from a {@link LinePool} a little at a time, and reports progress
+ * between writes. A newer sound replaces one that is playing or has not
+ * started yet.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class SoundPlayer {
+
+	/**
+	 * Told how far through the current clip playback is.
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param progress
+		 *            Between 0 and 1, and 0 once the clip has stopped.
+		 */
+		void progress(double progress);
+	}
+
+	// Sounds for when the Turret finds someone
+	public static final String ACTIVE = "turret_active";
+	// 'Autopilot' ambient search noises
+	public static final String AUTO_SEARCH = "turret_autosearch";
+	// Sounds for when the Turret begins shooting
+	public static final String DEPLOY = "turret_deploy";
+	// Sounds for when the Turret is no longer operable
+	public static final String DISABLED = "turret_disabled";
+	// Sounds for when the Turret fires
+	public static final String FIRE = "turret_fire_4x";
+	// Sounds for when the Turret stops searching
+	public static final String RETIRE = "turret_retire";
+	// Sounds for when the Turret loses a target
+	public static final String SEARCH = "turret_search";
+	// The categories played by the program, decoded ahead of time
+	private static final String[] PLAYED = { ACTIVE, SEARCH, AUTO_SEARCH, RETIRE, DISABLED, DEPLOY, FIRE };
+
+	// [-80.0, 6.0206]
+	private static final float MIN_GAIN = -80.0f, GAIN_RANGE = 86.0206f;
+	// Most bytes of decoded sound kept in memory
+	private static final long BANK_CAPACITY = 16 * 1024 * 1024;
+	// Idle output lines kept open, one per format the sounds come in
+	private static final int LINES = 3;
+	// Sound buffered by a line, and written to it at a time, in millis
+	private static final int BUFFER_MILLIS = 100, CHUNK_MILLIS = 20;
+	// Asks the player thread to stop the current sound
+	private static final String STOP = "";
+
+	private final SoundBank bank;
+	// The sounds of each category, by the name of the category
+	private final Map<String, List<String>> categories;
+	private final LinePool lines = new LinePool(LINES, BUFFER_MILLIS);
+	// The latest sound asked for, not yet picked up by the player thread
+	private final AtomicReference<String> pending = new AtomicReference<String>();
+	private Thread thread;
+	private volatile boolean playing = false;
+	private volatile ProgressListener listener;
+	// The volume, between 0 and 100
+	private volatile double volume = 85.0;
+	// Used to pick sounds
+	private final Random random = new Random();
+
+	/**
+	 * @param categories
+	 *            The sounds of each category, by the name of the category.
+	 */
+	public SoundPlayer(Map<String, List<String>> categories) {
+		this(new SoundBank("sounds/", BANK_CAPACITY), categories);
+	}
+
+	/**
+	 * @param bank
+	 *            Where the sounds are decoded and kept.
+	 * @param categories
+	 *            The sounds of each category, by the name of the category.
+	 */
+	public SoundPlayer(SoundBank bank, Map<String, List<String>> categories) {
+		this.bank = bank;
+		this.categories = categories;
+	}
+
+	public SoundBank getBank() {
+		return this.bank;
+	}
+
+	/**
+	 * Decodes every category of sound effects the program plays, so the first
+	 * time each is played does not wait for it. Takes a while, so is best
+	 * called from a background thread.
+	 */
+	public void preload() {
+		for (String category : PLAYED)
+			this.bank.preload(this.getCategory(category));
+	}
+
+	/**
+	 * @return The sounds of a category, or an empty list if there is no such
+	 *         category.
+	 */
+	public List<String> getCategory(String category) {
+		List<String> sounds = this.categories.get(category);
+		return sounds == null ? Collections.<String> emptyList() : sounds;
+	}
+
+	/**
+	 * @param volume
+	 *            Between 0 and 100, used for sounds started from now on.
+	 */
+	public void setVolume(double volume) {
+		this.volume = volume;
+	}
+
+	/**
+	 * @param listener
+	 *            Told how far through each sound playback is, or null. Called
+	 *            from the player thread.
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return True if a sound is playing or about to.
+	 */
+	public boolean isPlaying() {
+		return this.playing;
+	}
+
+	/**
+	 * Plays one of the sounds of a category, picked at random.
+	 * 
+	 * @param category
+	 *            The name of the category, e.g. {@link #ACTIVE}.
+	 */
+	public void playRandom(String category) {
+		List<String> sounds = this.getCategory(category);
+		if (sounds.isEmpty()) {
+			System.err.println("ERROR: NO SOUNDS IN " + category.toUpperCase() + ".");
+			return;
+		}
+		this.play(sounds.get(this.random.nextInt(sounds.size())));
+	}
+
+	/**
+	 * Plays a sound, stopping whatever is playing first. Never blocks.
+	 * 
+	 * @param sound
+	 *            The name of the .wav file in the sounds directory, without
+	 *            its extension.
+	 */
+	public void play(String sound) {
+		if (sound == null || sound.isEmpty())
+			return;
+		this.pending.set(sound);
+		this.playing = true;
+		this.wake();
+	}
+
+	/**
+	 * Stops the sound that is playing, if any. Never blocks.
+	 */
+	public void stop() {
+		if (this.thread == null)
+			return;
+		this.pending.set(STOP);
+		this.wake();
+	}
+
+	private synchronized void wake() {
+		if (this.thread == null) {
+			this.thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					SoundPlayer.this.run();
+				}
+			}, "SOUND-PLAYER");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+		LockSupport.unpark(this.thread);
+	}
+
+	/**
+	 * The player thread. Picks up the latest sound asked for and writes it to
+	 * a line a chunk at a time, so a newer sound is picked up within a chunk.
+	 */
+	private void run() {
+		SoundBank.Sound sound = null;
+		SourceDataLine line = null;
+		int offset = 0, chunk = 0;
+		long start = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			String next = this.pending.getAndSet(null);
+			if (next != null) {
+				if (line != null) {
+					line.stop();
+					line.flush();
+					this.lines.release(line);
+					line = null;
+					sound = null;
+				}
+				if (!next.equals(STOP)) {
+					sound = this.bank.get(next);
+					line = sound == null ? null : this.lines.acquire(sound.format);
+					if (line != null) {
+						this.setGain(line);
+						start = line.getLongFramePosition();
+						offset = 0;
+						int frameSize = sound.format.getFrameSize();
+						chunk = Math.max(1, (int) (sound.format.getFrameRate() * CHUNK_MILLIS / 1000)) * frameSize;
+						line.start();
+						System.out.println("INFO: PLAYING " + next.toUpperCase() + ".");
+					} else {
+						sound = null;
+					}
+				}
+				if (sound == null)
+					this.finished();
+			}
+			if (sound == null) {
+				LockSupport.park(this);
+				continue;
+			}
+
+			if (offset < sound.pcm.length) {
+				// Blocks for at most a chunk once the line's buffer is full
+				int length = Math.min(chunk, sound.pcm.length - offset);
+				offset += line.write(sound.pcm, offset, length);
+			} else if (line.available() >= line.getBufferSize()) {
+				// Everything written has been played
+				line.stop();
+				this.lines.release(line);
+				line = null;
+				sound = null;
+				this.finished();
+				continue;
+			} else {
+				LockSupport.parkNanos(this, CHUNK_MILLIS * 1000000L);
+			}
+			ProgressListener listener = this.listener;
+			if (listener != null)
+				listener.progress(Math.min(1.0, (line.getLongFramePosition() - start) / (double) sound.frames));
+		}
+		if (line != null)
+			line.close();
+		this.lines.close();
+	}
+
+	private void setGain(SourceDataLine line) {
+		if (!line.isControlSupported(FloatControl.Type.MASTER_GAIN))
+			return;
+		FloatControl gainControl = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
+		gainControl.setValue(((float) (this.volume / 100.0f) * GAIN_RANGE) + MIN_GAIN);
+	}
+
+	/**
+	 * Reports that nothing is playing, unless another sound was asked for in
+	 * the meantime.
+	 */
+	private void finished() {
+		this.playing = false;
+		if (this.pending.get() != null)
+			this.playing = true;
+		ProgressListener listener = this.listener;
+		if (listener != null)
+			listener.progress(0.0d);
+	}
+}
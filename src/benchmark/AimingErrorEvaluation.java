@@ -0,0 +1,211 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import tracking.KalmanTarget;
+
+/**
+ * Replays face trajectories and measures how far from the face the turret
+ * would be aiming once the coordinates reach the servos, comparing the raw
+ * center of each detection with the {@link KalmanTarget} prediction.
+ * <p>
+ * A recorded trajectory is a text file with one frame per line:
+ * <code>millis,x,y</code>, leaving x and y empty (or -1) for frames where no
+ * face was detected. Without files, synthetic trajectories with detection noise
+ * and dropouts are used.
+ * <p>
+ * Usage: <code>AimingErrorEvaluation [latency ms] [trajectory.csv ...]</code>
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class AimingErrorEvaluation {
+
+	private static final double FPS = 30, SECONDS = 20, NOISE = 3, DROPOUT = 0.1;
+
+	public static void main(String[] args) throws IOException {
+		long latency = args.length > 0 ? Long.parseLong(args[0]) : 120;
+		List<Trajectory> trajectories = new ArrayList<Trajectory>();
+		for (int i = 1; i < args.length; i++)
+			trajectories.add(load(new File(args[i])));
+		if (trajectories.isEmpty())
+			trajectories = synthetic(new Random(42));
+
+		System.out.println(String.format("AIMING ERROR IN PIXELS, %d ms FROM CAPTURE TO SERVO", latency));
+		System.out.println(String.format("%-12s %-8s %8s %8s %8s %8s", "TRAJECTORY", "AIM", "MEAN", "RMS", "P95",
+				"AIMED"));
+		for (Trajectory trajectory : trajectories) {
+			report(trajectory, "raw", evaluate(trajectory, latency, false));
+			report(trajectory, "kalman", evaluate(trajectory, latency, true));
+		}
+	}
+
+	/**
+	 * @return The error of every frame the turret was aimed at, NaN where it
+	 *         was not.
+	 */
+	private static double[] evaluate(Trajectory trajectory, long latency, boolean predict) {
+		KalmanTarget target = new KalmanTarget(800, 4, 5);
+		double[] errors = new double[trajectory.size()];
+		for (int i = 0; i < errors.length; i++) {
+			long time = trajectory.time[i] * 1000000L;
+			double x = Double.NaN, y = Double.NaN;
+			if (predict) {
+				if (trajectory.seen[i])
+					target.update(trajectory.seenX[i], trajectory.seenY[i], time);
+				if (trajectory.seen[i] || target.miss(time)) {
+					x = target.predictX(latency * 1000000L);
+					y = target.predictY(latency * 1000000L);
+				}
+			} else if (trajectory.seen[i]) {
+				x = trajectory.seenX[i];
+				y = trajectory.seenY[i];
+			}
+			double[] truth = trajectory.at(trajectory.time[i] + latency);
+			errors[i] = truth == null || Double.isNaN(x) ? Double.NaN : Math.hypot(x - truth[0], y - truth[1]);
+		}
+		return errors;
+	}
+
+	private static void report(Trajectory trajectory, String aim, double[] errors) {
+		double[] aimed = new double[errors.length];
+		int count = 0;
+		double sum = 0, squares = 0;
+		for (double error : errors) {
+			if (Double.isNaN(error))
+				continue;
+			aimed[count++] = error;
+			sum += error;
+			squares += error * error;
+		}
+		Arrays.sort(aimed, 0, count);
+		System.out.println(String.format("%-12s %-8s %8.1f %8.1f %8.1f %7.1f%%", trajectory.name, aim, sum / count,
+				Math.sqrt(squares / count), aimed[(int) Math.min(count - 1, Math.ceil(0.95 * count) - 1)],
+				100.0 * count / errors.length));
+	}
+
+	private static Trajectory load(File file) throws IOException {
+		Trajectory trajectory = new Trajectory(file.getName());
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(",", -1);
+				if (fields.length < 3 || fields[0].trim().isEmpty() || !Character.isDigit(fields[0].trim().charAt(0)))
+					continue;
+				long time = Long.parseLong(fields[0].trim());
+				if (fields[1].trim().isEmpty() || Double.parseDouble(fields[1]) < 0)
+					trajectory.add(time, Double.NaN, Double.NaN, false);
+				else
+					trajectory.add(time, Double.parseDouble(fields[1]), Double.parseDouble(fields[2]), true);
+			}
+		} finally {
+			reader.close();
+		}
+		// Without ground truth, the detections themselves are the truth
+		trajectory.truthX = trajectory.seenX;
+		trajectory.truthY = trajectory.seenY;
+		return trajectory;
+	}
+
+	/**
+	 * Someone swaying in front of the turret, someone walking across the frame
+	 * and back, and someone who keeps stopping and starting.
+	 */
+	private static List<Trajectory> synthetic(Random random) {
+		List<Trajectory> trajectories = new ArrayList<Trajectory>();
+		String[] names = { "sway", "walk", "stop-go" };
+		for (String name : names) {
+			Trajectory trajectory = new Trajectory(name);
+			for (int i = 0; i < FPS * SECONDS; i++) {
+				double t = i / FPS;
+				double x, y;
+				if (name.equals("sway")) {
+					x = 320 + 150 * Math.sin(Math.PI * t);
+					y = 240 + 30 * Math.sin(Math.PI * t / 2);
+				} else if (name.equals("walk")) {
+					// 200 px/s, turning at the edges of a 640 wide frame
+					double d = (200 * t) % 1080;
+					x = 50 + (d < 540 ? d : 1080 - d);
+					y = 240;
+				} else {
+					// 300 px/s for a second, then still for a second
+					double d = (300 * (Math.floor(t / 2) + Math.min(1, t % 2))) % 1080;
+					x = 50 + (d < 540 ? d : 1080 - d);
+					y = 200 + 20 * Math.sin(t);
+				}
+				trajectory.add(Math.round(1000 * t), x, y, random.nextDouble() >= DROPOUT);
+			}
+			trajectory.truthX = trajectory.seenX.clone();
+			trajectory.truthY = trajectory.seenY.clone();
+			for (int i = 0; i < trajectory.size(); i++) {
+				trajectory.seenX[i] += NOISE * random.nextGaussian();
+				trajectory.seenY[i] += NOISE * random.nextGaussian();
+			}
+			trajectories.add(trajectory);
+		}
+		return trajectories;
+	}
+
+	/**
+	 * Where a face really was, and where it was detected, frame by frame.
+	 */
+	private static class Trajectory {
+		final String name;
+		long[] time = new long[64];
+		double[] seenX = new double[64], seenY = new double[64];
+		double[] truthX, truthY;
+		boolean[] seen = new boolean[64];
+		private int size = 0;
+
+		Trajectory(String name) {
+			this.name = name;
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		void add(long millis, double x, double y, boolean detected) {
+			if (this.size == this.time.length) {
+				this.time = Arrays.copyOf(this.time, 2 * this.size);
+				this.seenX = Arrays.copyOf(this.seenX, 2 * this.size);
+				this.seenY = Arrays.copyOf(this.seenY, 2 * this.size);
+				this.seen = Arrays.copyOf(this.seen, 2 * this.size);
+			}
+			this.time[this.size] = millis;
+			this.seenX[this.size] = x;
+			this.seenY[this.size] = y;
+			this.seen[this.size++] = detected;
+		}
+
+		/**
+		 * @return Where the face really was at the given time, interpolating
+		 *         between the nearest known frames, or null if unknown.
+		 */
+		double[] at(long millis) {
+			int after = Arrays.binarySearch(this.time, 0, this.size, millis);
+			if (after < 0)
+				after = -after - 1;
+			int before = after;
+			while (before >= 0 && (before >= this.size || Double.isNaN(this.truthX[before])
+					|| this.time[before] > millis))
+				before--;
+			while (after < this.size && Double.isNaN(this.truthX[after]))
+				after++;
+			if (before < 0 || after >= this.size)
+				return null;
+			double w = this.time[after] == this.time[before] ? 0
+					: (millis - this.time[before]) / (double) (this.time[after] - this.time[before]);
+			return new double[] { this.truthX[before] + w * (this.truthX[after] - this.truthX[before]),
+					this.truthY[before] + w * (this.truthY[after] - this.truthY[before]) };
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.objdetect.CascadeClassifier;
+
+import application.ResourceManifest;
+import application.TargetFollower;
+import application.Utils;
+import arduino.TurretManager;
+import audio.SoundPlayer;
+import metrics.PipelineMetrics;
+import tracking.FaceDetector;
+import tracking.Frame;
+import tracking.FramePipeline;
+import tracking.FrameScheduler;
+import tracking.FrameSource;
+
+/**
+ * Replays a video file or image directory, looped, through a
+ * {@link FramePipeline} doing the same detection work as the program, and
+ * measures what the detection thread allocates once it is warmed up: the
+ * bytes of Java heap it allocates, and how much the memory the process holds
+ * grows, which includes native memory: its resident memory on Linux, the
+ * memory committed to it elsewhere. Both should stay at or near
+ * zero per frame.
+ * <p>
+ * Usage: <code>AllocationBenchmark cascade.xml source [frames]</code>
+ *
+ * @author Michael Huyler
+ *
+ */
+public class AllocationBenchmark {
+
+	// The same as the program
+	private static final int DETECT_INTERVAL = 5, FULL_SWEEP_INTERVAL = 10, DETECT_BUDGET = 20;
+	private static final float FACE_PORTION = 0.2f;
+	// Frames detected before measuring, so every buffer has been allocated
+	// and the JIT has compiled the detection path
+	private static final int WARMUP = 1000;
+	// Frames are never too late to be detected
+	private static final long DEADLINE = 10000;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 2) {
+			System.err.println("USAGE: AllocationBenchmark cascade.xml source [frames]");
+			System.exit(1);
+		}
+		Benchmarks.loadOpenCV();
+		final int frames = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+
+		FrameSource source = FrameSource.create(args[1]);
+		if (!source.open()) {
+			System.err.println("ERROR: COULD NOT OPEN " + args[1]);
+			System.exit(1);
+		}
+		source.setPacing(FrameSource.Pacing.FAST);
+		source.setLoop(true);
+
+		final FaceDetector detector = new FaceDetector(FACE_PORTION);
+		detector.setCascade(args[0], new CascadeClassifier(args[0]));
+		detector.setDetectInterval(DETECT_INTERVAL);
+		detector.setFullSweepInterval(FULL_SWEEP_INTERVAL);
+		detector.setLatencyBudget(DETECT_BUDGET);
+		final PipelineMetrics metrics = new PipelineMetrics();
+		final TargetFollower follower = new TargetFollower(new TurretManager(),
+				new SoundPlayer(ResourceManifest.load().getCategories()), true);
+		final Scalar color = new Scalar(0, 0, 255, 255);
+		final Point tl = new Point(), br = new Point(), center = new Point();
+
+		// Read on the detection thread, once warmed up and once done
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		final long[] allocated = new long[2];
+		final CountDownLatch warm = new CountDownLatch(1), done = new CountDownLatch(1);
+		FramePipeline.FrameProcessor detect = new FramePipeline.FrameProcessor() {
+			private int detected = 0;
+
+			@Override
+			public void process(Frame frame) {
+				int faceCount = detector.detect(frame);
+				frame.detectTime = System.nanoTime();
+				Utils.drawFaces(frame.image, frame.rects, faceCount, color, tl, br, center);
+				follower.update(frame, faceCount);
+				metrics.record(frame);
+				Utils.drawGrid(frame.image, 10, color, tl, br);
+
+				this.detected++;
+				if (this.detected == WARMUP) {
+					allocated[0] = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+					warm.countDown();
+				} else if (this.detected == WARMUP + frames) {
+					allocated[1] = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+					done.countDown();
+				}
+			}
+		};
+		FramePipeline.FrameProcessor idle = new FramePipeline.FrameProcessor() {
+			@Override
+			public void process(Frame frame) {
+			}
+		};
+		FramePipeline pipeline = new FramePipeline(source, detect, idle, new FrameScheduler(DEADLINE),
+				source.getRows(), source.getCols());
+		pipeline.setLossless(true);
+
+		pipeline.start();
+		warm.await();
+		long rssBefore = Benchmarks.residentKilobytes(), gcBefore = collections();
+		long start = System.nanoTime();
+		done.await();
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		long rssAfter = Benchmarks.residentKilobytes(), gcAfter = collections();
+		int buffers = pipeline.getAllocatedFrames();
+		pipeline.stop();
+		source.release();
+		detector.release();
+
+		long heap = allocated[1] - allocated[0];
+		System.out.println(String.format("FRAMES MEASURED      %d AFTER %d TO WARM UP, %.1f FPS", frames, WARMUP,
+				frames / elapsed));
+		System.out.println(String.format("HEAP ALLOCATED       %d BYTES, %.2f BYTES PER FRAME", heap,
+				(double) heap / frames));
+		if (rssBefore < 0)
+			System.out.println("PROCESS MEMORY       NOT AVAILABLE ON THIS SYSTEM");
+		else
+			System.out.println(String.format("PROCESS MEMORY       %d KB TO %d KB, %.2f BYTES PER FRAME", rssBefore,
+					rssAfter, (rssAfter - rssBefore) * 1024.0 / frames));
+		System.out.println(String.format("GARBAGE COLLECTIONS  %d", gcAfter - gcBefore));
+		System.out.println(String.format("FRAME BUFFERS        %d", buffers));
+	}
+
+	/**
+	 * @return The number of garbage collections so far, of every collector.
+	 */
+	private static long collections() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, collector.getCollectionCount());
+		return count;
+	}
+}
@@ -0,0 +1,189 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import application.HeadlessTracker;
+import application.ResourceManifest;
+
+/**
+ * Helpers shared by the stand-alone benchmark programs in this package.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class Benchmarks {
+
+	// A bundled resource, to find the others by when the benchmarks are run
+	// from another project
+	private static final String BUNDLED = "haarcascades/haarcascade_frontalface_alt.xml";
+
+	/**
+	 * Loads the OpenCV native library the same way {@link application.Main}
+	 * does.
+	 */
+	public static void loadOpenCV() {
+		HeadlessTracker.loadOpenCV(resources());
+	}
+
+	/**
+	 * @return The directory the bundled resources are found in, ending in a
+	 *         separator.
+	 */
+	public static String resources() {
+		URL bundled = ClassLoader.getSystemClassLoader().getResource(BUNDLED);
+		if (bundled == null)
+			return ResourceManifest.root();
+		try {
+			// The class path entry holding the bundled resource
+			return ResourceManifest.root(new URL(bundled, "../"));
+		} catch (MalformedURLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Builds a BGR test frame from the bundled background image.
+	 * 
+	 * @param rows
+	 *            The height of the frame.
+	 * @param cols
+	 *            The width of the frame.
+	 * @return The frame, or a mid-gray frame if the image could not be read.
+	 */
+	public static Mat sampleFrame(int rows, int cols) {
+		Mat image = Imgcodecs.imread(resources() + "images/aperture_science.jpg");
+		Mat frame = new Mat(rows, cols, CvType.CV_8UC3);
+		if (image == null || image.empty()) {
+			frame.setTo(new Scalar(128, 128, 128));
+		} else {
+			Imgproc.resize(image, frame, new Size(cols, rows));
+			image.release();
+		}
+		return frame;
+	}
+
+	/**
+	 * Reads the bundled 640x480 sample frame of a face, drawn so the Haar
+	 * frontal face classifier finds exactly one face in it.
+	 * 
+	 * @return The BGR frame, or the background frame if it could not be
+	 *         read.
+	 */
+	public static Mat faceFrame() {
+		Mat frame = Imgcodecs.imread(resources() + "images/sample_face.png");
+		if (frame == null || frame.empty()) {
+			System.err.println("ERROR: COULD NOT READ THE SAMPLE FACE");
+			return sampleFrame(480, 640);
+		}
+		return frame;
+	}
+
+	/**
+	 * Loads every image in a directory, in name order, as a test set of
+	 * recorded frames.
+	 * 
+	 * @param directory
+	 *            The directory to read, or <code>null</code> to use the
+	 *            bundled sample frame of a face.
+	 * @return The BGR frames.
+	 */
+	public static List<Mat> loadFrames(String directory) {
+		List<Mat> frames = new ArrayList<Mat>();
+		if (directory == null) {
+			frames.add(faceFrame());
+			return frames;
+		}
+		File[] files = new File(directory).listFiles();
+		if (files == null) {
+			System.err.println("ERROR: " + directory + " IS NOT A DIRECTORY");
+			return frames;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			Mat frame = Imgcodecs.imread(file.getAbsolutePath());
+			if (frame != null && !frame.empty())
+				frames.add(frame);
+		}
+		return frames;
+	}
+
+	/**
+	 * Converts a BGR frame to the equalized gray scale image the classifiers
+	 * work on.
+	 * 
+	 * @param frame
+	 *            The BGR frame.
+	 * @return A new gray scale image.
+	 */
+	public static Mat equalizedGray(Mat frame) {
+		Mat gray = new Mat();
+		Imgproc.cvtColor(frame, gray, Imgproc.COLOR_BGR2GRAY);
+		Imgproc.equalizeHist(gray, gray);
+		return gray;
+	}
+
+	/**
+	 * @return The memory of this process, Java and native alike, in
+	 *         kilobytes, or -1 where the system does not say. On Linux the
+	 *         memory held in RAM, elsewhere the memory committed to the
+	 *         process, which on Windows is its private bytes.
+	 */
+	public static long residentKilobytes() {
+		try {
+			for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII))
+				if (line.startsWith("VmRSS:"))
+					return Long.parseLong(line.replaceAll("[^0-9]", ""));
+		} catch (IOException | NumberFormatException e) {
+			// Not Linux
+		}
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			long committed = ((com.sun.management.OperatingSystemMXBean) os).getCommittedVirtualMemorySize();
+			if (committed >= 0)
+				return committed / 1024;
+		}
+		return -1;
+	}
+
+	/**
+	 * Runs a task repeatedly and prints the mean time per run.
+	 * 
+	 * @param name
+	 *            The name printed next to the result.
+	 * @param warmup
+	 *            The number of untimed runs used to warm up the JIT.
+	 * @param iterations
+	 *            The number of timed runs.
+	 * @param task
+	 *            The task to measure.
+	 * @return The mean time per run in nanoseconds.
+	 */
+	public static double time(String name, int warmup, int iterations, Runnable task) {
+		for (int i = 0; i < warmup; i++)
+			task.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			task.run();
+		double mean = (System.nanoTime() - start) / (double) iterations;
+		System.out.println(String.format("%-40s %12.1f us/op", name, mean / 1000.0));
+		return mean;
+	}
+}
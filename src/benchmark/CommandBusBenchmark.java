@@ -0,0 +1,177 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import application.Command;
+import application.CommandBus;
+import metrics.LatencyHistogram;
+import metrics.PipelineMetrics;
+
+/**
+ * Gives commands from several threads at once, the way the recognizer and
+ * the window do, including bursts of the same command, while a stand-in
+ * frame loop reads the state the commands change. Reports how many commands
+ * were applied, coalesced and dropped, how long they took to apply, and how
+ * long giving a command kept the caller, which should never include the time
+ * to apply it.
+ * <p>
+ * Then gives runs of commands from one thread, faster than they can be
+ * applied, and checks that the state they leave is always the command given
+ * last, however the repeats in between were coalesced.
+ * <p>
+ * Usage: <code>CommandBusBenchmark [commands per thread] [threads] [apply millis]</code>
+ *
+ * @author Michael Huyler
+ *
+ */
+public class CommandBusBenchmark {
+
+	// The same as the program
+	private static final int CAPACITY = 16, DEBOUNCE = 1000;
+	// Time in millis between the commands each thread gives
+	private static final int INTERVAL = 2;
+	// The runs of commands given to check the order, and their length
+	private static final int RUNS = 20, RUN_LENGTH = 8;
+
+	// Read by the frame loop, only changed by the bus
+	private static volatile Command state;
+
+	public static void main(String[] args) throws InterruptedException {
+		final int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		final int applyMillis = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		PipelineMetrics metrics = new PipelineMetrics();
+		final CommandBus bus = new CommandBus(CAPACITY, DEBOUNCE, new CommandBus.Handler() {
+			@Override
+			public void apply(Command command) {
+				// Stands in for loading a classifier
+				try {
+					Thread.sleep(applyMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				state = command;
+			}
+		}, metrics);
+		bus.start();
+
+		final LatencyHistogram posting = new LatencyHistogram();
+		final Command[] commands = Command.values();
+		Thread[] posters = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final Random random = new Random(t);
+			posters[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < count; i++) {
+						// Half the time the same command as before, as when a
+						// phrase is heard twice
+						Command command = commands[random.nextInt(2) == 0 ? 0 : random.nextInt(commands.length)];
+						long start = System.nanoTime();
+						bus.post(command, start);
+						posting.record(System.nanoTime() - start);
+						try {
+							Thread.sleep(INTERVAL);
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}, "POSTER " + t);
+		}
+
+		final LatencyHistogram frames = new LatencyHistogram();
+		final long[] changes = new long[1];
+		Thread frameLoop = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				long last = System.nanoTime();
+				Command seen = null;
+				while (!Thread.currentThread().isInterrupted()) {
+					Command current = state;
+					if (current != seen)
+						changes[0]++;
+					seen = current;
+					long now = System.nanoTime();
+					frames.record(now - last);
+					last = now;
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "FRAME-LOOP");
+
+		frameLoop.start();
+		for (Thread poster : posters)
+			poster.start();
+		for (Thread poster : posters)
+			poster.join();
+		Thread.sleep(CAPACITY * applyMillis + 100);
+		frameLoop.interrupt();
+		frameLoop.join();
+		bus.shutdown();
+
+		LatencyHistogram applied = metrics.get(PipelineMetrics.Stage.COMMAND);
+		System.out.println(String.format("%d GIVEN, %d APPLIED, %d COALESCED, %d DROPPED, %d SEEN BY THE FRAME LOOP",
+				count * threads, bus.getApplied(), bus.getCoalesced(), bus.getDropped(), changes[0]));
+		System.out.println(String.format("%-12s %9s %9s %9s", "MS", "P50", "P99", "MAX"));
+		print("GIVE", posting);
+		print("APPLY", applied);
+		print("FRAME", frames);
+
+		checkOrder(applyMillis);
+	}
+
+	/**
+	 * Gives runs of commands while the first of each is still being applied,
+	 * and reports every run whose last command is not the one left in
+	 * effect. The first run gives a command, another and the first again.
+	 */
+	private static void checkOrder(final int applyMillis) throws InterruptedException {
+		CommandBus bus = new CommandBus(CAPACITY, DEBOUNCE, new CommandBus.Handler() {
+			@Override
+			public void apply(Command command) {
+				try {
+					Thread.sleep(applyMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				state = command;
+			}
+		}, null);
+		bus.start();
+
+		Random random = new Random(0);
+		Command[] commands = Command.values();
+		int wrong = 0;
+		for (int run = 0; run < RUNS; run++) {
+			Command[] given = run == 0 ? new Command[] { Command.SEARCH_HAAR, Command.SEARCH_LBP, Command.SEARCH_HAAR }
+					: new Command[RUN_LENGTH];
+			for (int i = 0; i < given.length; i++) {
+				// Few different commands, so most are repeats
+				if (given[i] == null)
+					given[i] = commands[random.nextInt(3)];
+				bus.post(given[i], System.nanoTime());
+			}
+			Thread.sleep(CAPACITY * applyMillis + 100);
+			Command last = given[given.length - 1];
+			if (state != last) {
+				wrong++;
+				System.out.println(String.format("WRONG ORDER: GAVE %s, LEFT %s", Arrays.toString(given), state));
+			}
+		}
+		bus.shutdown();
+		System.out.println(String.format("%d OF %d RUNS LEFT THE LAST COMMAND IN EFFECT, %d COALESCED",
+				RUNS - wrong, RUNS, bus.getCoalesced()));
+	}
+
+	private static void print(String name, LatencyHistogram histogram) {
+		System.out.println(String.format("%-12s %9.3f %9.3f %9.3f", name, histogram.getPercentile(50) / 1e6,
+				histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6));
+	}
+}
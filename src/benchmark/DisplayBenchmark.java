@@ -0,0 +1,82 @@
+package benchmark;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import application.MatImageSink;
+import application.Utils;
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+/**
+ * Compares the cost of getting a frame onto the screen through
+ * {@link Utils#mat2Image(Mat)} with the cost of going through a
+ * {@link MatImageSink}. Both paths are measured up to the point where the FX
+ * thread has displayed the frame.
+ * <p>
+ * Usage: <code>DisplayBenchmark [width height]</code>
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class DisplayBenchmark {
+
+	private static final int WARMUP = 200, ITERATIONS = 2000;
+
+	public static void main(String[] args) throws Exception {
+		int cols = args.length == 2 ? Integer.parseInt(args[0]) : 640;
+		int rows = args.length == 2 ? Integer.parseInt(args[1]) : 480;
+
+		Benchmarks.loadOpenCV();
+		// Start the FX toolkit without a stage
+		new JFXPanel();
+
+		final Mat color = Benchmarks.sampleFrame(rows, cols);
+		final Mat gray = new Mat();
+		Imgproc.cvtColor(color, gray, Imgproc.COLOR_BGR2GRAY);
+		final ImageView view = new ImageView();
+		final MatImageSink sink = new MatImageSink(view);
+
+		System.out.println(String.format("DISPLAYING %dx%d FRAMES", cols, rows));
+		for (final Mat frame : new Mat[] { color, gray }) {
+			String type = frame.channels() == 1 ? "GRAY" : "BGR";
+			Benchmarks.time("Utils.mat2Image " + type, WARMUP, ITERATIONS, new Runnable() {
+				@Override
+				public void run() {
+					final Image image = Utils.mat2Image(frame);
+					final CountDownLatch shown = new CountDownLatch(1);
+					Platform.runLater(new Runnable() {
+						@Override
+						public void run() {
+							view.setImage(image);
+							shown.countDown();
+						}
+					});
+					await(shown);
+				}
+			});
+			Benchmarks.time("MatImageSink.show " + type, WARMUP, ITERATIONS, new Runnable() {
+				@Override
+				public void run() {
+					long presented = sink.getPresentedFrames();
+					sink.show(frame);
+					while (sink.getPresentedFrames() == presented)
+						Thread.yield();
+				}
+			});
+		}
+		System.exit(0);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
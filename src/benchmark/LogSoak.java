@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import logging.LogOutputStream;
+import logging.LogRing;
+
+/**
+ * Logs millions of lines from several threads into a {@link LogRing}, the
+ * way the program logs per frame and per serial write, while a reader drains
+ * it like the log box does. Reports the heap in use after a collection at
+ * regular intervals, which should stay flat however many lines are written.
+ * <p>
+ * Usage: <code>LogSoak [millions of lines] [threads]</code>
+ *
+ * @author Michael Huyler
+ *
+ */
+public class LogSoak {
+
+	// Lines kept by the ring, the same as the program
+	private static final int CAPACITY = 1024;
+	// Time in millis between reads, the same as the log box
+	private static final int READ_INTERVAL = 100;
+	// The number of reports over the run
+	private static final int REPORTS = 10;
+
+	public static void main(String[] args) throws InterruptedException {
+		final long lines = (args.length > 0 ? Long.parseLong(args[0]) : 10) * 1000000L;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+		final LogRing ring = new LogRing(CAPACITY);
+		final PrintStream stream = new PrintStream(new LogOutputStream(ring), true);
+		final long perThread = lines / threads;
+		Thread[] writers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int id = t;
+			writers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (long i = 0; i < perThread; i++)
+						stream.println("INFO: FRAME " + i + " ON CAMERA " + id + " SENT TO TURRET_0.");
+				}
+			}, "LOG-WRITER " + t);
+		}
+
+		final long[] read = new long[2];
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				StringBuilder text = new StringBuilder();
+				long cursor = 0;
+				while (!Thread.currentThread().isInterrupted()) {
+					text.setLength(0);
+					cursor = ring.read(cursor, text, CAPACITY);
+					read[0] += text.length();
+					try {
+						Thread.sleep(READ_INTERVAL);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+				read[1] = cursor;
+			}
+		}, "LOG-READER");
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		System.gc();
+		long baseline = memory.getHeapMemoryUsage().getUsed();
+		long start = System.nanoTime();
+		reader.start();
+		for (Thread writer : writers)
+			writer.start();
+
+		System.out.println(String.format("%12s %12s %12s", "LINES", "HEAP KB", "GROWTH KB"));
+		long step = lines / REPORTS, next = step;
+		while (ring.getWritten() < perThread * threads) {
+			Thread.sleep(10);
+			if (ring.getWritten() >= next) {
+				System.gc();
+				long used = memory.getHeapMemoryUsage().getUsed();
+				System.out.println(String.format("%12d %12d %12d", ring.getWritten(), used / 1024,
+						(used - baseline) / 1024));
+				next += step;
+			}
+		}
+		for (Thread writer : writers)
+			writer.join();
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		reader.interrupt();
+		reader.join();
+		System.out.println(String.format("%d LINES IN %.1f s (%.0f LINES/S), %d CHARACTERS READ", ring.getWritten(),
+				elapsed, ring.getWritten() / elapsed, read[0]));
+	}
+}
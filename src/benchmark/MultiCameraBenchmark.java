@@ -0,0 +1,97 @@
+package benchmark;
+
+import org.opencv.objdetect.CascadeClassifier;
+
+import tracking.DetectionPool;
+import tracking.FaceDetector;
+import tracking.Frame;
+import tracking.FramePipeline;
+import tracking.FrameScheduler;
+import tracking.FrameSource;
+
+/**
+ * Runs several video files or image directories as if they were cameras, as
+ * fast as they can be read, each through its own {@link FramePipeline}, with
+ * all of them sharing one {@link DetectionPool}.
+ * Reports the rate at which each source was detected, the total throughput,
+ * and how fairly the pool shared itself out (Jain's index: 1 when every source
+ * got the same, 1/n when one source got everything).
+ * <p>
+ * Usage:
+ * <code>MultiCameraBenchmark cascade.xml threads seconds source [source ...]</code>
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class MultiCameraBenchmark {
+
+	// Frames are never too late to be detected, so the pool is saturated
+	private static final long DEADLINE = 10000;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 4) {
+			System.err.println("USAGE: MultiCameraBenchmark cascade.xml threads seconds source [source ...]");
+			System.exit(1);
+		}
+		Benchmarks.loadOpenCV();
+		final String cascadePath = args[0];
+		int threads = Integer.parseInt(args[1]);
+		int seconds = Integer.parseInt(args[2]);
+		int sources = args.length - 3;
+
+		DetectionPool pool = new DetectionPool(threads);
+		FramePipeline[] pipelines = new FramePipeline[sources];
+		FrameSource[] grabbers = new FrameSource[sources];
+		FramePipeline.FrameProcessor renderer = new FramePipeline.FrameProcessor() {
+			@Override
+			public void process(Frame frame) {
+			}
+		};
+		for (int i = 0; i < sources; i++) {
+			grabbers[i] = FrameSource.create(args[i + 3]);
+			if (!grabbers[i].open()) {
+				System.err.println("ERROR: COULD NOT OPEN " + args[i + 3]);
+				System.exit(1);
+			}
+			grabbers[i].setPacing(FrameSource.Pacing.FAST);
+			grabbers[i].setLoop(true);
+			final FaceDetector detector = new FaceDetector(0.2f);
+			detector.setCascade(cascadePath, new CascadeClassifier(cascadePath));
+			FramePipeline.FrameProcessor detect = new FramePipeline.FrameProcessor() {
+				@Override
+				public void process(Frame frame) {
+					detector.detect(frame);
+				}
+			};
+			pipelines[i] = new FramePipeline(grabbers[i], detect, renderer, new FrameScheduler(DEADLINE),
+					grabbers[i].getRows(), grabbers[i].getCols(), i, pool);
+		}
+
+		pool.start();
+		for (FramePipeline pipeline : pipelines)
+			pipeline.start();
+		long start = System.nanoTime();
+		Thread.sleep(1000L * seconds);
+		for (FramePipeline pipeline : pipelines)
+			pipeline.stop();
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		System.out.println(String.format("%d SOURCES, %d DETECTION THREADS, %d s", sources, threads, seconds));
+		System.out.println(String.format("%-4s %-30s %10s %10s %10s %10s", "ID", "SOURCE", "CAPTURED", "DETECTED",
+				"DROPPED", "FPS"));
+		double sum = 0, squares = 0;
+		for (int i = 0; i < sources; i++) {
+			FramePipeline pipeline = pipelines[i];
+			double fps = pipeline.getDetectedFrames() / elapsed;
+			sum += fps;
+			squares += fps * fps;
+			System.out.println(String.format("%-4d %-30s %10d %10d %10d %10.1f", pipeline.getSourceId(),
+					grabbers[i], pipeline.getCapturedFrames(), pipeline.getDetectedFrames(),
+					pipeline.getDroppedFrames(), fps));
+			grabbers[i].release();
+		}
+		System.out.println(String.format("TOTAL %.1f FPS, FAIRNESS %.3f", sum,
+				squares == 0 ? 0 : sum * sum / (sources * squares)));
+	}
+}
@@ -0,0 +1,109 @@
+package benchmark;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import arduino.ArduinoCommunicator;
+import arduino.SimulatedTurret;
+import arduino.TurretManager;
+import arduino.TurretManager.Turret;
+import arduino.TurretTelemetry;
+import metrics.LatencyHistogram;
+
+/**
+ * Drives several {@link SimulatedTurret}s at once through a
+ * {@link TurretManager}, the way the detection thread would, and reports how
+ * long fanning coordinates out takes on the calling thread and how each
+ * turret kept up.
+ * <p>
+ * Every other turret is mirrored, to check that each one receives its own
+ * transformed coordinates.
+ * <p>
+ * Usage: <code>MultiTurretBenchmark [turrets [seconds [fps]]]</code>
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class MultiTurretBenchmark {
+
+	private static final int WIDTH = 640, HEIGHT = 480;
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int fps = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+		TurretManager manager = new TurretManager();
+		SimulatedTurret[] simulated = new SimulatedTurret[count];
+		for (int i = 0; i < count; i++) {
+			simulated[i] = simulate(manager, i);
+		}
+
+		LatencyHistogram fanOut = new LatencyHistogram();
+		long interval = 1000000000L / fps;
+		long next = System.nanoTime();
+		double x = 0, y = 0;
+		for (int frame = 0; frame < seconds * fps; frame++) {
+			// A face moving around the middle of the frame
+			double t = frame / (double) fps;
+			x = WIDTH / 2 + 200 * Math.sin(t);
+			y = HEIGHT / 2 + 100 * Math.cos(t / 2);
+			long start = System.nanoTime();
+			manager.sendCoordinates(x, y);
+			fanOut.record(System.nanoTime() - start);
+			next += interval;
+			long wait = next - System.nanoTime();
+			if (wait > 0)
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+		}
+		// Let the servos catch up with the last coordinates
+		Thread.sleep(1000);
+
+		System.out.println(String.format("%d TURRETS, %d FRAMES AT %d FPS", count, seconds * fps, fps));
+		System.out.println("FAN OUT ON THE DETECTION THREAD: " + fanOut);
+		System.out.println(String.format("%-10s %8s %8s %8s %10s %10s %12s", "TURRET", "SENT", "COALESCED", "ACKED",
+				"P50 ms", "P99 ms", "POSITION"));
+		boolean placed = true;
+		Turret[] turrets = manager.getTurrets();
+		for (int i = 0; i < turrets.length; i++) {
+			ArduinoCommunicator arduino = turrets[i].getArduino();
+			TurretTelemetry telemetry = arduino.getTelemetry();
+			LatencyHistogram ack = telemetry.getAckLatency();
+			System.out.println(String.format("%-10s %8d %8d %8d %10.2f %10.2f %6d,%5d", arduino.getName(),
+					arduino.getWriter().getWrittenPackets(), arduino.getWriter().getCoalescedWrites(),
+					telemetry.getAcknowledgements(), ack.getPercentile(50) / 1e6, ack.getPercentile(99) / 1e6,
+					telemetry.getPan(), telemetry.getTilt()));
+			// The servos should have settled on this turret's view of the
+			// last coordinates
+			int expectedX = (int) (i % 2 == 0 ? x : WIDTH - x) / 10;
+			placed &= telemetry.getPan() == expectedX && telemetry.getTilt() == (int) y / 10;
+		}
+		System.out.println(placed ? "EVERY TURRET SETTLED ON ITS OWN COORDINATES"
+				: "SOME TURRETS DID NOT SETTLE ON THEIR COORDINATES");
+		manager.disconnect();
+	}
+
+	/**
+	 * Connects a simulated turret to the manager through a pair of pipes.
+	 */
+	private static SimulatedTurret simulate(TurretManager manager, int index) throws IOException {
+		PipedOutputStream toTurret = new PipedOutputStream();
+		PipedInputStream turretIn = new PipedInputStream(toTurret, 1024);
+		PipedOutputStream fromTurret = new PipedOutputStream();
+		PipedInputStream hostIn = new PipedInputStream(fromTurret, 1024);
+
+		SimulatedTurret turret = new SimulatedTurret(turretIn, fromTurret, 4, 1);
+		Thread thread = new Thread(turret, "SIMULATED-TURRET " + index);
+		thread.setDaemon(true);
+		thread.start();
+
+		ArduinoCommunicator arduino = new ArduinoCommunicator("TURRET_" + index, ArduinoCommunicator.Protocol.BINARY);
+		arduino.connect(hostIn, toTurret);
+		if (index % 2 == 0)
+			manager.add(arduino, 1, 0, 1, 0);
+		else
+			manager.add(arduino, -1, WIDTH, 1, 0);
+		return turret;
+	}
+}
@@ -0,0 +1,137 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+import org.opencv.objdetect.Objdetect;
+
+import tracking.FaceDetector;
+import tracking.Frame;
+import tracking.NonMaximumSuppression;
+import tracking.ParallelDetector;
+
+/**
+ * Measures how {@link ParallelDetector} scales with the number of cores, and
+ * checks that its detections are exactly those of a single classifier
+ * searching the whole frame on one thread: the same rectangles, to the pixel.
+ * Reports the frames where they differ, with the reference faces that were
+ * missed and the detections that were not in the reference.
+ * <p>
+ * Usage: <code>ParallelDetectionBenchmark cascade.xml [frame directory]</code>
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class ParallelDetectionBenchmark {
+
+	private static final int ROUNDS = 20;
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("USAGE: ParallelDetectionBenchmark cascade.xml [frame directory]");
+			System.exit(1);
+		}
+		Benchmarks.loadOpenCV();
+		String cascadePath = args[0];
+		List<Mat> grays = new ArrayList<Mat>();
+		for (Mat frame : Benchmarks.loadFrames(args.length > 1 ? args[1] : null))
+			grays.add(Benchmarks.equalizedGray(frame));
+		if (grays.isEmpty()) {
+			System.err.println("ERROR: NO FRAMES TO DETECT IN");
+			System.exit(1);
+		}
+
+		// The single threaded reference
+		CascadeClassifier cascade = new CascadeClassifier(cascadePath);
+		List<int[]> reference = new ArrayList<int[]>();
+		MatOfRect found = new MatOfRect();
+		long start = System.nanoTime();
+		for (int round = 0; round < ROUNDS; round++) {
+			for (Mat gray : grays) {
+				int minSize = Math.round(0.2f * gray.rows());
+				cascade.detectMultiScale(gray, found, FaceDetector.SCALE_FACTOR, FaceDetector.MIN_NEIGHBORS,
+						0 | Objdetect.CASCADE_SCALE_IMAGE, new Size(minSize, minSize), new Size());
+				if (round == 0) {
+					int[] rects = new int[4 * found.rows()];
+					if (rects.length > 0)
+						found.get(0, 0, rects);
+					// In the same order as the parallel detector
+					NonMaximumSuppression.sort(rects, found.rows());
+					reference.add(rects);
+				}
+			}
+		}
+		double baseline = (System.nanoTime() - start) / (double) (ROUNDS * grays.size());
+		System.out.println(String.format("%d FRAMES, %d ROUNDS", grays.size(), ROUNDS));
+		System.out.println(String.format("%-8s %10s %8s %8s %10s %8s %8s %14s", "THREADS", "MS/FRAME", "FPS",
+				"SPEEDUP", "IDENTICAL", "MISSED", "EXTRA", "DETERMINISTIC"));
+		System.out.println(String.format("%-8s %10.2f %8.1f %8.2f %10s %8s %8s %14s", "single", baseline / 1e6,
+				1e9 / baseline, 1.0, "-", "-", "-", "-"));
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			ParallelDetector parallel = new ParallelDetector(threads);
+			CascadeClassifier[] copies = new CascadeClassifier[threads];
+			for (int i = 0; i < threads; i++)
+				copies[i] = new CascadeClassifier(cascadePath);
+			parallel.setCascade(copies);
+			ParallelDetector.Search search = parallel.newSearch();
+			Frame frame = new Frame();
+			int identical = 0, missed = 0, extra = 0;
+			boolean deterministic = true;
+			List<int[]> first = new ArrayList<int[]>();
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++) {
+				for (int i = 0; i < grays.size(); i++) {
+					Mat gray = grays.get(i);
+					int count = search.detect(gray, Math.round(0.2f * gray.rows()), frame);
+					int[] rects = Arrays.copyOf(frame.rects, 4 * count);
+					if (round == 0) {
+						first.add(rects);
+						int[] expected = reference.get(i);
+						int missing = missing(expected, rects), added = missing(rects, expected);
+						if (Arrays.equals(expected, rects)) {
+							identical++;
+						} else {
+							System.out.println(String.format("DIFFERENT ON FRAME %d WITH %d THREADS: %s, EXPECTED %s",
+									i, threads, Arrays.toString(rects), Arrays.toString(expected)));
+						}
+						missed += missing;
+						extra += added;
+					} else if (!Arrays.equals(first.get(i), rects)) {
+						deterministic = false;
+					}
+				}
+			}
+			double mean = (System.nanoTime() - start) / (double) (ROUNDS * grays.size());
+			System.out.println(String.format("%-8d %10.2f %8.1f %8.2f %10s %8d %8d %14s", threads, mean / 1e6,
+					1e9 / mean, baseline / mean, identical + "/" + grays.size(), missed, extra,
+					deterministic ? "YES" : "NO"));
+			parallel.shutdown();
+			frame.release();
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * @return The number of rectangles in <code>rects</code> that are not in
+	 *         <code>others</code>, exactly.
+	 */
+	private static int missing(int[] rects, int[] others) {
+		int missing = 0;
+		for (int r = 0; r < rects.length; r += 4) {
+			boolean found = false;
+			for (int o = 0; o < others.length && !found; o += 4)
+				found = rects[r] == others[o] && rects[r + 1] == others[o + 1] && rects[r + 2] == others[o + 2]
+						&& rects[r + 3] == others[o + 3];
+			if (!found)
+				missing++;
+		}
+		return missing;
+	}
+}
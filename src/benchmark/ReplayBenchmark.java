@@ -0,0 +1,99 @@
+package benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.objdetect.CascadeClassifier;
+
+import tracking.FaceDetector;
+import tracking.Frame;
+import tracking.FramePipeline;
+import tracking.FrameScheduler;
+import tracking.FrameSource;
+
+/**
+ * Replays a video file or image directory through a {@link FramePipeline} as
+ * fast as it can be read, without dropping frames, a number of times. Reports
+ * the frame rate of each run and whether every run found the same faces at
+ * the same recorded times, which is what makes a replay usable as a
+ * regression test.
+ * <p>
+ * Usage: <code>ReplayBenchmark cascade.xml source [runs]</code>
+ *
+ * @author Michael Huyler
+ *
+ */
+public class ReplayBenchmark {
+
+	// Frames are never too late to be detected
+	private static final long DEADLINE = 10000;
+	// A replay has ended once no frame was captured for this long, in millis
+	private static final long IDLE = 1000;
+
+	public static void main(String[] args) throws InterruptedException {
+		if (args.length < 2) {
+			System.err.println("USAGE: ReplayBenchmark cascade.xml source [runs]");
+			System.exit(1);
+		}
+		Benchmarks.loadOpenCV();
+		int runs = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+		long first = 0;
+		boolean deterministic = true;
+		System.out.println(String.format("%-4s %10s %10s %10s %18s", "RUN", "FRAMES", "FACES", "FPS", "HASH"));
+		for (int run = 0; run < runs; run++) {
+			FrameSource source = FrameSource.create(args[1]);
+			if (!source.open()) {
+				System.err.println("ERROR: COULD NOT OPEN " + args[1]);
+				System.exit(1);
+			}
+			source.setPacing(FrameSource.Pacing.FAST);
+			final FaceDetector detector = new FaceDetector(0.2f);
+			detector.setCascade(args[0], new CascadeClassifier(args[0]));
+			detector.setLatencyBudget(0);
+			FramePipeline.FrameProcessor detect = new FramePipeline.FrameProcessor() {
+				@Override
+				public void process(Frame frame) {
+					detector.detect(frame);
+				}
+			};
+			// Frames are rendered in order on one thread
+			final long[] result = new long[2];
+			final AtomicLong rendered = new AtomicLong();
+			FramePipeline.FrameProcessor renderer = new FramePipeline.FrameProcessor() {
+				@Override
+				public void process(Frame frame) {
+					long hash = result[0] * 31 + frame.sourceTime;
+					hash = hash * 31 + frame.faceCount;
+					for (int i = 0; i < 4 * frame.faceCount; i++)
+						hash = hash * 31 + frame.rects[i];
+					result[0] = hash;
+					result[1] += frame.faceCount;
+					rendered.incrementAndGet();
+				}
+			};
+			FramePipeline pipeline = new FramePipeline(source, detect, renderer, new FrameScheduler(DEADLINE),
+					source.getRows(), source.getCols());
+			pipeline.setLossless(true);
+
+			long start = System.nanoTime(), captured = -1;
+			pipeline.start();
+			while (pipeline.getCapturedFrames() != captured || rendered.get() < captured) {
+				captured = pipeline.getCapturedFrames();
+				Thread.sleep(IDLE);
+			}
+			double elapsed = (System.nanoTime() - start) / 1e9 - IDLE / 1e3;
+			pipeline.stop();
+			source.release();
+			detector.release();
+
+			// Stopping waits for the render thread, so its results are seen
+			long hash = result[0], faces = result[1], frames = rendered.get();
+			if (run == 0)
+				first = hash;
+			deterministic &= hash == first && frames == captured;
+			System.out.println(String.format("%-4d %10d %10d %10.1f %18x", run, frames, faces,
+					elapsed > 0 ? frames / elapsed : 0, hash));
+		}
+		System.out.println(deterministic ? "DETERMINISTIC" : "NOT DETERMINISTIC");
+	}
+}
@@ -0,0 +1,62 @@
+package benchmark;
+
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+import arduino.ArduinoCommunicator;
+import arduino.SimulatedTurret;
+import arduino.TurretTelemetry;
+
+/**
+ * Runs the serial protocol end to end against a {@link SimulatedTurret} over
+ * piped streams, and reports how long acknowledgements take and how closely
+ * the reported servo position follows the coordinates sent.
+ * <p>
+ * Usage: <code>SerialLoopback [packets [delay ms]]</code>
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class SerialLoopback {
+
+	public static void main(String[] args) throws Exception {
+		int packets = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		long delay = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+		PipedOutputStream toTurret = new PipedOutputStream();
+		PipedInputStream turretIn = new PipedInputStream(toTurret, 4096);
+		PipedOutputStream fromTurret = new PipedOutputStream();
+		PipedInputStream hostIn = new PipedInputStream(fromTurret, 4096);
+
+		SimulatedTurret turret = new SimulatedTurret(turretIn, fromTurret, 8, delay);
+		Thread turretThread = new Thread(turret, "SIMULATED-TURRET");
+		turretThread.setDaemon(true);
+		turretThread.start();
+
+		// The simulated turret reads the binary packets
+		ArduinoCommunicator arduino = new ArduinoCommunicator("TURRET_0", ArduinoCommunicator.Protocol.BINARY);
+		arduino.connect(hostIn, toTurret);
+		TurretTelemetry telemetry = arduino.getTelemetry();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < packets; i++) {
+			// Sweep back and forth across the frame
+			double x = 3200 * Math.abs(((i % 200) - 100) / 100.0);
+			arduino.sendCoordinates(x, 2400 - x / 2);
+			Thread.sleep(2);
+		}
+		// Give the last acknowledgements time to arrive
+		Thread.sleep(200 + delay * 10);
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println(String.format("SENT %d COORDINATES IN %d ms", packets, elapsed / 1000000));
+		System.out.println(String.format("TURRET RECEIVED %d PACKETS, %d CORRUPT", turret.getReceivedPackets(),
+				turret.getCorruptPackets()));
+		System.out.println(String.format("ACKNOWLEDGED %d, UNMATCHED %d, CORRUPT %d", telemetry.getAcknowledgements(),
+				telemetry.getUnmatchedAcknowledgements(), telemetry.getCorruptPackets()));
+		System.out.println("ACK LATENCY: " + telemetry.getAckLatency());
+		System.out.println(String.format("LAST POSITION: %d, %d", telemetry.getPan(), telemetry.getTilt()));
+		toTurret.close();
+		fromTurret.close();
+	}
+}
@@ -0,0 +1,62 @@
+package benchmark;
+
+import java.io.File;
+import java.util.List;
+
+import application.ResourceManifest;
+import audio.SoundBank;
+import audio.SoundPlayer;
+
+/**
+ * Decodes every bundled sound effect into a {@link SoundBank} and reports how
+ * long that takes and how much memory the decoded sounds need, then measures
+ * what triggering a sound costs the caller, which is what the detection stage
+ * pays.
+ * <p>
+ * Usage: <code>SoundBenchmark [memory cap in MB]</code>
+ *
+ * @author Michael Huyler
+ *
+ */
+public class SoundBenchmark {
+
+	private static final int WARMUP = 10000, ITERATIONS = 100000;
+
+	public static void main(String[] args) {
+		long capacity = (args.length > 0 ? Long.parseLong(args[0]) : 16) * 1024 * 1024;
+		ResourceManifest manifest = ResourceManifest.scan(new File(Benchmarks.resources()));
+		List<String> names = manifest.getSounds();
+		if (names.isEmpty()) {
+			System.err.println("ERROR: NO SOUNDS FOUND");
+			System.exit(1);
+		}
+
+		SoundBank bank = new SoundBank("sounds/", capacity);
+		long start = System.nanoTime();
+		long millis = 0;
+		for (String name : names) {
+			SoundBank.Sound sound = bank.get(name);
+			if (sound != null)
+				millis += sound.getMillis();
+		}
+		double elapsed = (System.nanoTime() - start) / 1e6;
+		System.out.println(String.format("DECODED %d SOUNDS (%.1f s OF AUDIO) IN %.0f ms", names.size(),
+				millis / 1000.0, elapsed));
+		System.out.println(String.format("KEPT %d SOUNDS IN %.1f MB (CAP %.1f MB)", bank.getCount(),
+				bank.getSize() / 1048576.0, capacity / 1048576.0));
+
+		// Decoding again only touches the sounds that were dropped
+		start = System.nanoTime();
+		bank.get(manifest.getCategories().get(SoundPlayer.ACTIVE).get(0));
+		System.out.println(String.format("DECODED SOUND FETCHED IN %.3f ms", (System.nanoTime() - start) / 1e6));
+
+		final SoundPlayer player = new SoundPlayer(bank, manifest.getCategories());
+		Benchmarks.time("SoundPlayer.playRandom", WARMUP, ITERATIONS, new Runnable() {
+			@Override
+			public void run() {
+				player.playRandom(SoundPlayer.ACTIVE);
+			}
+		});
+		player.stop();
+	}
+}
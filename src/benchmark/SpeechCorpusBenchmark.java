@@ -0,0 +1,324 @@
+package benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import application.FaceTrackingController;
+import sphinx.CommandGrammar;
+import sphinx.UtteranceRecognizer;
+
+/**
+ * Runs a corpus of spoken commands through the recognizer on every core and
+ * reports the word error rate, the real-time factor and the time taken to
+ * decode each utterance, so the voice commands can be tuned without a
+ * microphone.
+ * <p>
+ * The corpus is either recorded, a directory of .wav files named after what
+ * is said in them as for {@link VoiceModeBenchmark}, or synthesized from a
+ * directory of single word recordings, e.g. <code>search.wav</code>, spliced
+ * into every sentence of the bundled <code>9927.sent</code> and every
+ * command of the grammar. Each thread decodes with a recognizer of its own.
+ * <p>
+ * The commands and the rest of the speech are scored apart. The grammar can
+ * only hear commands, so what it hears in other speech is not a measure of
+ * how well it hears words, but of how often it takes speech that is not a
+ * command for one, which is reported as false accepts in either mode.
+ * <p>
+ * Usage:
+ * <code>SpeechCorpusBenchmark recorded|synthesized [directory] [lm|grammar] [threads]</code>
+ *
+ * @author Michael Huyler
+ *
+ */
+public class SpeechCorpusBenchmark {
+
+	// Silence around and between the words of a synthesized utterance
+	private static final int SILENCE_MILLIS = 300;
+	// Every command phrase, normalized
+	private static final Set<String> COMMANDS = new HashSet<String>();
+
+	static {
+		for (String phrase : FaceTrackingController.commandGrammar().getPhrases())
+			COMMANDS.add(normalize(phrase));
+	}
+
+	/**
+	 * An utterance and what is said in it.
+	 */
+	private static class Sample {
+		final String name, transcript;
+		final byte[] pcm;
+		// Whether what is said is one of the commands
+		final boolean command;
+
+		Sample(String name, String transcript, byte[] pcm) {
+			this.name = name;
+			this.transcript = transcript;
+			this.pcm = pcm;
+			this.command = COMMANDS.contains(normalize(transcript));
+		}
+	}
+
+	/**
+	 * What was heard in a sample, and how many words were wrong.
+	 */
+	private static class Scored {
+		final Sample sample;
+		final UtteranceRecognizer.Utterance utterance;
+		final int errors, words;
+
+		Scored(Sample sample, UtteranceRecognizer.Utterance utterance) {
+			this.sample = sample;
+			this.utterance = utterance;
+			String[] reference = words(sample.transcript);
+			this.errors = errors(reference, words(utterance.getHypothesis()));
+			this.words = reference.length;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+		boolean synthesized = args.length > 0 && args[0].equalsIgnoreCase("synthesized");
+		File directory = new File(args.length > 1 ? args[1] : synthesized ? "words" : "recordings");
+		CommandGrammar grammar = args.length > 2 && args[2].equalsIgnoreCase("grammar")
+				? FaceTrackingController.commandGrammar() : null;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+		List<Sample> corpus = synthesized ? synthesize(directory, grammar) : record(directory);
+		if (corpus.isEmpty()) {
+			System.err.println("ERROR: NO UTTERANCES FOUND IN " + directory);
+			System.exit(1);
+		}
+
+		// Loading the models is the slow part of setting up, so it is done
+		// once per thread and timed apart from decoding
+		long start = System.nanoTime();
+		final BlockingQueue<UtteranceRecognizer> recognizers = new ArrayBlockingQueue<UtteranceRecognizer>(threads);
+		for (int i = 0; i < threads; i++)
+			recognizers.add(new UtteranceRecognizer(grammar));
+		double setup = (System.nanoTime() - start) / 1e6;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Scored>> futures = new ArrayList<Future<Scored>>();
+		start = System.nanoTime();
+		for (final Sample sample : corpus)
+			futures.add(executor.submit(new Callable<Scored>() {
+				@Override
+				public Scored call() throws InterruptedException {
+					UtteranceRecognizer recognizer = recognizers.take();
+					try {
+						return new Scored(sample, recognizer.recognize(new AudioInputStream(
+								new ByteArrayInputStream(sample.pcm), UtteranceRecognizer.FORMAT,
+								sample.pcm.length / UtteranceRecognizer.FORMAT.getFrameSize())));
+					} finally {
+						recognizers.put(recognizer);
+					}
+				}
+			}));
+		List<Scored> results = new ArrayList<Scored>();
+		for (Future<Scored> future : futures)
+			results.add(future.get());
+		double wall = (System.nanoTime() - start) / 1e9;
+		executor.shutdown();
+
+		System.out.println(String.format("%-36s %9s %7s %7s  %s", "UTTERANCE", "DECODE MS", "RTF", "ERRORS",
+				"HEARD"));
+		double[] latencies = new double[results.size()];
+		double audio = 0, cpu = 0;
+		for (int i = 0; i < results.size(); i++) {
+			Scored scored = results.get(i);
+			UtteranceRecognizer.Utterance utterance = scored.utterance;
+			latencies[i] = utterance.getDecodeNanos() / 1e6;
+			audio += utterance.getAudioSeconds();
+			cpu += utterance.getCpuNanos() / 1e9;
+			System.out.println(String.format("%-36s %9.1f %7.3f %3d/%-3d  \"%s\"", scored.sample.name, latencies[i],
+					utterance.getCpuNanos() / 1e9 / utterance.getAudioSeconds(), scored.errors, scored.words,
+					utterance.getHypothesis()));
+		}
+
+		Arrays.sort(latencies);
+		System.out.println(String.format("%n%d UTTERANCES (%.1f s OF AUDIO) ON %d THREADS, %s MODE",
+				results.size(), audio, threads, grammar == null ? "LM" : "GRAMMAR"));
+		System.out.println(String.format("MODELS LOADED IN     %6.0f ms", setup));
+		score("COMMANDS", results, true);
+		score("OTHER SPEECH", results, false);
+		System.out.println(String.format("REAL-TIME FACTOR     %6.3f CPU s PER AUDIO s, %.1fx REAL TIME OVERALL",
+				cpu / audio, audio / wall));
+		System.out.println(String.format("DECODE MS            P50 %.1f | P95 %.1f | MAX %.1f",
+				latencies[latencies.length / 2], latencies[(int) (0.95 * (latencies.length - 1))],
+				latencies[latencies.length - 1]));
+	}
+
+	/**
+	 * Prints the word and sentence error rates of the commands or of the rest
+	 * of the speech, and how many of the rest were heard as a command.
+	 */
+	private static void score(String group, List<Scored> results, boolean commands) {
+		int sentences = 0, errors = 0, words = 0, wrongSentences = 0, falseAccepts = 0;
+		for (Scored scored : results) {
+			if (scored.sample.command != commands)
+				continue;
+			sentences++;
+			errors += scored.errors;
+			words += scored.words;
+			if (scored.errors > 0)
+				wrongSentences++;
+			if (COMMANDS.contains(normalize(scored.utterance.getHypothesis())))
+				falseAccepts++;
+		}
+		System.out.println(String.format("%s, %d UTTERANCES", group, sentences));
+		if (sentences == 0)
+			return;
+		System.out.println(String.format("  WORD ERROR RATE     %6.2f%% (%d OF %d WORDS)", 100.0 * errors / words,
+				errors, words));
+		System.out.println(String.format("  SENTENCE ERROR RATE %6.2f%%", 100.0 * wrongSentences / sentences));
+		if (!commands)
+			System.out.println(String.format("  FALSE ACCEPTS       %6.2f%% (%d HEARD AS A COMMAND)",
+					100.0 * falseAccepts / sentences, falseAccepts));
+	}
+
+	/**
+	 * Reads every recording in a directory.
+	 */
+	private static List<Sample> record(File directory) throws IOException {
+		List<Sample> corpus = new ArrayList<Sample>();
+		File[] files = directory.listFiles();
+		if (files == null)
+			return corpus;
+		Arrays.sort(files);
+		for (File file : files) {
+			if (!file.getName().endsWith(".wav"))
+				continue;
+			byte[] pcm = read(file);
+			if (pcm != null)
+				corpus.add(new Sample(file.getName(), VoiceModeBenchmark.expected(file), pcm));
+		}
+		return corpus;
+	}
+
+	/**
+	 * Splices single word recordings into every sentence of the corpus the
+	 * language model was built from, and every command of the grammar,
+	 * skipping the ones with a word that was not recorded.
+	 */
+	private static List<Sample> synthesize(File directory, CommandGrammar grammar) throws IOException {
+		Set<String> sentences = new LinkedHashSet<String>();
+		InputStream sent = ClassLoader.getSystemClassLoader().getResourceAsStream("sphinx4/9927.sent");
+		if (sent != null)
+			try (Scanner scanner = new Scanner(sent, "UTF-8")) {
+				while (scanner.hasNextLine()) {
+					String sentence = scanner.nextLine().replace("<s>", "").replace("</s>", "").trim();
+					if (!sentence.isEmpty())
+						sentences.add(sentence);
+				}
+			}
+		sentences.addAll((grammar != null ? grammar : FaceTrackingController.commandGrammar()).getPhrases());
+
+		int frameSize = UtteranceRecognizer.FORMAT.getFrameSize();
+		byte[] silence = new byte[(int) (UtteranceRecognizer.FORMAT.getFrameRate() * SILENCE_MILLIS / 1000)
+				* frameSize];
+		Map<String, byte[]> recorded = new HashMap<String, byte[]>();
+		List<Sample> corpus = new ArrayList<Sample>();
+		for (String sentence : sentences) {
+			ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+			pcm.write(silence);
+			boolean complete = true;
+			for (String word : words(sentence)) {
+				String name = word.toLowerCase();
+				if (!recorded.containsKey(name)) {
+					File file = new File(directory, name + ".wav");
+					recorded.put(name, file.isFile() ? read(file) : null);
+				}
+				byte[] clip = recorded.get(name);
+				if (clip == null) {
+					complete = false;
+					break;
+				}
+				pcm.write(clip);
+				pcm.write(silence);
+			}
+			if (complete)
+				corpus.add(new Sample(sentence.toLowerCase().replace(' ', '_'), sentence, pcm.toByteArray()));
+			else
+				System.out.println("INFO: SKIPPED \"" + sentence + "\", NOT EVERY WORD WAS RECORDED.");
+		}
+		return corpus;
+	}
+
+	/**
+	 * @return The samples of a recording in the recognizer's format, or null
+	 *         if it could not be read or converted.
+	 */
+	private static byte[] read(File file) throws IOException {
+		try (AudioInputStream in = AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(file)));
+				AudioInputStream pcm = in.getFormat().matches(UtteranceRecognizer.FORMAT) ? in
+						: AudioSystem.getAudioInputStream(UtteranceRecognizer.FORMAT, in)) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = pcm.read(buffer)) > 0)
+				out.write(buffer, 0, read);
+			return out.toByteArray();
+		} catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+			System.err.println("ERROR: COULD NOT READ " + file.getName().toUpperCase() + ".");
+			return null;
+		}
+	}
+
+	/**
+	 * @return The words of a text in upper case, separated by single spaces.
+	 */
+	private static String normalize(String text) {
+		return String.join(" ", words(text));
+	}
+
+	private static String[] words(String text) {
+		text = text.trim().toUpperCase();
+		return text.isEmpty() ? new String[0] : text.split("\\s+");
+	}
+
+	/**
+	 * @return The least number of words substituted, inserted or deleted to
+	 *         turn the reference into the hypothesis.
+	 */
+	static int errors(String[] reference, String[] hypothesis) {
+		int[] previous = new int[hypothesis.length + 1], current = new int[hypothesis.length + 1];
+		for (int j = 0; j <= hypothesis.length; j++)
+			previous[j] = j;
+		for (int i = 1; i <= reference.length; i++) {
+			current[0] = i;
+			for (int j = 1; j <= hypothesis.length; j++) {
+				int substitution = previous[j - 1] + (reference[i - 1].equals(hypothesis[j - 1]) ? 0 : 1);
+				current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return previous[hypothesis.length];
+	}
+}
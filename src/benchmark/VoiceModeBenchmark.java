@@ -0,0 +1,112 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import application.FaceTrackingController;
+import sphinx.CommandGrammar;
+import sphinx.UtteranceRecognizer;
+
+/**
+ * Runs recorded commands through the recognizer, once decoding against the
+ * full language model and once against the grammar of commands, and compares
+ * the CPU each takes and how long each takes to come up with a result.
+ * <p>
+ * The recordings are 16 kHz, 16 bit mono .wav files named after the command
+ * said in them, with an optional take number, e.g.
+ * <code>command_search_one-2.wav</code>. Each is decoded as a whole, so the
+ * decode time is how long after the end of the command a live recognizer
+ * that kept up would have its result, at most.
+ * <p>
+ * Usage: <code>VoiceModeBenchmark [recordings directory] [lm|grammar|both]</code>
+ *
+ * @author Michael Huyler
+ *
+ */
+public class VoiceModeBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		File[] files = new File(args.length > 0 ? args[0] : "recordings").listFiles();
+		String modes = args.length > 1 ? args[1].toLowerCase() : "both";
+		List<File> recordings = new ArrayList<File>();
+		if (files != null)
+			for (File file : files)
+				if (file.getName().endsWith(".wav"))
+					recordings.add(file);
+		if (recordings.isEmpty()) {
+			System.err.println("ERROR: NO RECORDINGS FOUND");
+			System.exit(1);
+		}
+		Collections.sort(recordings);
+
+		System.out.println(String.format("%-8s %6s %7s %8s %6s %9s %9s %9s %6s", "MODE", "UTTS", "CORRECT",
+				"REJECTED", "WRONG", "MEAN MS", "95TH MS", "SETUP MS", "RTF"));
+		if (!modes.equals("grammar"))
+			run("LM", null, recordings);
+		if (!modes.equals("lm"))
+			run("GRAMMAR", FaceTrackingController.commandGrammar(), recordings);
+	}
+
+	/**
+	 * Decodes every recording with one mode and prints a line of results.
+	 */
+	private static void run(String mode, CommandGrammar grammar, List<File> recordings) throws IOException {
+		long start = System.nanoTime();
+		UtteranceRecognizer recognizer = new UtteranceRecognizer(grammar);
+		double setup = (System.nanoTime() - start) / 1e6;
+
+		double[] latencies = new double[recordings.size()];
+		long cpu = 0;
+		double audio = 0;
+		int correct = 0, rejected = 0, wrong = 0;
+		for (int i = 0; i < recordings.size(); i++) {
+			File recording = recordings.get(i);
+			String expected = expected(recording);
+			UtteranceRecognizer.Utterance utterance;
+			try {
+				utterance = recognizer.recognize(recording);
+			} catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+				System.err.println("ERROR: COULD NOT READ " + recording.getName().toUpperCase() + ".");
+				continue;
+			}
+			audio += utterance.getAudioSeconds();
+			latencies[i] = utterance.getDecodeNanos() / 1e6;
+			cpu += utterance.getCpuNanos();
+
+			String heard = utterance.getHypothesis();
+			if (grammar != null && !grammar.accepts(heard, utterance.getConfidence()))
+				rejected++;
+			else if (heard.equals(expected))
+				correct++;
+			else
+				wrong++;
+		}
+
+		Arrays.sort(latencies);
+		double mean = 0;
+		for (double latency : latencies)
+			mean += latency;
+		mean /= latencies.length;
+		System.out.println(String.format("%-8s %6d %7d %8d %6d %9.1f %9.1f %9.0f %6.3f", mode, recordings.size(),
+				correct, rejected, wrong, mean, latencies[(int) (0.95 * (latencies.length - 1))], setup,
+				cpu / 1e9 / audio));
+	}
+
+	/**
+	 * @return The command said in a recording, from its name.
+	 */
+	static String expected(File recording) {
+		String name = recording.getName();
+		name = name.substring(0, name.length() - 4);
+		int take = name.indexOf('-');
+		if (take >= 0)
+			name = name.substring(0, take);
+		return name.replace('_', ' ').toUpperCase();
+	}
+}
@@ -0,0 +1,60 @@
+package logging;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Splits what is written to it into lines and appends them to a
+ * {@link LogRing}, so <code>System.out</code> can be sent to the log. Writing
+ * a line costs one <code>String</code> and never waits for whoever shows the
+ * log.
+ * <p>
+ * Wrap it in a {@link java.io.PrintStream}, which keeps the lines of
+ * different threads apart.
+ *
+ * @author Michael Huyler
+ *
+ */
+public class LogOutputStream extends OutputStream {
+
+	// Longer lines are broken up
+	private static final int MAX_LINE = 4096;
+
+	private final LogRing ring;
+	private final Charset charset = Charset.defaultCharset();
+	private final byte[] line = new byte[MAX_LINE];
+	private int length = 0;
+
+	/**
+	 * @param ring
+	 *            The log the lines are appended to.
+	 */
+	public LogOutputStream(LogRing ring) {
+		this.ring = ring;
+	}
+
+	@Override
+	public synchronized void write(int b) {
+		if (b == '\n') {
+			this.flushLine();
+			return;
+		}
+		if (this.length == MAX_LINE)
+			this.flushLine();
+		this.line[this.length++] = (byte) b;
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) {
+		for (int i = off; i < off + len; i++)
+			this.write(b[i]);
+	}
+
+	private void flushLine() {
+		int length = this.length;
+		if (length > 0 && this.line[length - 1] == '\r')
+			length--;
+		this.ring.append(new String(this.line, 0, length, this.charset));
+		this.length = 0;
+	}
+}
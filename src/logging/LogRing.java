@@ -0,0 +1,114 @@
+package logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded log of the most recent lines. Any number of threads can append
+ * without locking, and once the log is full each new line overwrites the
+ * oldest one, so memory stays the same however long the program runs. A
+ * reader keeps its own cursor and picks up the lines written since, learning
+ * how many it was too slow to see.
+ * <p>
+ * A line only takes over its slot from the line written a lap before once
+ * that one is complete, so two writers never write the same slot at once.
+ * An append only waits if the log wraps all the way round while the line a
+ * lap before is still being written.
+ *
+ * @author Michael Huyler
+ *
+ */
+public class LogRing {
+
+	// Marks a slot whose line is being written
+	private static final long WRITING = Long.MIN_VALUE;
+
+	private final int mask;
+	private final AtomicReferenceArray<String> lines;
+	// The number of the line held in each slot, or WRITING
+	private final AtomicLongArray numbers;
+	// The number the next line will get
+	private final AtomicLong next = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            The number of lines kept, rounded up to a power of two.
+	 */
+	public LogRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.mask = size - 1;
+		this.lines = new AtomicReferenceArray<String>(size);
+		this.numbers = new AtomicLongArray(size);
+		// As if lines -size to -1 had been written
+		for (int i = 0; i < size; i++)
+			this.numbers.set(i, i - size);
+	}
+
+	/**
+	 * Adds a line, overwriting the oldest one if the log is full. Only
+	 * waits if the line a lap before is still being written.
+	 *
+	 * @param line
+	 *            The line, without a line break.
+	 */
+	public void append(String line) {
+		long number = this.next.getAndIncrement();
+		int slot = (int) number & this.mask;
+		// Take the slot over from the line a lap before, once it is written,
+		// so its writer cannot replace this line when it finishes. Readers
+		// must not mistake the new line for the one it replaces
+		long lapped = number - this.getCapacity();
+		while (!this.numbers.compareAndSet(slot, lapped, WRITING))
+			Thread.yield();
+		this.lines.set(slot, line);
+		this.numbers.set(slot, number);
+	}
+
+	/**
+	 * @return The number of lines that fit in the log.
+	 */
+	public int getCapacity() {
+		return this.mask + 1;
+	}
+
+	/**
+	 * @return The number of lines appended since the log was created.
+	 */
+	public long getWritten() {
+		return this.next.get();
+	}
+
+	/**
+	 * Copies the lines written since a cursor, oldest first, each followed by
+	 * a line break. Lines that were overwritten before they could be read are
+	 * replaced by a note saying how many were lost.
+	 *
+	 * @param cursor
+	 *            The number of lines already read, 0 at first.
+	 * @param out
+	 *            Receives the lines.
+	 * @param max
+	 *            The most lines to copy.
+	 * @return The cursor to continue reading from.
+	 */
+	public long read(long cursor, StringBuilder out, int max) {
+		long end = this.next.get();
+		long oldest = end - this.getCapacity();
+		if (cursor < oldest) {
+			out.append("INFO: ").append(oldest - cursor).append(" LINES DROPPED.\n");
+			cursor = oldest;
+		}
+		for (int read = 0; cursor < end && read < max; cursor++, read++) {
+			int slot = (int) cursor & this.mask;
+			if (this.numbers.get(slot) != cursor)
+				// Still being written, or already overwritten
+				break;
+			String line = this.lines.get(slot);
+			if (this.numbers.get(slot) != cursor)
+				break;
+			out.append(line).append('\n');
+		}
+		return cursor;
+	}
+}
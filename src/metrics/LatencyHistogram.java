@@ -0,0 +1,115 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of durations in nanos. Every power of two is split
+ * into 8 buckets, so any percentile is reported within 12.5% of the true
+ * value. Recording a value is one array increment and never allocates, so it
+ * can be done on every frame by any number of threads.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class LatencyHistogram {
+
+	// Buckets per power of two, as a number of bits
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong(), total = new AtomicLong(), max = new AtomicLong();
+
+	/**
+	 * Records one duration.
+	 * 
+	 * @param nanos
+	 *            The duration in nanos. Negative values are recorded as 0.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		this.counts.incrementAndGet(bucket(value));
+		this.count.incrementAndGet();
+		this.total.addAndGet(value);
+		long current;
+		while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value))
+			;
+	}
+
+	/**
+	 * @return The number of durations recorded.
+	 */
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/**
+	 * @return The longest duration recorded in nanos, exactly.
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * @return The mean duration in nanos.
+	 */
+	public double getMean() {
+		long count = this.count.get();
+		return count == 0 ? 0 : this.total.get() / (double) count;
+	}
+
+	/**
+	 * @param percentile
+	 *            The percentile to look up, between 0 and 100.
+	 * @return The upper bound of the bucket holding the percentile, in nanos,
+	 *         or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long count = this.count.get();
+		if (count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank)
+				return Math.min(upperBound(i), this.max.get());
+		}
+		return this.max.get();
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			this.counts.set(i, 0);
+		this.count.set(0);
+		this.total.set(0);
+		this.max.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("p50 %.2f ms, p99 %.2f ms, max %.2f ms (%d)", this.getPercentile(50) / 1e6,
+				this.getPercentile(99) / 1e6, this.getMax() / 1e6, this.getCount());
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+}
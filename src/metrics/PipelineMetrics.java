@@ -0,0 +1,237 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import tracking.Frame;
+
+/**
+ * Where the time goes between a frame being captured and the turrets moving.
+ * Every stage a frame passes through is timed into its own
+ * {@link LatencyHistogram}, which any thread can record into without locking
+ * or allocating.
+ * <p>
+ * The histograms are also exported over JMX, as attributes named after the
+ * stage, e.g. <code>DetectP99</code> in millis or <code>DetectCount</code>,
+ * and a <code>reset</code> operation.
+ *
+ * @author Michael Huyler
+ *
+ */
+public class PipelineMetrics implements DynamicMBean {
+
+	/**
+	 * The stages a frame is timed through, and the commands that change
+	 * them.
+	 */
+	public enum Stage {
+		// From capture until the gray scale image is ready
+		PREPROCESS("Preprocess"),
+		// From the gray scale image until the faces are found
+		DETECT("Detect"),
+		// From the faces being found until the coordinates are left for the
+		// serial writers
+		ENQUEUE("Enqueue"),
+		// From the coordinates being left until they are written to the port
+		SERIAL_WRITE("SerialWrite"),
+		// From capture until the frame is shown on screen
+		DISPLAY("Display"),
+		// From capture until the coordinates are written to the port
+		END_TO_END("EndToEnd"),
+		// From a command being heard or clicked until it is applied
+		COMMAND("Command");
+
+		private final String attribute;
+
+		Stage(String attribute) {
+			this.attribute = attribute;
+		}
+	}
+
+	private static final Stage[] STAGES = Stage.values();
+	private static final String[] STATISTICS = { "P50", "P99", "Max", "Count" };
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+	private ObjectName name;
+
+	public PipelineMetrics() {
+		for (int i = 0; i < STAGES.length; i++)
+			this.histograms[i] = new LatencyHistogram();
+	}
+
+	/**
+	 * Records how long a frame spent in a stage.
+	 *
+	 * @param stage
+	 *            The stage.
+	 * @param nanos
+	 *            The time spent in nanos.
+	 */
+	public void record(Stage stage, long nanos) {
+		this.histograms[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Records the stages a frame has been stamped with so far, skipping the
+	 * ones it did not go through.
+	 *
+	 * @param frame
+	 *            The frame, once its coordinates have been sent.
+	 */
+	public void record(Frame frame) {
+		if (frame.preprocessTime == 0)
+			return;
+		this.record(Stage.PREPROCESS, frame.preprocessTime - frame.captureTime);
+		if (frame.detectTime == 0)
+			return;
+		this.record(Stage.DETECT, frame.detectTime - frame.preprocessTime);
+		if (frame.enqueueTime != 0)
+			this.record(Stage.ENQUEUE, frame.enqueueTime - frame.detectTime);
+	}
+
+	/**
+	 * @param stage
+	 *            The stage.
+	 * @return The histogram of the stage.
+	 */
+	public LatencyHistogram get(Stage stage) {
+		return this.histograms[stage.ordinal()];
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public void reset() {
+		for (LatencyHistogram histogram : this.histograms)
+			histogram.reset();
+	}
+
+	/**
+	 * Exports the histograms over JMX.
+	 *
+	 * @return True if they could be exported.
+	 */
+	public synchronized boolean register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("PortalTurretFaceTracker:type=PipelineMetrics");
+			if (server.isRegistered(name))
+				server.unregisterMBean(name);
+			server.registerMBean(this, name);
+			this.name = name;
+			return true;
+		} catch (JMException e) {
+			System.err.println("ERROR: COULD NOT EXPORT PIPELINE METRICS.");
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Stops exporting the histograms over JMX.
+	 */
+	public synchronized void unregister() {
+		if (this.name == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+		} catch (JMException e) {
+			// Already gone
+		}
+		this.name = null;
+	}
+
+	/**
+	 * @return p50, p99 and max of every stage in millis, one stage per line.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(String.format("%-12s %6s %6s %6s", "LATENCY MS", "P50", "P99", "MAX"));
+		for (Stage stage : STAGES) {
+			LatencyHistogram histogram = this.get(stage);
+			text.append(String.format("%n%-12s %6.1f %6.1f %6.1f", stage, histogram.getPercentile(50) / 1e6,
+					histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6));
+		}
+		return text.toString();
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		for (Stage stage : STAGES) {
+			if (!attribute.startsWith(stage.attribute))
+				continue;
+			LatencyHistogram histogram = this.get(stage);
+			switch (attribute.substring(stage.attribute.length())) {
+			case "P50":
+				return histogram.getPercentile(50) / 1e6;
+			case "P99":
+				return histogram.getPercentile(99) / 1e6;
+			case "Max":
+				return histogram.getMax() / 1e6;
+			case "Count":
+				return histogram.getCount();
+			}
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			try {
+				list.add(new Attribute(attribute, this.getAttribute(attribute)));
+			} catch (AttributeNotFoundException e) {
+				// Left out, as the interface asks
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(attribute.getName() + " is read only");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		if (!actionName.equals("reset"))
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+		this.reset();
+		return null;
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[STAGES.length * STATISTICS.length];
+		int i = 0;
+		for (Stage stage : STAGES) {
+			for (String statistic : STATISTICS) {
+				boolean count = statistic.equals("Count");
+				attributes[i++] = new MBeanAttributeInfo(stage.attribute + statistic,
+						count ? "long" : "double", count ? "Frames timed" : statistic + " latency in millis", true,
+						false, false);
+			}
+		}
+		MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Forgets everything recorded so far", null,
+				"void", MBeanOperationInfo.ACTION);
+		return new MBeanInfo(this.getClass().getName(), "Latency of each stage a frame passes through", attributes,
+				null, new MBeanOperationInfo[] { reset }, null);
+	}
+}
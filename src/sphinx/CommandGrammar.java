@@ -0,0 +1,115 @@
+package sphinx;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fixed set of phrases the turret obeys, each with the confidence the
+ * recognizer must have before it is acted on. Written out as a JSGF grammar,
+ * so the recognizer only ever searches for these phrases instead of decoding
+ * everything said against the full language model.
+ * <p>
+ * Commands that are hard to undo, such as shutting down, should ask for more
+ * confidence than ones that are easily repeated.
+ *
+ * @author Michael Huyler
+ *
+ */
+public class CommandGrammar {
+
+	// The name of the grammar, and of the file it is written to
+	public static final String NAME = "commands";
+
+	// The least confidence accepted for each phrase, in the order added
+	private final Map<String, Double> thresholds = new LinkedHashMap<String, Double>();
+
+	/**
+	 * Adds a phrase to the grammar.
+	 *
+	 * @param phrase
+	 *            The words of the phrase, as they are spelled in the
+	 *            dictionary, e.g. <code>COMMAND SEARCH ONE</code>.
+	 * @param threshold
+	 *            The least confidence, between 0 and 1, the phrase is accepted
+	 *            with.
+	 * @return This grammar.
+	 */
+	public CommandGrammar add(String phrase, double threshold) {
+		this.thresholds.put(phrase, threshold);
+		return this;
+	}
+
+	/**
+	 * @return The phrases of the grammar, in the order they were added.
+	 */
+	public List<String> getPhrases() {
+		return new ArrayList<String>(this.thresholds.keySet());
+	}
+
+	/**
+	 * @return The least confidence a phrase is accepted with, or
+	 *         {@link Double#NaN} if it is not in the grammar.
+	 */
+	public double getThreshold(String phrase) {
+		Double threshold = this.thresholds.get(phrase);
+		return threshold == null ? Double.NaN : threshold;
+	}
+
+	/**
+	 * Decides whether a recognized phrase should be acted on.
+	 *
+	 * @param phrase
+	 *            What the recognizer heard.
+	 * @param confidence
+	 *            How sure it is, between 0 and 1.
+	 * @return True if the phrase is in the grammar and was heard with enough
+	 *         confidence.
+	 */
+	public boolean accepts(String phrase, double confidence) {
+		Double threshold = this.thresholds.get(phrase);
+		return threshold != null && confidence >= threshold;
+	}
+
+	/**
+	 * @return The grammar in the Java Speech Grammar Format.
+	 */
+	public String toJsgf() {
+		StringBuilder jsgf = new StringBuilder("#JSGF V1.0;\n\ngrammar ").append(NAME).append(";\n\npublic <")
+				.append(NAME).append("> = ");
+		boolean first = true;
+		for (String phrase : this.thresholds.keySet()) {
+			if (!first)
+				jsgf.append("\n\t| ");
+			jsgf.append(phrase);
+			first = false;
+		}
+		return jsgf.append(";\n").toString();
+	}
+
+	/**
+	 * Writes the grammar to a new temporary directory, for the recognizer to
+	 * load.
+	 *
+	 * @return The URL of the directory, for
+	 *         {@link edu.cmu.sphinx.api.Configuration#setGrammarPath(String)}.
+	 */
+	public String write() throws IOException {
+		File directory = Files.createTempDirectory("turret-grammar").toFile();
+		directory.deleteOnExit();
+		File file = new File(directory, NAME + ".gram");
+		file.deleteOnExit();
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+			out.write(this.toJsgf());
+		}
+		return directory.toURI().toURL().toString();
+	}
+}
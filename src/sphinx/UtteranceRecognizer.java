@@ -0,0 +1,189 @@
+package sphinx;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import edu.cmu.sphinx.api.SpeechResult;
+import edu.cmu.sphinx.api.StreamSpeechRecognizer;
+
+/**
+ * Recognizes recorded utterances instead of the microphone, with the same
+ * models and grammar as {@link VoiceCommandController}, so the voice
+ * commands can be tried out and timed without anyone speaking.
+ * <p>
+ * Utterances are decoded on the calling thread. A recognizer holds its own
+ * copy of the models and must only be used by one thread at a time, so use
+ * one per thread to decode in parallel.
+ *
+ * @author Michael Huyler
+ *
+ */
+public class UtteranceRecognizer {
+
+	/**
+	 * What was heard in an utterance, and what it took to hear it.
+	 */
+	public static class Utterance {
+		final String hypothesis;
+		final double confidence;
+		final double audioSeconds;
+		final long decodeNanos, cpuNanos;
+
+		Utterance(String hypothesis, double confidence, double audioSeconds, long decodeNanos, long cpuNanos) {
+			this.hypothesis = hypothesis;
+			this.confidence = confidence;
+			this.audioSeconds = audioSeconds;
+			this.decodeNanos = decodeNanos;
+			this.cpuNanos = cpuNanos;
+		}
+
+		/**
+		 * @return The words heard, separated by spaces.
+		 */
+		public String getHypothesis() {
+			return this.hypothesis;
+		}
+
+		/**
+		 * @return How sure the recognizer is, between 0 and 1.
+		 */
+		public double getConfidence() {
+			return this.confidence;
+		}
+
+		/**
+		 * @return The length of the utterance in seconds.
+		 */
+		public double getAudioSeconds() {
+			return this.audioSeconds;
+		}
+
+		/**
+		 * @return The time taken to decode the utterance, in nanos.
+		 */
+		public long getDecodeNanos() {
+			return this.decodeNanos;
+		}
+
+		/**
+		 * @return The CPU time taken to decode the utterance, in nanos.
+		 */
+		public long getCpuNanos() {
+			return this.cpuNanos;
+		}
+	}
+
+	/**
+	 * Counts the bytes read through it.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0)
+				this.count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0)
+				this.count += read;
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			this.count += skipped;
+			return skipped;
+		}
+	}
+
+	// The format the acoustic model was trained on
+	public static final AudioFormat FORMAT = new AudioFormat(16000, 16, 1, true, false);
+
+	private final StreamSpeechRecognizer recognizer;
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Loads the models, which takes a while.
+	 *
+	 * @param grammar
+	 *            The commands listened for, or null to decode against the
+	 *            full language model.
+	 */
+	public UtteranceRecognizer(CommandGrammar grammar) throws IOException {
+		this.recognizer = new StreamSpeechRecognizer(VoiceCommandController.configure(grammar));
+	}
+
+	/**
+	 * Recognizes a recording.
+	 *
+	 * @param file
+	 *            A .wav file, 16 kHz or converted to it.
+	 * @return What was heard.
+	 */
+	public Utterance recognize(File file) throws IOException, UnsupportedAudioFileException {
+		try (AudioInputStream in = AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			return this.recognize(in);
+		}
+	}
+
+	/**
+	 * Recognizes a stream of audio until it ends.
+	 *
+	 * @param audio
+	 *            The audio, converted to {@link #FORMAT} if it is in any
+	 *            other.
+	 * @return What was heard.
+	 * @throws IllegalArgumentException
+	 *             If the audio cannot be converted.
+	 */
+	public Utterance recognize(AudioInputStream audio) {
+		if (!audio.getFormat().matches(FORMAT))
+			audio = AudioSystem.getAudioInputStream(FORMAT, audio);
+		// A converted stream may not know its length, so the length is
+		// measured as it is read
+		CountingInputStream counted = new CountingInputStream(audio);
+		audio = new AudioInputStream(counted, FORMAT, audio.getFrameLength());
+
+		long cpu = this.threads.getCurrentThreadCpuTime();
+		long start = System.nanoTime();
+		this.recognizer.startRecognition(audio);
+		StringBuilder hypothesis = new StringBuilder();
+		double confidence = 1.0;
+		SpeechResult result;
+		while ((result = this.recognizer.getResult()) != null) {
+			// Silence between words comes out as nothing
+			if (result.getHypothesis().isEmpty())
+				continue;
+			if (hypothesis.length() > 0)
+				hypothesis.append(' ');
+			hypothesis.append(result.getHypothesis());
+			confidence = Math.min(confidence, VoiceCommandController.confidence(result));
+		}
+		this.recognizer.stopRecognition();
+		double seconds = counted.count / FORMAT.getFrameSize() / FORMAT.getFrameRate();
+		return new Utterance(hypothesis.toString(), confidence, seconds, System.nanoTime() - start,
+				this.threads.getCurrentThreadCpuTime() - cpu);
+	}
+}
@@ -6,7 +6,21 @@ import application.FaceTrackingController;
 import edu.cmu.sphinx.api.Configuration;
 import edu.cmu.sphinx.api.LiveSpeechRecognizer;
 import edu.cmu.sphinx.api.SpeechResult;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.LogMath;
 
+/**
+ * Listens to the microphone and passes the commands heard on to the
+ * controller.
+ * <p>
+ * Given a {@link CommandGrammar}, the recognizer only searches for the
+ * phrases of the grammar, and a phrase is only passed on if it was heard with
+ * the confidence the grammar asks of it. Without one, everything said is
+ * decoded against the full language model and passed on as it is.
+ *
+ * @author Michael Huyler
+ *
+ */
 public class VoiceCommandController {
 
 	FaceTrackingController commandListenerObject;
@@ -17,32 +31,96 @@ public class VoiceCommandController {
 					.toString(),
 			LM_PATH = ClassLoader.getSystemClassLoader().getResource("sphinx4/" + dictionaryVersion + ".lm").toString();
 
+	// The commands listened for, or null to decode against the language model
+	private final CommandGrammar grammar;
 	private Configuration configuration;
 	private LiveSpeechRecognizer recognizer;
 	private SpeechResult result;
 
 	private boolean running = false;
 
-	public void init() {
-		configuration = new Configuration();
-		configuration.setAcousticModelPath(ACOUSTIC_PATH);
-		configuration.setDictionaryPath(DIC_PATH);
-		configuration.setLanguageModelPath(LM_PATH);
+	/**
+	 * Decodes everything said against the full language model.
+	 */
+	public VoiceCommandController() {
+		this(null);
+	}
 
+	/**
+	 * @param grammar
+	 *            The commands listened for, or null to decode everything said
+	 *            against the full language model.
+	 */
+	public VoiceCommandController(CommandGrammar grammar) {
+		this.grammar = grammar;
+	}
+
+	public void init() {
 		try {
+			configuration = configure(this.grammar);
 			recognizer = new LiveSpeechRecognizer(configuration);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Sets up the bundled models for a recognizer.
+	 *
+	 * @param grammar
+	 *            The commands listened for, or null to decode against the
+	 *            full language model.
+	 * @return The configuration.
+	 */
+	public static Configuration configure(CommandGrammar grammar) throws IOException {
+		Configuration configuration = new Configuration();
+		configuration.setAcousticModelPath(ACOUSTIC_PATH);
+		configuration.setDictionaryPath(DIC_PATH);
+		if (grammar == null) {
+			configuration.setLanguageModelPath(LM_PATH);
+		} else {
+			configuration.setGrammarPath(grammar.write());
+			configuration.setGrammarName(CommandGrammar.NAME);
+			configuration.setUseGrammar(true);
+		}
+		return configuration;
+	}
+
+	/**
+	 * @return How sure the recognizer is of a result, between 0 and 1: the
+	 *         least posterior probability of the words heard, or 1 if the
+	 *         recognizer kept no lattice to compute it from.
+	 */
+	public static double confidence(SpeechResult result) {
+		if (result.getLattice() == null)
+			return 1.0;
+		LogMath logMath = LogMath.getLogMath();
+		double confidence = 1.0;
+		for (WordResult word : result.getWords())
+			if (!word.isFiller())
+				confidence = Math.min(confidence, logMath.logToLinear((float) word.getConfidence()));
+		return confidence;
+	}
+
 	public void start() {
 		running = true;
 		recognizer.startRecognition(true);
 		while (running && (result = recognizer.getResult()) != null) {
+			long heardAt = System.nanoTime();
 			String hypothesis = result.getHypothesis();
+			if (this.grammar != null) {
+				// Silence and noise come out as nothing
+				if (hypothesis.isEmpty())
+					continue;
+				double confidence = confidence(result);
+				if (!this.grammar.accepts(hypothesis, confidence)) {
+					System.out.println(String.format("INFO: IGNORED \"%s\" HEARD WITH %.2f CONFIDENCE.", hypothesis,
+							confidence));
+					continue;
+				}
+			}
 			System.out.println(hypothesis);
-			this.commandListenerObject.processCommand(hypothesis);
+			this.commandListenerObject.processCommand(hypothesis, heardAt);
 		}
 		recognizer.stopRecognition();
 	}
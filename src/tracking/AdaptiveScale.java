@@ -0,0 +1,78 @@
+package tracking;
+
+/**
+ * Picks the scale at which frames are passed to the classifier so that
+ * detection stays within a latency budget. The cost of a detection is taken to
+ * grow with the number of pixels searched, so the scale is corrected by the
+ * square root of how far the measured cost is from the budget.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class AdaptiveScale {
+
+	// Scale changes smaller than this are ignored, to keep the scale steady
+	private static final double STEP = 0.05;
+	// Weight of the newest measurement in the running average
+	private static final double SMOOTHING = 0.2;
+
+	private final double minScale, maxScale;
+	// The target time for one detection in nanos, 0 = fixed scale
+	private volatile long budget = 0;
+	private volatile double scale;
+	// Running average of the time a detection takes at the current scale
+	private double averageCost = 0;
+
+	/**
+	 * @param minScale
+	 *            The smallest scale that may be picked.
+	 * @param maxScale
+	 *            The largest scale that may be picked, and the starting scale.
+	 */
+	public AdaptiveScale(double minScale, double maxScale) {
+		this.minScale = minScale;
+		this.maxScale = maxScale;
+		this.scale = maxScale;
+	}
+
+	/**
+	 * @param millis
+	 *            The target time for one detection in milliseconds, or 0 to
+	 *            always use the largest scale.
+	 */
+	public void setBudget(long millis) {
+		this.budget = millis * 1000000L;
+		this.averageCost = 0;
+		if (millis <= 0)
+			this.scale = this.maxScale;
+	}
+
+	public double getScale() {
+		return this.scale;
+	}
+
+	/**
+	 * Records how long a detection at the current scale took and adjusts the
+	 * scale for the next one.
+	 * 
+	 * @param elapsed
+	 *            The time the detection took in nanos.
+	 */
+	public void update(long elapsed) {
+		long budget = this.budget;
+		if (budget <= 0 || elapsed <= 0)
+			return;
+		this.averageCost = this.averageCost == 0 ? elapsed
+				: this.averageCost * (1 - SMOOTHING) + elapsed * SMOOTHING;
+
+		double target = this.scale * Math.sqrt(budget / this.averageCost);
+		target = Math.max(this.minScale, Math.min(this.maxScale, target));
+		if (Math.abs(target - this.scale) >= STEP) {
+			target = Math.max(this.minScale, Math.min(this.maxScale, Math.round(target / STEP) * STEP));
+			// Predict the cost at the new scale, so the average does not have
+			// to catch up from scratch
+			this.averageCost *= (target * target) / (this.scale * this.scale);
+			this.scale = target;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package tracking;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * Frames from a live camera.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class CameraSource extends FrameSource {
+
+	private final VideoCapture capture = new VideoCapture();
+	private final int index;
+
+	/**
+	 * @param index
+	 *            Which camera to use: 0 = built-in webcam, 1 = 1st external
+	 *            webcam.
+	 */
+	public CameraSource(int index) {
+		this.index = index;
+	}
+
+	@Override
+	public boolean open() {
+		return this.capture.open(this.index);
+	}
+
+	@Override
+	public boolean isOpened() {
+		return this.capture.isOpened();
+	}
+
+	@Override
+	public boolean isLive() {
+		return true;
+	}
+
+	@Override
+	protected boolean read(Mat frame) {
+		if (!this.capture.read(frame))
+			return false;
+		this.timestamp = System.nanoTime();
+		return true;
+	}
+
+	/**
+	 * Grabs the next frame from the camera without retrieving it, which is
+	 * what costs the time.
+	 */
+	@Override
+	public boolean skip() {
+		return this.capture.grab();
+	}
+
+	@Override
+	protected boolean rewind() {
+		return false;
+	}
+
+	@Override
+	public int getRows() {
+		return (int) this.capture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+	}
+
+	@Override
+	public int getCols() {
+		return (int) this.capture.get(Videoio.CAP_PROP_FRAME_WIDTH);
+	}
+
+	@Override
+	public void release() {
+		if (this.capture.isOpened())
+			this.capture.release();
+	}
+
+	@Override
+	public String toString() {
+		return "" + this.index;
+	}
+}
@@ -0,0 +1,178 @@
+package tracking;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opencv.objdetect.CascadeClassifier;
+
+/**
+ * Loads the bundled cascade classifiers and keeps the most recently used ones
+ * in memory, so switching between them does not mean parsing the XML again.
+ * Classifiers are loaded the first time they are asked for, and the least
+ * recently used one is evicted once the registry is full.
+ * <p>
+ * A {@link CascadeClassifier} must only be used by one thread at a time, so
+ * several numbered copies of each classifier can be kept, e.g. one for every
+ * worker of a {@link ParallelDetector}. A cached copy is shared with everyone
+ * asking for the same number. Use {@link #create(String)} for a private copy.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class CascadeRegistry {
+
+	// The directories the cascades are bundled in
+	private static final String[] DIRECTORIES = { "haarcascades", "lbpcascades" };
+
+	private final String root;
+	private final Map<String, List<CascadeClassifier>> cache;
+
+	/**
+	 * @param root
+	 *            The directory containing the bundled cascade directories.
+	 * @param capacity
+	 *            The number of classifiers to keep loaded.
+	 */
+	public CascadeRegistry(String root, final int capacity) {
+		this.root = root;
+		this.cache = new LinkedHashMap<String, List<CascadeClassifier>>(capacity + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<CascadeClassifier>> eldest) {
+				if (size() > capacity) {
+					System.out.println("INFO: UNLOADING " + eldest.getKey().toUpperCase() + ".");
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a cached classifier, loading it if necessary.
+	 * 
+	 * @param name
+	 *            The cascade file relative to the root, e.g.
+	 *            <code>haarcascades/haarcascade_frontalface_alt.xml</code>.
+	 * @return The classifier, or <code>null</code> if it could not be loaded.
+	 */
+	public CascadeClassifier get(String name) {
+		return this.get(name, 0);
+	}
+
+	/**
+	 * Returns a numbered copy of a cached classifier, loading it if
+	 * necessary.
+	 * 
+	 * @param name
+	 *            The cascade file relative to the root.
+	 * @param copy
+	 *            The number of the copy, from 0.
+	 * @return The classifier, or <code>null</code> if it could not be loaded.
+	 */
+	public synchronized CascadeClassifier get(String name, int copy) {
+		List<CascadeClassifier> copies = this.cache.get(name);
+		if (copies == null) {
+			CascadeClassifier cascade = this.create(name);
+			if (cascade == null)
+				return null;
+			copies = new ArrayList<CascadeClassifier>();
+			copies.add(cascade);
+			this.cache.put(name, copies);
+		}
+		while (copies.size() <= copy) {
+			CascadeClassifier cascade = this.create(name);
+			if (cascade == null)
+				return null;
+			copies.add(cascade);
+		}
+		return copies.get(copy);
+	}
+
+	/**
+	 * Returns several numbered copies of a cached classifier, loading them if
+	 * necessary.
+	 * 
+	 * @param name
+	 *            The cascade file relative to the root.
+	 * @param first
+	 *            The number of the first copy.
+	 * @param count
+	 *            The number of copies.
+	 * @return The classifiers, or <code>null</code> if they could not be
+	 *         loaded.
+	 */
+	public synchronized CascadeClassifier[] get(String name, int first, int count) {
+		CascadeClassifier[] copies = new CascadeClassifier[count];
+		for (int i = 0; i < count; i++)
+			if ((copies[i] = this.get(name, first + i)) == null)
+				return null;
+		return copies;
+	}
+
+	/**
+	 * Loads a classifier that is not shared with anyone else.
+	 * 
+	 * @param name
+	 *            The cascade file relative to the root.
+	 * @return The classifier, or <code>null</code> if it could not be loaded.
+	 */
+	public CascadeClassifier create(String name) {
+		System.out.println("INFO: LOADING " + name.toUpperCase() + ".");
+		CascadeClassifier cascade = new CascadeClassifier();
+		if (!cascade.load(this.path(name))) {
+			System.err.println("ERROR: COULD NOT LOAD " + name.toUpperCase() + ".");
+			return null;
+		}
+		return cascade;
+	}
+
+	/**
+	 * Loads classifiers into the cache on a background thread.
+	 * 
+	 * @param names
+	 *            The cascade files relative to the root.
+	 */
+	public void preload(final String... names) {
+		Thread loader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (String name : names)
+					get(name);
+			}
+		}, "CASCADE-PRELOAD");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * @param name
+	 *            The cascade file relative to the root.
+	 * @return The full path of the cascade file.
+	 */
+	public String path(String name) {
+		return this.root + name;
+	}
+
+	/**
+	 * @return The names of all bundled cascade files.
+	 */
+	public List<String> list() {
+		List<String> names = new ArrayList<String>();
+		for (String directory : DIRECTORIES) {
+			File[] files = new File(this.root + directory).listFiles();
+			if (files == null)
+				continue;
+			for (File file : files)
+				if (file.getName().endsWith(".xml"))
+					names.add(directory + "/" + file.getName());
+		}
+		Collections.sort(names);
+		return names;
+	}
+}
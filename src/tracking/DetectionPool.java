@@ -0,0 +1,152 @@
+package tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed set of detection threads shared by several {@link FramePipeline}s,
+ * one per camera. Sources are served in turn, so a busy camera cannot starve
+ * the others, and each source is only ever detected by one thread at a time,
+ * so its frames stay in order and its detector needs no locking.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class DetectionPool {
+
+	private final Thread[] workers;
+	// The pipelines being served, guarded by this
+	private final List<FramePipeline> sources = new ArrayList<FramePipeline>();
+	// The source the next search for work starts at
+	private int next = 0;
+	private volatile boolean running = false;
+	private final AtomicLong detected = new AtomicLong();
+
+	/**
+	 * @param threads
+	 *            The number of frames that can be detected at once.
+	 */
+	public DetectionPool(int threads) {
+		this.workers = new Thread[threads];
+	}
+
+	/**
+	 * Starts the detection threads.
+	 */
+	public synchronized void start() {
+		if (this.running)
+			return;
+		this.running = true;
+		for (int i = 0; i < this.workers.length; i++) {
+			this.workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "DETECTION-POOL " + i);
+			this.workers[i].setDaemon(true);
+			this.workers[i].start();
+		}
+	}
+
+	/**
+	 * Stops the detection threads. Pipelines still using the pool stop being
+	 * detected.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			this.running = false;
+			this.notifyAll();
+		}
+		for (Thread worker : this.workers)
+			if (worker != null)
+				worker.interrupt();
+	}
+
+	public int getThreads() {
+		return this.workers.length;
+	}
+
+	/**
+	 * @return The number of frames handed to the detection stage of any
+	 *         source.
+	 */
+	public long getDetectedFrames() {
+		return this.detected.get();
+	}
+
+	synchronized void register(FramePipeline source) {
+		this.sources.add(source);
+	}
+
+	/**
+	 * Stops serving a pipeline, waiting for a frame of it that is being
+	 * detected to finish.
+	 */
+	synchronized void unregister(FramePipeline source) {
+		this.sources.remove(source);
+		while (source.claimed) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Wakes the detection threads, called when a source has a new frame. All
+	 * of them, since unregister() may be waiting on the same monitor and
+	 * would swallow a single wake up.
+	 */
+	synchronized void signal() {
+		this.notifyAll();
+	}
+
+	private void work() {
+		while (this.running) {
+			FramePipeline source;
+			try {
+				source = this.claim();
+			} catch (InterruptedException e) {
+				break;
+			}
+			try {
+				Frame frame = source.pollDetection();
+				if (frame != null) {
+					source.detect(frame);
+					this.detected.incrementAndGet();
+				}
+			} finally {
+				synchronized (this) {
+					source.claimed = false;
+					// Another frame of the source may have arrived meanwhile,
+					// and stop() may be waiting
+					this.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for a source that has a frame and is not being detected, looking
+	 * at the sources in turn.
+	 */
+	private synchronized FramePipeline claim() throws InterruptedException {
+		while (this.running) {
+			int size = this.sources.size();
+			for (int i = 0; i < size; i++) {
+				FramePipeline source = this.sources.get((this.next + i) % size);
+				if (!source.claimed && source.hasDetection()) {
+					source.claimed = true;
+					this.next = (this.next + i + 1) % size;
+					return source;
+				}
+			}
+			this.wait();
+		}
+		throw new InterruptedException();
+	}
+}
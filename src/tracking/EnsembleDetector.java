@@ -0,0 +1,386 @@
+package tracking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+import org.opencv.objdetect.Objdetect;
+
+/**
+ * Runs several cascade classifiers over the same gray scale frame at once, so
+ * a person is still found when they turn sideways or only their body is
+ * visible. The detections of all classifiers are mapped onto the area where
+ * the face should be, clustered, and ranked by the summed weight of the
+ * classifiers that agree on them.
+ * <p>
+ * The classifiers are handed over already loaded, e.g. from a
+ * {@link CascadeRegistry}, so nothing is loaded on the detection threads.
+ * Each camera searches with a {@link Search} of its own, holding its tasks
+ * and detections, so several cameras can search at the same time. They share
+ * the workers, and each member has one copy of its classifier per camera.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class EnsembleDetector {
+
+	// Detections overlapping by more than this are considered the same target
+	private static final double OVERLAP_THRESHOLD = 0.3;
+	// Weight of the newest measurement in the running average timings
+	private static final double SMOOTHING = 0.1;
+
+	/**
+	 * One classifier taking part in the ensemble, with its timings over all
+	 * cameras.
+	 */
+	public class Member {
+		private final String name;
+		// The copies of the classifier not in use by a camera
+		private final BlockingQueue<CascadeClassifier> copies;
+		private final double weight;
+		private final float minPortion;
+		private final boolean mirrored;
+		// Where the face lies inside a detection, as fractions of its size
+		private final double faceX, faceY, faceWidth, faceHeight;
+
+		private volatile double averageNanos = 0;
+		private volatile long detections = 0;
+
+		Member(String name, CascadeClassifier[] copies, double weight, float minPortion, boolean mirrored,
+				double faceX, double faceY, double faceWidth, double faceHeight) {
+			this.name = name;
+			this.copies = new ArrayBlockingQueue<CascadeClassifier>(copies.length);
+			for (CascadeClassifier copy : copies)
+				if (copy != null && !copy.empty())
+					this.copies.add(copy);
+			this.weight = weight;
+			this.minPortion = minPortion;
+			this.mirrored = mirrored;
+			this.faceX = faceX;
+			this.faceY = faceY;
+			this.faceWidth = faceWidth;
+			this.faceHeight = faceHeight;
+		}
+
+		/**
+		 * Adds a run of the classifier to the timings.
+		 */
+		private synchronized void record(long elapsed, int count) {
+			this.averageNanos = this.averageNanos == 0 ? elapsed
+					: this.averageNanos * (1 - SMOOTHING) + elapsed * SMOOTHING;
+			this.detections += count;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return The average time one run of this classifier takes in
+		 *         milliseconds.
+		 */
+		public double getAverageMillis() {
+			return this.averageNanos / 1e6;
+		}
+
+		/**
+		 * @return The number of detections this classifier has made.
+		 */
+		public long getDetections() {
+			return this.detections;
+		}
+	}
+
+	/**
+	 * One camera's run of a member over a frame.
+	 */
+	private static class Task extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Member member;
+		private final MatOfRect found = new MatOfRect();
+		private final Size minSize = new Size(), maxSize = new Size();
+		int[] rects = new int[4 * 4];
+		int count;
+		Mat gray;
+
+		Task(Member member) {
+			this.member = member;
+		}
+
+		@Override
+		protected void compute() {
+			this.count = 0;
+			// There is a copy for every camera, and a camera runs a member
+			// once at a time, so one is always free
+			CascadeClassifier cascade = this.member.copies.poll();
+			if (cascade == null)
+				return;
+
+			long start = System.nanoTime();
+			try {
+				this.minSize.width = this.minSize.height = Math.max(1,
+						Math.round(this.member.minPortion * this.gray.rows()));
+				cascade.detectMultiScale(this.gray, this.found, FaceDetector.SCALE_FACTOR,
+						FaceDetector.MIN_NEIGHBORS, 0 | Objdetect.CASCADE_SCALE_IMAGE, this.minSize, this.maxSize);
+			} finally {
+				this.member.copies.add(cascade);
+			}
+			int count = this.found.rows();
+			if (this.rects.length < 4 * count)
+				this.rects = new int[4 * count];
+			if (count > 0)
+				this.found.get(0, 0, this.rects);
+			this.count = count;
+			this.member.record(System.nanoTime() - start, count);
+		}
+	}
+
+	/**
+	 * The tasks and detections of one camera's searches. Used by one thread
+	 * at a time.
+	 */
+	public class Search {
+
+		// A task for every member, rebuilt when members are added
+		private Member[] members = new Member[0];
+		private Task[] tasks = new Task[0];
+		private final RecursiveAction all = new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		};
+		// The mirrored frame, for classifiers that only find one side
+		private final Mat flipped = new Mat();
+		// The mapped detections of all members, their summed weights, and
+		// the weight of the most trusted member behind each of them
+		private int[] candidates = new int[4 * 16];
+		private double[] scores = new double[16], best = new double[16];
+
+		private Search() {
+		}
+
+		/**
+		 * Runs every classifier over the same gray scale image and stores
+		 * the ranked targets, best first, in the frame.
+		 * 
+		 * @param gray
+		 *            The equalized gray scale image.
+		 * @param frame
+		 *            The frame the targets are stored in, in the coordinates
+		 *            of <code>gray</code>.
+		 * @return The number of targets found.
+		 */
+		public int detect(Mat gray, Frame frame) {
+			Member[] members = running;
+			if (members != this.members) {
+				this.tasks = new Task[members.length];
+				for (int i = 0; i < members.length; i++)
+					this.tasks[i] = new Task(members[i]);
+				this.members = members;
+			}
+			boolean flip = false;
+			for (Member member : members)
+				flip |= member.mirrored;
+			if (flip)
+				Core.flip(gray, this.flipped, 1);
+			for (Task task : this.tasks) {
+				task.gray = task.member.mirrored ? this.flipped : gray;
+				task.reinitialize();
+			}
+			this.all.reinitialize();
+			pool.invoke(this.all);
+
+			// Map every detection onto its face and cluster them
+			int count = 0;
+			for (Task task : this.tasks) {
+				Member member = task.member;
+				for (int i = 0; i < task.count * 4; i += 4) {
+					int[] r = task.rects;
+					int x = member.mirrored ? gray.cols() - r[i] - r[i + 2] : r[i];
+					int faceWidth = (int) Math.round(r[i + 2] * member.faceWidth);
+					int faceX = member.mirrored
+							? x + r[i + 2] - (int) Math.round(r[i + 2] * member.faceX) - faceWidth
+							: x + (int) Math.round(r[i + 2] * member.faceX);
+					count = this.merge(count, faceX, r[i + 1] + (int) Math.round(r[i + 3] * member.faceY),
+							faceWidth, (int) Math.round(r[i + 3] * member.faceHeight), member.weight);
+				}
+				task.gray = null;
+			}
+			this.rank(count);
+
+			frame.ensureRects(count);
+			System.arraycopy(this.candidates, 0, frame.rects, 0, 4 * count);
+			frame.faceCount = count;
+			return count;
+		}
+
+		/**
+		 * @return The ensemble this search belongs to.
+		 */
+		public EnsembleDetector getDetector() {
+			return EnsembleDetector.this;
+		}
+
+		/**
+		 * Adds a detection to the matching target, or as a new target.
+		 * 
+		 * @return The new number of targets.
+		 */
+		private int merge(int count, int x, int y, int width, int height, double weight) {
+			if (this.candidates.length < 4 * (count + 1)) {
+				int[] rects = new int[this.candidates.length * 2];
+				System.arraycopy(this.candidates, 0, rects, 0, 4 * count);
+				this.candidates = rects;
+				double[] scores = new double[this.scores.length * 2];
+				System.arraycopy(this.scores, 0, scores, 0, count);
+				this.scores = scores;
+				double[] best = new double[this.best.length * 2];
+				System.arraycopy(this.best, 0, best, 0, count);
+				this.best = best;
+			}
+			int i = 4 * count;
+			this.candidates[i] = x;
+			this.candidates[i + 1] = y;
+			this.candidates[i + 2] = width;
+			this.candidates[i + 3] = height;
+			for (int j = 0; j < count; j++) {
+				if (NonMaximumSuppression.overlap(this.candidates, i, 4 * j) > OVERLAP_THRESHOLD) {
+					// Keep the box of the most trusted classifier
+					if (weight > this.best[j]) {
+						System.arraycopy(this.candidates, i, this.candidates, 4 * j, 4);
+						this.best[j] = weight;
+					}
+					this.scores[j] += weight;
+					return count;
+				}
+			}
+			this.scores[count] = weight;
+			this.best[count] = weight;
+			return count + 1;
+		}
+
+		/**
+		 * Insertion sort of the targets by score, best first, then by size.
+		 */
+		private void rank(int count) {
+			for (int i = 1; i < count; i++) {
+				double score = this.scores[i];
+				int x = this.candidates[4 * i], y = this.candidates[4 * i + 1];
+				int w = this.candidates[4 * i + 2], h = this.candidates[4 * i + 3];
+				int j = i - 1;
+				while (j >= 0 && (this.scores[j] < score || (this.scores[j] == score
+						&& this.candidates[4 * j + 2] * this.candidates[4 * j + 3] < w * h))) {
+					this.scores[j + 1] = this.scores[j];
+					System.arraycopy(this.candidates, 4 * j, this.candidates, 4 * (j + 1), 4);
+					j--;
+				}
+				this.scores[j + 1] = score;
+				this.candidates[4 * (j + 1)] = x;
+				this.candidates[4 * (j + 1) + 1] = y;
+				this.candidates[4 * (j + 1) + 2] = w;
+				this.candidates[4 * (j + 1) + 3] = h;
+			}
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final List<Member> members = new ArrayList<Member>();
+	private volatile Member[] running = new Member[0];
+
+	/**
+	 * @param threads
+	 *            The number of classifiers that can run at the same time.
+	 */
+	public EnsembleDetector(int threads) {
+		this.pool = new ForkJoinPool(Math.max(1, threads));
+	}
+
+	/**
+	 * Adds a classifier whose detections are the face itself.
+	 * 
+	 * @see #add(String, CascadeClassifier[], CascadeClassifier[], double,
+	 *      float, double, double, double, double)
+	 */
+	public synchronized Member add(String name, CascadeClassifier[] copies, CascadeClassifier[] mirrors,
+			double weight, float minPortion) {
+		return this.add(name, copies, mirrors, weight, minPortion, 0, 0, 1, 1);
+	}
+
+	/**
+	 * Adds a classifier to the ensemble.
+	 * 
+	 * @param name
+	 *            The name used when reporting timings.
+	 * @param copies
+	 *            Loaded copies of the classifier, one for each camera, that
+	 *            are not used by anyone else. If there are none, the member
+	 *            never finds anything.
+	 * @param mirrors
+	 *            More copies of the classifier to also run on the mirrored
+	 *            frame, for classifiers trained on one side only, or
+	 *            <code>null</code>.
+	 * @param weight
+	 *            How much a detection by this classifier counts towards the
+	 *            rank of a target.
+	 * @param minPortion
+	 *            The minimum portion of the frame height a detection must
+	 *            take up.
+	 * @param faceX
+	 *            The left edge of the face within a detection, as a fraction
+	 *            of its width.
+	 * @param faceY
+	 *            The top edge of the face within a detection, as a fraction
+	 *            of its height.
+	 * @param faceWidth
+	 *            The width of the face as a fraction of the detection width.
+	 * @param faceHeight
+	 *            The height of the face as a fraction of the detection height.
+	 * @return The new member.
+	 */
+	public synchronized Member add(String name, CascadeClassifier[] copies, CascadeClassifier[] mirrors,
+			double weight, float minPortion, double faceX, double faceY, double faceWidth, double faceHeight) {
+		if (copies == null)
+			copies = new CascadeClassifier[0];
+		Member member = new Member(name, copies, weight, minPortion, false, faceX, faceY, faceWidth, faceHeight);
+		this.members.add(member);
+		if (mirrors != null)
+			this.members.add(new Member(name + " (mirrored)", mirrors, weight, minPortion, true, faceX, faceY,
+					faceWidth, faceHeight));
+		this.running = this.members.toArray(new Member[this.members.size()]);
+		return member;
+	}
+
+	/**
+	 * @return Every classifier in the ensemble, with its timings.
+	 */
+	public synchronized List<Member> getMembers() {
+		return Collections.unmodifiableList(new ArrayList<Member>(this.members));
+	}
+
+	/**
+	 * @return A search for one camera to use.
+	 */
+	public Search newSearch() {
+		return new Search();
+	}
+
+	/**
+	 * Stops the worker threads.
+	 */
+	public void shutdown() {
+		this.pool.shutdown();
+	}
+}
@@ -0,0 +1,405 @@
+package tracking;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.CascadeClassifier;
+import org.opencv.objdetect.Objdetect;
+
+/**
+ * Finds faces in {@link Frame}s. The cascade classifier can either run on
+ * every frame, or only every few frames with a {@link TemplateTracker}
+ * following the largest face in between. The classifier also runs whenever the
+ * tracker loses confidence in its target.
+ * <p>
+ * When the classifier runs it can be restricted to a window around the last
+ * detected face, falling back to the whole frame when nothing is found there
+ * and every few frames regardless, so new faces are still picked up. The
+ * searched area can also be shrunk before it is passed to the classifier, at a
+ * scale picked by an {@link AdaptiveScale} to stay within a latency budget.
+ * Searches of the whole frame can be spread over several cores by a
+ * {@link ParallelDetector}, or handed to an {@link EnsembleDetector} that runs
+ * several classifiers at once and ranks what they find.
+ * <p>
+ * The classifier can be changed at any time. The change is picked up at the
+ * start of the next frame.
+ * <p>
+ * An instance is used by one thread at a time.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class FaceDetector {
+
+	// The parameters every run of a classifier uses
+	public static final double SCALE_FACTOR = 1.1;
+	public static final int MIN_NEIGHBORS = 2;
+
+	/**
+	 * A classifier and the file it was loaded from.
+	 */
+	private static class Model {
+		final String path;
+		final CascadeClassifier cascade;
+
+		Model(String path, CascadeClassifier cascade) {
+			this.path = path;
+			this.cascade = cascade;
+		}
+	}
+
+	// The classifier to switch to, and the one in use
+	private volatile Model next;
+	private Model model;
+	// The minimum portion of the frame a face must take up to be detected
+	private final float facePortion;
+	// Used in calculating how big a face needs to be to be detected
+	private int absoluteFaceSize = 0;
+	// The size limits passed to the classifier, kept between frames
+	private final Size minFaceSize = new Size(), maxFaceSize = new Size(), noSize = new Size();
+	// Picks the scale the classifier runs at
+	private final AdaptiveScale scale = new AdaptiveScale(0.25, 1.0);
+	// The copy of the area around the last face, and the shrunken copy of
+	// the searched area
+	private final Mat window = new Mat(), scaled = new Mat();
+	// Where and how much of the frame is copied into the window
+	private final Point windowCenter = new Point();
+	private final Size windowSize = new Size();
+
+	// Follows the target between runs of the classifier
+	private final TemplateTracker tracker = new TemplateTracker(0.5);
+	// Run the classifier on every n-th frame, 1 = every frame
+	private volatile int detectInterval = 1;
+	// Below this match score the tracker is considered lost
+	private volatile double minConfidence = 0.6;
+	// Frames tracked since the classifier last ran
+	private int framesSinceDetection = 0;
+
+	// Scan the whole frame on every n-th run of the classifier, 1 = always
+	private volatile int fullSweepInterval = 1;
+	// How far around the last face to search, relative to its size
+	private final double roiMargin = 1.0;
+	// The largest face found by the last run of the classifier
+	private final Rect lastFace = new Rect(), roi = new Rect();
+	private boolean hasLastFace = false;
+	// Runs of the classifier since the whole frame was last scanned
+	private int runsSinceFullSweep = 0;
+	// Searches the whole frame on several cores, if set
+	private volatile ParallelDetector.Search parallel;
+	// Searches the whole frame with several classifiers, if set, and the
+	// search kept for when it is set again
+	private volatile EnsembleDetector.Search ensemble;
+	private EnsembleDetector.Search ensembleSearch;
+	// Whether the last scan returned its faces best first
+	private boolean ranked = false;
+	// Pixels passed to the classifier, and frames it was run on
+	private volatile long pixelsScanned = 0, framesScanned = 0;
+	// Pixels passed to the classifier for the last frame, 0 if it was tracked
+	private volatile long lastPixelsScanned = 0;
+
+	/**
+	 * @param facePortion
+	 *            The minimum portion of the frame height a face must take up
+	 *            to be detected.
+	 */
+	public FaceDetector(float facePortion) {
+		this.facePortion = facePortion;
+	}
+
+	/**
+	 * Switches to another classifier from the next frame on.
+	 * 
+	 * @param path
+	 *            The file the classifier was loaded from.
+	 * @param cascade
+	 *            The classifier. It must not be used by another thread.
+	 */
+	public void setCascade(String path, CascadeClassifier cascade) {
+		this.next = new Model(path, cascade);
+	}
+
+	/**
+	 * Converts the frame to an equalized gray scale image and finds the faces
+	 * in it. The results are stored in {@link Frame#rects} and
+	 * {@link Frame#faceCount}.
+	 * 
+	 * @param frame
+	 *            The frame from which faces are extracted.
+	 * @return The number of faces found.
+	 */
+	public int detect(Frame frame) {
+		// Pick up a change of classifier
+		Model next = this.next;
+		if (next != this.model) {
+			this.model = next;
+			this.reset();
+		}
+		if (this.model == null || this.model.cascade == null) {
+			frame.faceCount = 0;
+			return 0;
+		}
+
+		Mat gray = frame.gray;
+		// Color to gray scale
+		Imgproc.cvtColor(frame.image, gray, Imgproc.COLOR_BGR2GRAY);
+		// make face detecting easier
+		Imgproc.equalizeHist(gray, gray);
+		frame.preprocessTime = System.nanoTime();
+
+		frame.pixelsScanned = 0;
+
+		// Follow the target from the last detection if possible
+		if (this.detectInterval > 1 && this.tracker.isActive() && this.framesSinceDetection < this.detectInterval - 1
+				&& this.tracker.track(gray) >= this.minConfidence) {
+			this.framesSinceDetection++;
+			this.tracker.getTarget(frame.rects, 0);
+			frame.faceCount = 1;
+			this.lastPixelsScanned = 0;
+			return 1;
+		}
+
+		// Compute the face size needed for detection
+		if (this.absoluteFaceSize == 0) {
+			int height = gray.rows();
+			if (Math.round(this.facePortion * height) > 0) {
+				this.absoluteFaceSize = Math.round(this.facePortion * height);
+			}
+		}
+
+		// Look around the last face first, then in the whole frame
+		long start = System.nanoTime();
+		int count = 0;
+		boolean fullSweep = true;
+		if (this.fullSweepInterval > 1 && this.hasLastFace && this.runsSinceFullSweep < this.fullSweepInterval - 1) {
+			int marginX = (int) (this.lastFace.width * this.roiMargin);
+			int marginY = (int) (this.lastFace.height * this.roiMargin);
+			this.roi.x = Math.max(0, this.lastFace.x - marginX);
+			this.roi.y = Math.max(0, this.lastFace.y - marginY);
+			this.roi.width = Math.min(gray.cols(), this.lastFace.x + this.lastFace.width + marginX) - this.roi.x;
+			this.roi.height = Math.min(gray.rows(), this.lastFace.y + this.lastFace.height + marginY) - this.roi.y;
+			count = this.scan(frame, this.roi);
+			if (count > 0) {
+				fullSweep = false;
+				this.runsSinceFullSweep++;
+			}
+		}
+		if (fullSweep) {
+			this.roi.x = 0;
+			this.roi.y = 0;
+			this.roi.width = gray.cols();
+			this.roi.height = gray.rows();
+			count = this.scan(frame, this.roi);
+			this.runsSinceFullSweep = 0;
+		}
+		this.scale.update(System.nanoTime() - start);
+		this.framesSinceDetection = 0;
+		this.pixelsScanned += frame.pixelsScanned;
+		this.framesScanned++;
+		this.lastPixelsScanned = frame.pixelsScanned;
+
+		if (count < 1) {
+			this.hasLastFace = false;
+			this.tracker.reset();
+			return count;
+		}
+
+		// Remember the best ranked or else the largest face and hand it over
+		// to the tracker
+		int[] rects = frame.rects;
+		int largest = 0;
+		for (int i = 4; i < count * 4 && !this.ranked; i += 4)
+			if (rects[i + 2] * rects[i + 3] > rects[largest + 2] * rects[largest + 3])
+				largest = i;
+		this.lastFace.x = rects[largest];
+		this.lastFace.y = rects[largest + 1];
+		this.lastFace.width = rects[largest + 2];
+		this.lastFace.height = rects[largest + 3];
+		this.hasLastFace = true;
+		if (this.detectInterval > 1)
+			this.tracker.init(gray, rects[largest], rects[largest + 1], rects[largest + 2], rects[largest + 3]);
+		else
+			this.tracker.reset();
+		return count;
+	}
+
+	/**
+	 * Runs the classifier over part of the gray scale frame, shrunk to the
+	 * current scale, and stores the faces it finds, in full resolution frame
+	 * coordinates, in the frame.
+	 * 
+	 * @param frame
+	 *            The frame being searched.
+	 * @param region
+	 *            The part of the frame to search.
+	 * @return The number of faces found.
+	 */
+	private int scan(Frame frame, Rect region) {
+		Mat gray = frame.gray;
+		boolean whole = region.width == gray.cols() && region.height == gray.rows();
+		Mat search = gray;
+		if (!whole) {
+			// Copied rather than taken as a submat, which would allocate a
+			// new header every frame. Centered so nothing is interpolated
+			this.windowSize.width = region.width;
+			this.windowSize.height = region.height;
+			this.windowCenter.x = region.x + (region.width - 1) / 2.0;
+			this.windowCenter.y = region.y + (region.height - 1) / 2.0;
+			Imgproc.getRectSubPix(gray, this.windowSize, this.windowCenter, this.window);
+			search = this.window;
+		}
+		double scale = this.scale.getScale();
+		Mat input = search;
+		if (scale < 1) {
+			Imgproc.resize(search, this.scaled, this.noSize, scale, scale, Imgproc.INTER_AREA);
+			input = this.scaled;
+		}
+		this.minFaceSize.width = this.minFaceSize.height = Math.max(1, Math.round(this.absoluteFaceSize * scale));
+		int count;
+		ParallelDetector.Search parallel = this.parallel;
+		EnsembleDetector.Search ensemble = this.ensemble;
+		this.ranked = whole && ensemble != null;
+		if (this.ranked) {
+			count = ensemble.detect(input, frame);
+		} else if (whole && parallel != null) {
+			count = parallel.detect(input, (int) this.minFaceSize.width, frame);
+		} else {
+			this.model.cascade.detectMultiScale(input, frame.faces, SCALE_FACTOR, MIN_NEIGHBORS,
+					0 | Objdetect.CASCADE_SCALE_IMAGE, this.minFaceSize, this.maxFaceSize);
+			count = frame.unpackFaces();
+		}
+		frame.pixelsScanned += input.cols() * input.rows();
+
+		if (!whole || scale < 1) {
+			int[] rects = frame.rects;
+			for (int i = 0; i < count * 4; i += 4) {
+				rects[i] = (int) Math.round(rects[i] / scale) + region.x;
+				rects[i + 1] = (int) Math.round(rects[i + 1] / scale) + region.y;
+				rects[i + 2] = (int) Math.round(rects[i + 2] / scale);
+				rects[i + 3] = (int) Math.round(rects[i + 3] / scale);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Sets how often the classifier runs. Between runs, the largest face is
+	 * followed by template matching.
+	 * 
+	 * @param detectInterval
+	 *            Run the classifier on every n-th frame. 1 runs it on every
+	 *            frame and turns tracking off.
+	 */
+	public void setDetectInterval(int detectInterval) {
+		this.detectInterval = Math.max(1, detectInterval);
+	}
+
+	public int getDetectInterval() {
+		return this.detectInterval;
+	}
+
+	/**
+	 * Sets how often the classifier searches the whole frame rather than only
+	 * the area around the last detected face. The whole frame is always
+	 * searched when no face was found around the last one.
+	 * 
+	 * @param fullSweepInterval
+	 *            Search the whole frame on every n-th run of the classifier.
+	 *            1 always searches the whole frame.
+	 */
+	public void setFullSweepInterval(int fullSweepInterval) {
+		this.fullSweepInterval = Math.max(1, fullSweepInterval);
+	}
+
+	/**
+	 * @param parallel
+	 *            Used for searches of the whole frame, or <code>null</code> to
+	 *            always use this detector's own classifier on the calling
+	 *            thread. Its classifier must be switched along with this
+	 *            detector's. Other detectors can search with it at the same
+	 *            time.
+	 */
+	public void setParallelDetector(ParallelDetector parallel) {
+		this.parallel = parallel == null ? null : parallel.newSearch();
+	}
+
+	/**
+	 * @param ensemble
+	 *            Used instead of this detector's own classifier for searches
+	 *            of the whole frame, or <code>null</code> to stop using it.
+	 *            Searches around the last face still use this detector's own
+	 *            classifier. Other detectors can search with it at the same
+	 *            time.
+	 */
+	public void setEnsembleDetector(EnsembleDetector ensemble) {
+		if (ensemble != null && (this.ensembleSearch == null || this.ensembleSearch.getDetector() != ensemble))
+			this.ensembleSearch = ensemble.newSearch();
+		this.ensemble = ensemble == null ? null : this.ensembleSearch;
+	}
+
+	/**
+	 * Lets the detector shrink frames before passing them to the classifier
+	 * when detection takes longer than the budget.
+	 * 
+	 * @param millis
+	 *            The target time for one run of the classifier in
+	 *            milliseconds, or 0 to always detect at full resolution.
+	 */
+	public void setLatencyBudget(long millis) {
+		this.scale.setBudget(millis);
+	}
+
+	/**
+	 * @return The scale the classifier currently runs at, between 0 and 1.
+	 */
+	public double getScale() {
+		return this.scale.getScale();
+	}
+
+	/**
+	 * @return The average number of pixels passed to the classifier on the
+	 *         frames it ran on.
+	 */
+	public long getAveragePixelsScanned() {
+		long frames = this.framesScanned;
+		return frames == 0 ? 0 : this.pixelsScanned / frames;
+	}
+
+	/**
+	 * @return The number of pixels passed to the classifier for the last
+	 *         frame, or 0 if the face was tracked instead.
+	 */
+	public long getLastPixelsScanned() {
+		return this.lastPixelsScanned;
+	}
+
+	/**
+	 * @param minConfidence
+	 *            The template match score below which the classifier runs
+	 *            again, between -1 and 1.
+	 */
+	public void setMinConfidence(double minConfidence) {
+		this.minConfidence = minConfidence;
+	}
+
+	/**
+	 * Forgets the current target and the detected face size.
+	 */
+	private void reset() {
+		this.absoluteFaceSize = 0;
+		this.framesSinceDetection = 0;
+		this.runsSinceFullSweep = 0;
+		this.hasLastFace = false;
+		this.tracker.reset();
+	}
+
+	/**
+	 * Releases the native memory held by this detector.
+	 */
+	public void release() {
+		this.tracker.release();
+		this.window.release();
+		this.scaled.release();
+	}
+}
@@ -0,0 +1,96 @@
+package tracking;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+
+/**
+ * A single camera frame as it travels through the {@link FramePipeline},
+ * together with the working buffers and results of the detection stage.
+ * Frames are owned by a {@link FramePool} and reused, so none of the buffers
+ * are reallocated as long as the resolution stays the same.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class Frame {
+
+	// The image the camera captured
+	public final Mat image = new Mat();
+	// The equalized gray scale copy of the image used for detection
+	public final Mat gray = new Mat();
+	// The raw output of the cascade classifier
+	public final MatOfRect faces = new MatOfRect();
+	// The detected faces, packed as x, y, width, height
+	public int[] rects = new int[4 * 8];
+	// The camera the frame came from
+	public int sourceId;
+	// Increasing number assigned by the capture stage
+	public long sequence;
+	// System.nanoTime() at the moment the frame was captured
+	public long captureTime;
+	// When the frame was recorded, in nanos on the clock of its source. The
+	// same as captureTime for a camera, the time into the recording for a
+	// replay.
+	public long sourceTime;
+	// System.nanoTime() once the gray scale image was ready, the faces were
+	// found and the coordinates were left for the turrets, or 0 if the frame
+	// did not get that far
+	public long preprocessTime, detectTime, enqueueTime;
+	// Number of faces the detection stage found in this frame
+	public int faceCount;
+	// Center of the last detected face, or -1 if there is none
+	public double targetX = -1, targetY = -1;
+	// Number of pixels the classifier searched in this frame
+	public long pixelsScanned;
+
+	/**
+	 * Copies the contents of {@link #faces} into {@link #rects}, growing it
+	 * only if there are more faces than ever before.
+	 * 
+	 * @return The number of faces.
+	 */
+	public int unpackFaces() {
+		int count = this.faces.rows();
+		this.ensureRects(count);
+		if (count > 0)
+			this.faces.get(0, 0, this.rects);
+		this.faceCount = count;
+		return count;
+	}
+
+	/**
+	 * Grows {@link #rects} if it cannot hold the given number of faces.
+	 * 
+	 * @param count
+	 *            The number of faces that need to fit.
+	 */
+	public void ensureRects(int count) {
+		if (this.rects.length < 4 * count)
+			this.rects = new int[4 * count];
+	}
+
+	/**
+	 * Clears the results of the previous use of this frame.
+	 */
+	void reset() {
+		this.sequence = 0;
+		this.captureTime = 0;
+		this.sourceTime = 0;
+		this.preprocessTime = 0;
+		this.detectTime = 0;
+		this.enqueueTime = 0;
+		this.faceCount = 0;
+		this.pixelsScanned = 0;
+		this.targetX = -1;
+		this.targetY = -1;
+	}
+
+	/**
+	 * Releases the native memory held by this frame.
+	 */
+	public void release() {
+		this.image.release();
+		this.gray.release();
+		this.faces.release();
+	}
+}
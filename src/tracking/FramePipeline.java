@@ -0,0 +1,426 @@
+package tracking;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Mat;
+
+/**
+ * Runs frame capture, face detection and rendering as three independent
+ * stages, each on its own thread. The stages are connected by
+ * {@link FrameQueue}s that drop stale frames, so a slow stage never makes the
+ * stages in front of it fall behind the camera. A {@link FrameScheduler}
+ * decides how fast frames are grabbed and which frames are detected.
+ * <p>
+ * Several pipelines, one per camera, can share a {@link DetectionPool} in
+ * place of their own detection thread.
+ * <p>
+ * For replays that must give the same results every time, the pipeline can be
+ * made lossless: no frame is then dropped or skipped, and the capture stage
+ * waits for the slower stages instead.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class FramePipeline {
+
+	/**
+	 * Fills a <code>Mat</code> with the next frame from a source.
+	 */
+	public interface FrameGrabber {
+		/**
+		 * @param frame
+		 *            The <code>Mat</code> to read the frame into.
+		 * @return True if a frame was read, otherwise false.
+		 */
+		boolean grab(Mat frame);
+
+		/**
+		 * @return The time the frame last grabbed was recorded at, in nanos,
+		 *         or -1 if the source does not know.
+		 */
+		default long getTimestamp() {
+			return -1;
+		}
+
+		/**
+		 * @return True if frames keep arriving whether or not they are
+		 *         grabbed, as from a camera.
+		 */
+		default boolean isLive() {
+			return false;
+		}
+
+		/**
+		 * Takes the next frame off a live source without decoding it, so
+		 * older frames do not pile up in its buffer.
+		 * 
+		 * @return True if a frame was taken.
+		 */
+		default boolean skip() {
+			return false;
+		}
+	}
+
+	/**
+	 * Does the work of a single pipeline stage on a frame.
+	 */
+	public interface FrameProcessor {
+		void process(Frame frame);
+	}
+
+	// Time in millis to wait before retrying a failed grab
+	private static final int RETRY_DELAY = 10;
+	// Time in millis to wait for each stage to finish when stopping
+	private static final int STOP_TIMEOUT = 500;
+	// Frames in flight: one in each stage and one in each hand-off buffer,
+	// plus one spare for the capture stage to read into
+	private static final int POOL_SIZE = 6;
+
+	private final FramePool pool;
+	private final FrameScheduler scheduler;
+	private final FrameGrabber grabber;
+	private final FrameProcessor detector, renderer;
+	private final int sourceId;
+	// Detects the frames in place of the detection thread, or null
+	private final DetectionPool detectionPool;
+	// True while a thread of the detection pool is detecting a frame of this
+	// pipeline, guarded by the pool
+	boolean claimed = false;
+	// Hand-off buffers between the stages
+	private final FrameQueue detectQueue = new FrameQueue(1), renderQueue = new FrameQueue(1);
+
+	private Thread captureThread, detectThread, renderThread;
+	private volatile boolean running = false;
+	// Wait for room instead of dropping frames, and detect every frame
+	private volatile boolean lossless = false;
+
+	// Frames captured, detected, and taken off a camera without being
+	// decoded, and frames dropped because a stage was busy
+	private volatile long captured = 0, detected = 0, skipped = 0;
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * @param grabber
+	 *            Reads frames from the source.
+	 * @param detector
+	 *            Runs face detection on each frame.
+	 * @param renderer
+	 *            Displays each frame.
+	 * @param scheduler
+	 *            Paces the stages.
+	 * @param rows
+	 *            The expected frame height, or 0 if unknown.
+	 * @param cols
+	 *            The expected frame width, or 0 if unknown.
+	 */
+	public FramePipeline(FrameGrabber grabber, FrameProcessor detector, FrameProcessor renderer,
+			FrameScheduler scheduler, int rows, int cols) {
+		this(grabber, detector, renderer, scheduler, rows, cols, 0, null);
+	}
+
+	/**
+	 * @param grabber
+	 *            Reads frames from the source.
+	 * @param detector
+	 *            Runs face detection on each frame.
+	 * @param renderer
+	 *            Displays each frame.
+	 * @param scheduler
+	 *            Paces the stages.
+	 * @param rows
+	 *            The expected frame height, or 0 if unknown.
+	 * @param cols
+	 *            The expected frame width, or 0 if unknown.
+	 * @param sourceId
+	 *            Stored in every frame, to tell the cameras apart.
+	 * @param detectionPool
+	 *            Runs the detection stage, shared with other pipelines, or
+	 *            null to give this pipeline its own detection thread.
+	 */
+	public FramePipeline(FrameGrabber grabber, FrameProcessor detector, FrameProcessor renderer,
+			FrameScheduler scheduler, int rows, int cols, int sourceId, DetectionPool detectionPool) {
+		this.pool = new FramePool(POOL_SIZE, rows, cols);
+		this.scheduler = scheduler;
+		this.grabber = grabber;
+		this.detector = detector;
+		this.renderer = renderer;
+		this.sourceId = sourceId;
+		this.detectionPool = detectionPool;
+	}
+
+	/**
+	 * Starts all three stages.
+	 */
+	public synchronized void start() {
+		if (running)
+			return;
+		running = true;
+		captureThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				capture();
+			}
+		}, "PIPELINE-CAPTURE " + sourceId);
+		renderThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				render();
+			}
+		}, "PIPELINE-RENDER " + sourceId);
+		captureThread.setDaemon(true);
+		renderThread.setDaemon(true);
+		renderThread.start();
+		if (detectionPool != null) {
+			detectionPool.register(this);
+		} else {
+			detectThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					detect();
+				}
+			}, "PIPELINE-DETECT " + sourceId);
+			detectThread.setDaemon(true);
+			detectThread.start();
+		}
+		captureThread.start();
+	}
+
+	/**
+	 * Stops all three stages and waits for them to finish. Once this returns
+	 * the grabber is no longer in use and all frame buffers are released.
+	 */
+	public synchronized void stop() {
+		if (!running)
+			return;
+		running = false;
+		captureThread.interrupt();
+		renderThread.interrupt();
+		// A lossless detection may be waiting for the render stage
+		release(renderQueue);
+		if (detectionPool != null)
+			detectionPool.unregister(this);
+		else
+			detectThread.interrupt();
+		try {
+			captureThread.join(STOP_TIMEOUT);
+			if (detectThread != null)
+				detectThread.join(STOP_TIMEOUT);
+			renderThread.join(STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		detectThread = null;
+		release(detectQueue);
+		release(renderQueue);
+		pool.release();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @param lossless
+	 *            True to pass every frame through every stage, in order,
+	 *            however long that takes. For replaying recordings.
+	 */
+	public void setLossless(boolean lossless) {
+		this.lossless = lossless;
+	}
+
+	public long getCapturedFrames() {
+		return captured;
+	}
+
+	public long getDroppedFrames() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return The number of frames taken off a camera without being decoded,
+	 *         because the stages were still busy.
+	 */
+	public long getSkippedGrabs() {
+		return skipped;
+	}
+
+	/**
+	 * @return The number of frames the detector ran on.
+	 */
+	public long getDetectedFrames() {
+		return detected;
+	}
+
+	public int getSourceId() {
+		return sourceId;
+	}
+
+	/**
+	 * @return The number of frame buffers allocated since the pipeline was
+	 *         created. This stops growing once the pipeline is warmed up.
+	 */
+	public int getAllocatedFrames() {
+		return pool.getAllocatedFrames();
+	}
+
+	public FrameScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * The capture stage. Reads frames as fast as the slowest stage can handle
+	 * them and hands them to the detection stage.
+	 */
+	private void capture() {
+		long sequence = 0;
+		while (running) {
+			Frame frame;
+			try {
+				frame = pool.acquire();
+			} catch (InterruptedException e) {
+				break;
+			}
+			long start = System.nanoTime();
+			if (!grabber.grab(frame.image) || frame.image.empty()) {
+				pool.recycle(frame);
+				try {
+					Thread.sleep(RETRY_DELAY);
+				} catch (InterruptedException e) {
+					break;
+				}
+				continue;
+			}
+			frame.sourceId = sourceId;
+			frame.sequence = sequence++;
+			frame.captureTime = System.nanoTime();
+			long recorded = grabber.getTimestamp();
+			frame.sourceTime = recorded >= 0 ? recorded : frame.captureTime;
+			scheduler.captured(frame.captureTime - start);
+			captured++;
+			if (!hand(detectQueue, frame))
+				break;
+			if (detectionPool != null)
+				detectionPool.signal();
+
+			// Don't grab frames faster than the slowest stage can take them.
+			// A camera queues frames whether they are grabbed or not, and
+			// waiting would only make the next one older, so it is drained
+			// at its own rate until a frame is wanted
+			long wait = scheduler.grabInterval() - (System.nanoTime() - start);
+			if (grabber.isLive()) {
+				while (running && System.nanoTime() - start < scheduler.grabInterval() && grabber.skip())
+					skipped++;
+			} else if (wait > 0) {
+				try {
+					Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The detection thread, when there is no detection pool.
+	 */
+	private void detect() {
+		while (running) {
+			Frame frame;
+			try {
+				frame = detectQueue.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			detect(frame);
+		}
+	}
+
+	/**
+	 * The detection stage. Detects faces in the freshest frame, unless that
+	 * would make it miss its deadline, and hands it to the render stage.
+	 */
+	void detect(Frame frame) {
+		long start = System.nanoTime();
+		if (lossless || scheduler.shouldDetect(frame, start)) {
+			process(detector, frame);
+			scheduler.detected(System.nanoTime() - start);
+			detected++;
+		}
+		hand(renderQueue, frame);
+	}
+
+	/**
+	 * @return True if there is a frame waiting to be detected.
+	 */
+	boolean hasDetection() {
+		return running && !detectQueue.isEmpty();
+	}
+
+	/**
+	 * @return The next frame to be detected, or null if there is none.
+	 */
+	Frame pollDetection() {
+		return detectQueue.poll();
+	}
+
+	/**
+	 * The render stage. Displays the freshest frame and recycles it.
+	 */
+	private void render() {
+		while (running) {
+			Frame frame;
+			try {
+				frame = renderQueue.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			long start = System.nanoTime();
+			process(renderer, frame);
+			long end = System.nanoTime();
+			scheduler.rendered(frame, end - start, end);
+			pool.recycle(frame);
+		}
+	}
+
+	private void process(FrameProcessor processor, Frame frame) {
+		try {
+			processor.process(frame);
+		} catch (Exception e) {
+			System.err.println("ERROR: FRAME " + frame.sequence + " FAILED IN " + Thread.currentThread().getName());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Passes a frame on to the next stage, dropping the oldest waiting frame
+	 * if that stage is busy, or waiting for it when lossless.
+	 * 
+	 * @return False if interrupted while waiting.
+	 */
+	private boolean hand(FrameQueue queue, Frame frame) {
+		if (!lossless) {
+			drop(queue.offer(frame));
+			return true;
+		}
+		try {
+			queue.put(frame);
+			return true;
+		} catch (InterruptedException e) {
+			pool.recycle(frame);
+			return false;
+		}
+	}
+
+	private void drop(Frame frame) {
+		if (frame != null) {
+			dropped.incrementAndGet();
+			pool.recycle(frame);
+		}
+	}
+
+	private void release(FrameQueue queue) {
+		Frame frame;
+		while ((frame = queue.poll()) != null)
+			pool.recycle(frame);
+	}
+}
@@ -0,0 +1,95 @@
+package tracking;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.opencv.core.CvType;
+
+/**
+ * A fixed-size pool of {@link Frame}s. Frames are created on demand until the
+ * pool is full and are then recycled forever, so in the steady state no Java
+ * or native memory is allocated per frame.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class FramePool {
+
+	private final ArrayBlockingQueue<Frame> free;
+	private final int capacity, rows, cols;
+	// Number of frames created so far
+	private volatile int allocated = 0;
+
+	/**
+	 * @param capacity
+	 *            The maximum number of frames that can be in use at once.
+	 * @param rows
+	 *            The expected frame height, or 0 if unknown.
+	 * @param cols
+	 *            The expected frame width, or 0 if unknown.
+	 */
+	public FramePool(int capacity, int rows, int cols) {
+		this.free = new ArrayBlockingQueue<Frame>(capacity);
+		this.capacity = capacity;
+		this.rows = rows;
+		this.cols = cols;
+	}
+
+	/**
+	 * Takes a frame from the pool, creating one if the pool has not reached
+	 * its capacity, or waiting for one to be recycled otherwise.
+	 * 
+	 * @return A frame ready to be captured into.
+	 * @throws InterruptedException
+	 *             If the waiting thread is interrupted.
+	 */
+	public Frame acquire() throws InterruptedException {
+		Frame frame = free.poll();
+		if (frame != null)
+			return frame;
+		synchronized (this) {
+			if (allocated < capacity) {
+				allocated++;
+				return create();
+			}
+		}
+		return free.take();
+	}
+
+	/**
+	 * Returns a frame to the pool so it can be reused.
+	 * 
+	 * @param frame
+	 *            The frame that is no longer in use.
+	 */
+	public void recycle(Frame frame) {
+		frame.reset();
+		if (!free.offer(frame))
+			frame.release();
+	}
+
+	/**
+	 * Releases the native memory of every frame currently in the pool.
+	 */
+	public void release() {
+		Frame frame;
+		while ((frame = free.poll()) != null)
+			frame.release();
+	}
+
+	/**
+	 * @return The number of frames this pool has created.
+	 */
+	public int getAllocatedFrames() {
+		return allocated;
+	}
+
+	private Frame create() {
+		Frame frame = new Frame();
+		// Preallocate the buffers for the expected resolution
+		if (rows > 0 && cols > 0) {
+			frame.image.create(rows, cols, CvType.CV_8UC3);
+			frame.gray.create(rows, cols, CvType.CV_8UC1);
+		}
+		return frame;
+	}
+}
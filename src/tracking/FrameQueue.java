@@ -0,0 +1,100 @@
+package tracking;
+
+/**
+ * A bounded hand-off buffer between two pipeline stages. When the buffer is
+ * full the oldest frame is pushed out, so a slow consumer always receives the
+ * freshest frames instead of working through a backlog of stale ones.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class FrameQueue {
+
+	private final Frame[] frames;
+	// Index of the oldest frame, and the number of frames held
+	private int head = 0, size = 0;
+
+	/**
+	 * @param capacity
+	 *            The maximum number of frames held before the oldest is
+	 *            dropped. A capacity of 1 means the latest frame always wins.
+	 */
+	public FrameQueue(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		this.frames = new Frame[capacity];
+	}
+
+	/**
+	 * Adds a frame, pushing out the oldest frame if the queue is full.
+	 * 
+	 * @param frame
+	 *            The frame to add.
+	 * @return The frame that was dropped to make room, or <code>null</code>.
+	 */
+	public synchronized Frame offer(Frame frame) {
+		Frame dropped = null;
+		if (size == frames.length) {
+			dropped = frames[head];
+			frames[head] = null;
+			head = (head + 1) % frames.length;
+			size--;
+		}
+		frames[(head + size) % frames.length] = frame;
+		size++;
+		notifyAll();
+		return dropped;
+	}
+
+	/**
+	 * Adds a frame, waiting for room if the queue is full, so no frame is
+	 * ever dropped.
+	 * 
+	 * @param frame
+	 *            The frame to add.
+	 * @throws InterruptedException
+	 *             If the waiting thread is interrupted.
+	 */
+	public synchronized void put(Frame frame) throws InterruptedException {
+		while (size == frames.length)
+			wait();
+		offer(frame);
+	}
+
+	/**
+	 * Removes the oldest frame, waiting for one to arrive if necessary.
+	 * 
+	 * @return The oldest frame in the queue.
+	 * @throws InterruptedException
+	 *             If the waiting thread is interrupted.
+	 */
+	public synchronized Frame take() throws InterruptedException {
+		while (size == 0)
+			wait();
+		return poll();
+	}
+
+	/**
+	 * @return True if there are no frames in the queue.
+	 */
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes the oldest frame without waiting.
+	 * 
+	 * @return The oldest frame in the queue, or <code>null</code> if the queue
+	 *         is empty.
+	 */
+	public synchronized Frame poll() {
+		if (size == 0)
+			return null;
+		Frame frame = frames[head];
+		frames[head] = null;
+		head = (head + 1) % frames.length;
+		size--;
+		notifyAll();
+		return frame;
+	}
+}
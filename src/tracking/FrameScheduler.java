@@ -0,0 +1,146 @@
+package tracking;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces the {@link FramePipeline} from the measured cost of its stages. The
+ * capture stage is slowed down to the rate of the slowest stage, so frames
+ * that would only be dropped are never decoded, and detection is skipped for
+ * frames that would miss their end-to-end deadline anyway. A recording is
+ * read less often, while a camera is still grabbed at its own rate, without
+ * decoding, so the frame that is decoded is always the latest.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class FrameScheduler {
+
+	// Weight of the newest measurement in the running averages
+	private static final double SMOOTHING = 0.1;
+	// Detection is never skipped more often than this in a row, so the
+	// target is not lost when every detection is slower than the deadline
+	private static final int MAX_CONSECUTIVE_SKIPS = 3;
+	// Time in nanos over which the frame rate is measured
+	private static final long FPS_WINDOW = 1000000000L;
+
+	// The longest a frame may take from capture to display, in nanos
+	private final long deadline;
+	// Running averages of the time each stage takes, in nanos
+	private volatile double captureCost = 0, detectCost = 0, renderCost = 0;
+	// Used by the detection stage only
+	private int consecutiveSkips = 0;
+	// Used by the render stage only
+	private long windowStart = 0, windowFrames = 0;
+	private volatile double fps = 0;
+	private final AtomicLong skipped = new AtomicLong(), overruns = new AtomicLong();
+
+	/**
+	 * @param deadlineMillis
+	 *            The longest a frame may take from capture to display, in
+	 *            milliseconds.
+	 */
+	public FrameScheduler(long deadlineMillis) {
+		this.deadline = deadlineMillis * 1000000L;
+	}
+
+	/**
+	 * @return The time in nanos the capture stage should leave between the
+	 *         starts of two frames it decodes.
+	 */
+	long grabInterval() {
+		return (long) Math.max(this.detectCost, this.renderCost);
+	}
+
+	void captured(long elapsed) {
+		this.captureCost = average(this.captureCost, elapsed);
+	}
+
+	/**
+	 * Decides whether a frame should go through detection.
+	 * 
+	 * @param frame
+	 *            The frame about to be detected.
+	 * @param now
+	 *            The current System.nanoTime().
+	 * @return False if detecting would make the frame miss its deadline.
+	 */
+	boolean shouldDetect(Frame frame, long now) {
+		long finish = now - frame.captureTime + (long) (this.detectCost + this.renderCost);
+		if (finish > this.deadline && this.consecutiveSkips < MAX_CONSECUTIVE_SKIPS) {
+			this.consecutiveSkips++;
+			this.skipped.incrementAndGet();
+			return false;
+		}
+		this.consecutiveSkips = 0;
+		return true;
+	}
+
+	void detected(long elapsed) {
+		this.detectCost = average(this.detectCost, elapsed);
+	}
+
+	/**
+	 * Records that a frame has been displayed.
+	 * 
+	 * @param frame
+	 *            The frame that was displayed.
+	 * @param elapsed
+	 *            The time the render stage took, in nanos.
+	 * @param now
+	 *            The current System.nanoTime().
+	 */
+	void rendered(Frame frame, long elapsed, long now) {
+		this.renderCost = average(this.renderCost, elapsed);
+		if (now - frame.captureTime > this.deadline)
+			this.overruns.incrementAndGet();
+
+		this.windowFrames++;
+		if (this.windowStart == 0) {
+			this.windowStart = now;
+		} else if (now - this.windowStart >= FPS_WINDOW) {
+			this.fps = this.windowFrames * 1e9 / (now - this.windowStart);
+			this.windowStart = now;
+			this.windowFrames = 0;
+		}
+	}
+
+	/**
+	 * @return The number of frames displayed per second.
+	 */
+	public double getFps() {
+		return this.fps;
+	}
+
+	/**
+	 * @return The number of frames that were displayed after their deadline.
+	 */
+	public long getOverruns() {
+		return this.overruns.get();
+	}
+
+	/**
+	 * @return The number of frames that were not run through detection.
+	 */
+	public long getSkippedFrames() {
+		return this.skipped.get();
+	}
+
+	/**
+	 * @return The average time the given stage takes in milliseconds.
+	 */
+	public double getCaptureMillis() {
+		return this.captureCost / 1e6;
+	}
+
+	public double getDetectMillis() {
+		return this.detectCost / 1e6;
+	}
+
+	public double getRenderMillis() {
+		return this.renderCost / 1e6;
+	}
+
+	private static double average(double average, long sample) {
+		return average == 0 ? sample : average * (1 - SMOOTHING) + sample * SMOOTHING;
+	}
+}
@@ -0,0 +1,161 @@
+package tracking;
+
+import java.io.File;
+
+import org.opencv.core.Mat;
+
+/**
+ * Somewhere frames come from: a live camera, a video file or a directory of
+ * images. Recordings can be replayed at the pace they were recorded at or as
+ * fast as they can be read, and every frame keeps the time it was recorded
+ * at, so replays track the same way however fast they run.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public abstract class FrameSource implements FramePipeline.FrameGrabber {
+
+	/**
+	 * How fast a recording is replayed.
+	 */
+	public enum Pacing {
+		// At the pace it was recorded at
+		RECORDED,
+		// As fast as the frames are asked for
+		FAST
+	}
+
+	// The time the last frame grabbed was recorded at, in nanos
+	protected long timestamp = -1;
+	private volatile Pacing pacing = Pacing.RECORDED;
+	// Start a recording over when it ends
+	private volatile boolean loop = false;
+	// System.nanoTime() and the recorded time of the first frame since the
+	// source was opened or started over, used for pacing
+	private long startTime = -1, startTimestamp;
+
+	/**
+	 * Opens a source by name. A name made only of digits is the index of a
+	 * camera, a directory is a sequence of images, and anything else is the
+	 * path of a video file.
+	 * 
+	 * @param source
+	 *            The name of the source.
+	 * @return The source, not yet opened.
+	 */
+	public static FrameSource create(String source) {
+		if (source.matches("\\d+"))
+			return new CameraSource(Integer.parseInt(source));
+		if (new File(source).isDirectory())
+			return new ImageDirectorySource(new File(source));
+		return new VideoFileSource(source);
+	}
+
+	/**
+	 * @return True if the source could be opened.
+	 */
+	public abstract boolean open();
+
+	public abstract boolean isOpened();
+
+	/**
+	 * @return The frame height, or 0 if unknown.
+	 */
+	public abstract int getRows();
+
+	/**
+	 * @return The frame width, or 0 if unknown.
+	 */
+	public abstract int getCols();
+
+	public abstract void release();
+
+	/**
+	 * @return True for a camera, false for a recording.
+	 */
+	public boolean isLive() {
+		return false;
+	}
+
+	/**
+	 * Reads the next frame and sets {@link #timestamp}.
+	 * 
+	 * @return True if a frame was read, false at the end of the recording.
+	 */
+	protected abstract boolean read(Mat frame);
+
+	/**
+	 * Goes back to the first frame.
+	 * 
+	 * @return True if the source can start over.
+	 */
+	protected abstract boolean rewind();
+
+	/**
+	 * @param pacing
+	 *            How fast a recording is replayed. Cameras are always read as
+	 *            they deliver frames.
+	 */
+	public void setPacing(Pacing pacing) {
+		this.pacing = pacing;
+	}
+
+	public Pacing getPacing() {
+		return this.pacing;
+	}
+
+	/**
+	 * @param loop
+	 *            True to start a recording over when it ends, so it can stand
+	 *            in for a camera.
+	 */
+	public void setLoop(boolean loop) {
+		this.loop = loop;
+	}
+
+	@Override
+	public boolean grab(Mat frame) {
+		if (!this.isOpened())
+			return false;
+		if (!this.read(frame)) {
+			if (!this.loop || !this.rewind())
+				return false;
+			this.startTime = -1;
+			if (!this.read(frame))
+				return false;
+		}
+		if (this.pacing == Pacing.RECORDED && !this.isLive())
+			this.pace();
+		return true;
+	}
+
+	/**
+	 * @return The time the last frame grabbed was recorded at, in nanos. For
+	 *         a camera this is System.nanoTime() when it was read, for a
+	 *         recording the time since the recording started.
+	 */
+	@Override
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	/**
+	 * Waits until the frame is due, measured from the first frame.
+	 */
+	private void pace() {
+		long now = System.nanoTime();
+		if (this.startTime < 0) {
+			this.startTime = now;
+			this.startTimestamp = this.timestamp;
+			return;
+		}
+		long wait = this.startTime + (this.timestamp - this.startTimestamp) - now;
+		if (wait > 0) {
+			try {
+				Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
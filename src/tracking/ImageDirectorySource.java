@@ -0,0 +1,152 @@
+package tracking;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Frames from a directory of images, read in name order. The time each frame
+ * was recorded at is taken from a <code>timestamps.txt</code> file in the
+ * directory, holding one time in milliseconds per line in the same order as
+ * the images, or otherwise from a fixed frame rate.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class ImageDirectorySource extends FrameSource {
+
+	// The name of the optional file of frame times
+	public static final String TIMESTAMPS = "timestamps.txt";
+	// Used when there is no file of frame times
+	private static final double DEFAULT_FPS = 30;
+
+	private final File directory;
+	private final double fps;
+	private File[] images;
+	private long[] times;
+	private int next = 0, rows = 0, cols = 0;
+
+	/**
+	 * @param directory
+	 *            The directory of images.
+	 */
+	public ImageDirectorySource(File directory) {
+		this(directory, DEFAULT_FPS);
+	}
+
+	/**
+	 * @param directory
+	 *            The directory of images.
+	 * @param fps
+	 *            The frame rate the images were recorded at, if there is no
+	 *            file of frame times.
+	 */
+	public ImageDirectorySource(File directory, double fps) {
+		this.directory = directory;
+		this.fps = fps;
+	}
+
+	@Override
+	public boolean open() {
+		File[] files = this.directory.listFiles();
+		if (files == null)
+			return false;
+		Arrays.sort(files);
+		List<File> images = new ArrayList<File>();
+		for (File file : files) {
+			String name = file.getName().toLowerCase();
+			if (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".bmp"))
+				images.add(file);
+		}
+		if (images.isEmpty())
+			return false;
+		this.images = images.toArray(new File[images.size()]);
+		this.times = this.readTimes();
+		this.next = 0;
+
+		Mat first = Imgcodecs.imread(this.images[0].getAbsolutePath());
+		this.rows = first.rows();
+		this.cols = first.cols();
+		first.release();
+		return true;
+	}
+
+	/**
+	 * @return The time of each image in nanos.
+	 */
+	private long[] readTimes() {
+		long[] times = new long[this.images.length];
+		for (int i = 0; i < times.length; i++)
+			times[i] = (long) (i * 1000000000L / this.fps);
+		File file = new File(this.directory, TIMESTAMPS);
+		if (!file.isFile())
+			return times;
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				for (int i = 0; i < times.length && (line = reader.readLine()) != null; i++)
+					times[i] = (long) (Double.parseDouble(line.trim()) * 1000000L);
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | NumberFormatException e) {
+			System.err.println("ERROR: COULD NOT READ " + file + ", USING " + this.fps + " FPS.");
+		}
+		return times;
+	}
+
+	@Override
+	public boolean isOpened() {
+		return this.images != null;
+	}
+
+	@Override
+	protected boolean read(Mat frame) {
+		while (this.next < this.images.length) {
+			Mat image = Imgcodecs.imread(this.images[this.next].getAbsolutePath());
+			long time = this.times[this.next++];
+			// Skip anything that is not an image after all
+			if (image == null || image.empty())
+				continue;
+			image.copyTo(frame);
+			image.release();
+			this.timestamp = time;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	protected boolean rewind() {
+		this.next = 0;
+		return true;
+	}
+
+	@Override
+	public int getRows() {
+		return this.rows;
+	}
+
+	@Override
+	public int getCols() {
+		return this.cols;
+	}
+
+	@Override
+	public void release() {
+		this.images = null;
+	}
+
+	@Override
+	public String toString() {
+		return this.directory.getPath();
+	}
+}
@@ -0,0 +1,204 @@
+package tracking;
+
+/**
+ * Estimates where a target is and how fast it is moving from the centers of
+ * successive detections, so the turret can be aimed at where the target will
+ * be once the command reaches the servos rather than where it was when the
+ * frame was captured.
+ * <p>
+ * Each axis is a separate constant-velocity Kalman filter, driven by random
+ * acceleration. Missed detections are bridged by letting the estimate coast
+ * for a few frames before the target is dropped.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class KalmanTarget {
+
+	private static final int X = 0, Y = 1;
+	// Innovations further than this many standard deviations away are taken
+	// to be a different target
+	private static final double GATE = 4.0;
+	// Uncertainty of the velocity of a new target, in pixels per second
+	private static final double INITIAL_SPEED = 500.0;
+	// Coasting is never extrapolated further than this, in seconds
+	private static final double MAX_LEAD = 0.5;
+	// A detection this long after the last one starts a new target, in nanos
+	private static final long MAX_GAP = 1000000000L;
+
+	// Variance of the acceleration, in (pixels / s^2)^2
+	private final double acceleration;
+	// Variance of a detection's center, in pixels^2
+	private final double measurement;
+	private final int maxMisses;
+
+	// State and covariance per axis
+	private final double[] position = new double[2], velocity = new double[2];
+	private final double[] pp = new double[2], pv = new double[2], vv = new double[2];
+	// System.nanoTime() the state is valid at
+	private long time = 0;
+	private boolean active = false;
+	private int misses = 0;
+
+	/**
+	 * @param acceleration
+	 *            How sharply targets change speed, as the standard deviation
+	 *            of their acceleration in pixels per second squared.
+	 * @param measurement
+	 *            How far a detection's center is typically off, in pixels.
+	 * @param maxMisses
+	 *            The number of frames in a row without a detection that are
+	 *            bridged before the target is dropped.
+	 */
+	public KalmanTarget(double acceleration, double measurement, int maxMisses) {
+		this.acceleration = acceleration * acceleration;
+		this.measurement = measurement * measurement;
+		this.maxMisses = maxMisses;
+	}
+
+	/**
+	 * Corrects the estimate with a detection.
+	 * 
+	 * @param x
+	 *            The x coordinate of the center of the target.
+	 * @param y
+	 *            The y coordinate of the center of the target.
+	 * @param time
+	 *            System.nanoTime() the frame was captured at.
+	 */
+	public void update(double x, double y, long time) {
+		if (this.active && time - this.time < MAX_GAP) {
+			this.predict(time);
+			if (this.gate(X, x) && this.gate(Y, y)) {
+				this.correct(X, x);
+				this.correct(Y, y);
+				this.misses = 0;
+				return;
+			}
+		}
+		this.start(X, x);
+		this.start(Y, y);
+		this.time = time;
+		this.active = true;
+		this.misses = 0;
+	}
+
+	/**
+	 * Lets the estimate coast through a frame without a detection.
+	 * 
+	 * @param time
+	 *            System.nanoTime() the frame was captured at.
+	 * @return True if the target is still being followed, false if it has
+	 *         been missed for too long and was dropped.
+	 */
+	public boolean miss(long time) {
+		if (!this.active)
+			return false;
+		if (++this.misses > this.maxMisses) {
+			this.reset();
+			return false;
+		}
+		this.predict(time);
+		return true;
+	}
+
+	/**
+	 * @return True if there is a target being followed.
+	 */
+	public boolean isActive() {
+		return this.active;
+	}
+
+	/**
+	 * @param lead
+	 *            How far ahead of the last frame to look, in nanos.
+	 * @return The x coordinate the target is expected at.
+	 */
+	public double predictX(long lead) {
+		return this.extrapolate(X, lead);
+	}
+
+	/**
+	 * @param lead
+	 *            How far ahead of the last frame to look, in nanos.
+	 * @return The y coordinate the target is expected at.
+	 */
+	public double predictY(long lead) {
+		return this.extrapolate(Y, lead);
+	}
+
+	/**
+	 * @return The estimated speed of the target along x, in pixels per
+	 *         second.
+	 */
+	public double getVelocityX() {
+		return this.velocity[X];
+	}
+
+	/**
+	 * @return The estimated speed of the target along y, in pixels per
+	 *         second.
+	 */
+	public double getVelocityY() {
+		return this.velocity[Y];
+	}
+
+	/**
+	 * Forgets the target.
+	 */
+	public void reset() {
+		this.active = false;
+		this.misses = 0;
+	}
+
+	private double extrapolate(int axis, long lead) {
+		return this.position[axis] + this.velocity[axis] * Math.min(MAX_LEAD, Math.max(0, lead) / 1e9);
+	}
+
+	private void start(int axis, double z) {
+		this.position[axis] = z;
+		this.velocity[axis] = 0;
+		this.pp[axis] = this.measurement;
+		this.pv[axis] = 0;
+		this.vv[axis] = INITIAL_SPEED * INITIAL_SPEED;
+	}
+
+	/**
+	 * Moves the state forward to the given time.
+	 */
+	private void predict(long time) {
+		double dt = Math.max(0, time - this.time) / 1e9;
+		this.time = Math.max(this.time, time);
+		if (dt == 0)
+			return;
+		double dt2 = dt * dt, q = this.acceleration;
+		for (int axis = X; axis <= Y; axis++) {
+			this.position[axis] += this.velocity[axis] * dt;
+			double pp = this.pp[axis], pv = this.pv[axis], vv = this.vv[axis];
+			this.pp[axis] = pp + 2 * dt * pv + dt2 * vv + q * dt2 * dt2 / 4;
+			this.pv[axis] = pv + dt * vv + q * dt2 * dt / 2;
+			this.vv[axis] = vv + q * dt2;
+		}
+	}
+
+	/**
+	 * @return True if the detection is close enough to the prediction to be
+	 *         the same target.
+	 */
+	private boolean gate(int axis, double z) {
+		double innovation = z - this.position[axis];
+		return innovation * innovation <= GATE * GATE * (this.pp[axis] + this.measurement);
+	}
+
+	private void correct(int axis, double z) {
+		double innovation = z - this.position[axis];
+		double s = this.pp[axis] + this.measurement;
+		double kp = this.pp[axis] / s, kv = this.pv[axis] / s;
+		this.position[axis] += kp * innovation;
+		this.velocity[axis] += kv * innovation;
+		double pp = this.pp[axis], pv = this.pv[axis];
+		this.pp[axis] = (1 - kp) * pp;
+		this.pv[axis] = (1 - kp) * pv;
+		this.vv[axis] -= kv * pv;
+	}
+}
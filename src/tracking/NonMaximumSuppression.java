@@ -0,0 +1,95 @@
+package tracking;
+
+/**
+ * Merges overlapping detections. Rectangles are packed into an
+ * <code>int[]</code> as x, y, width, height, the same way as
+ * {@link Frame#rects}.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class NonMaximumSuppression {
+
+	/**
+	 * Sorts the rectangles largest first, then removes every rectangle that
+	 * overlaps a larger one that was kept by more than the threshold. Ties
+	 * are broken by position, so the result only depends on the set of
+	 * rectangles and not on the order they were found in.
+	 * 
+	 * @param rects
+	 *            The packed rectangles. They are sorted and compacted in
+	 *            place.
+	 * @param count
+	 *            The number of rectangles.
+	 * @param threshold
+	 *            The intersection over union above which two rectangles are
+	 *            considered the same object.
+	 * @return The number of rectangles kept.
+	 */
+	public static int suppress(int[] rects, int count, double threshold) {
+		sort(rects, count);
+		int kept = 0;
+		for (int i = 0; i < count * 4; i += 4) {
+			boolean keep = true;
+			for (int j = 0; j < kept * 4 && keep; j += 4)
+				keep = overlap(rects, i, j) <= threshold;
+			if (keep) {
+				if (kept * 4 != i)
+					System.arraycopy(rects, i, rects, kept * 4, 4);
+				kept++;
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * @return The intersection over union of the rectangles starting at
+	 *         <code>a</code> and <code>b</code>.
+	 */
+	public static double overlap(int[] rects, int a, int b) {
+		int left = Math.max(rects[a], rects[b]);
+		int top = Math.max(rects[a + 1], rects[b + 1]);
+		int right = Math.min(rects[a] + rects[a + 2], rects[b] + rects[b + 2]);
+		int bottom = Math.min(rects[a + 1] + rects[a + 3], rects[b + 1] + rects[b + 3]);
+		if (right <= left || bottom <= top)
+			return 0;
+		double intersection = (double) (right - left) * (bottom - top);
+		double union = (double) rects[a + 2] * rects[a + 3] + (double) rects[b + 2] * rects[b + 3] - intersection;
+		return intersection / union;
+	}
+
+	/**
+	 * Insertion sort, largest area first, then top to bottom and left to
+	 * right. There are only ever a handful of detections.
+	 * 
+	 * @param rects
+	 *            The packed rectangles, sorted in place.
+	 * @param count
+	 *            The number of rectangles.
+	 */
+	public static void sort(int[] rects, int count) {
+		for (int i = 4; i < count * 4; i += 4) {
+			int x = rects[i], y = rects[i + 1], w = rects[i + 2], h = rects[i + 3];
+			int j = i - 4;
+			while (j >= 0 && before(x, y, w, h, rects[j], rects[j + 1], rects[j + 2], rects[j + 3])) {
+				System.arraycopy(rects, j, rects, j + 4, 4);
+				j -= 4;
+			}
+			rects[j + 4] = x;
+			rects[j + 5] = y;
+			rects[j + 6] = w;
+			rects[j + 7] = h;
+		}
+	}
+
+	private static boolean before(int x1, int y1, int w1, int h1, int x2, int y2, int w2, int h2) {
+		long area1 = (long) w1 * h1, area2 = (long) w2 * h2;
+		if (area1 != area2)
+			return area1 > area2;
+		if (y1 != y2)
+			return y1 < y2;
+		if (x1 != x2)
+			return x1 < x2;
+		return w1 < w2;
+	}
+}
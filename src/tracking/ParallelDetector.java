@@ -0,0 +1,301 @@
+package tracking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.CascadeClassifier;
+import org.opencv.objdetect.Objdetect;
+
+/**
+ * Spreads one run of a cascade classifier over several cores, finding exactly
+ * the faces a single run over the whole frame on one thread finds.
+ * <p>
+ * A classifier searches the frame at a series of scales, each
+ * {@link FaceDetector#SCALE_FACTOR} larger than the last, and only groups the
+ * raw detections of all scales into faces at the end. Here every scale is
+ * searched by a task of its own, with size limits that let the classifier
+ * visit that scale and no other, and without grouping. The raw detections of
+ * all tasks are then grouped once, the same way the classifier groups them,
+ * so no face is split or merged differently and every face gets the same
+ * neighbours. The limits lie halfway between the window sizes of neighbouring
+ * scales, so every scale is searched by exactly one task even if the window
+ * sizes are rounded slightly differently here than by OpenCV.
+ * <p>
+ * The tasks run on a {@link ForkJoinPool}. A {@link CascadeClassifier} can
+ * only be used by one thread at a time, so the detector is given one copy of
+ * the classifier per worker, already loaded, and each task borrows one for as
+ * long as it runs. The smallest scale has the most windows to search, roughly
+ * a sixth of all of them, so more than about six workers do not help.
+ * <p>
+ * Each camera searches with a {@link Search} of its own, holding its tasks
+ * and detections, so several cameras can search at the same time, sharing
+ * the workers and the copies of the classifier.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class ParallelDetector {
+
+	// How close detections must be to be grouped, the same as OpenCV's
+	// detectMultiScale
+	private static final double GROUP_EPS = 0.2;
+
+	/**
+	 * The copies of a classifier shared by the workers, and the size of its
+	 * window at the smallest scale.
+	 */
+	private static class Cascade {
+		final BlockingQueue<CascadeClassifier> copies;
+		final int windowWidth, windowHeight;
+
+		Cascade(CascadeClassifier[] copies) {
+			this.copies = new ArrayBlockingQueue<CascadeClassifier>(copies.length);
+			for (CascadeClassifier copy : copies)
+				this.copies.add(copy);
+			Size window = copies[0].getOriginalWindowSize();
+			this.windowWidth = (int) window.width;
+			this.windowHeight = (int) window.height;
+		}
+	}
+
+	/**
+	 * Searches the frame for faces at a single scale.
+	 */
+	private static class Scale extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Size minSize, maxSize;
+		final MatOfRect found = new MatOfRect();
+		int[] rects = new int[4 * 16];
+		int count;
+		Mat gray;
+		Cascade cascade;
+
+		Scale(Size minSize, Size maxSize) {
+			this.minSize = minSize;
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected void compute() {
+			this.count = 0;
+			CascadeClassifier classifier;
+			try {
+				// There are as many copies as workers, so one is free unless
+				// the pool has added a thread while another waits
+				classifier = this.cascade.copies.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			try {
+				// No neighbours are needed, the detections are grouped at the
+				// end
+				classifier.detectMultiScale(this.gray, this.found, FaceDetector.SCALE_FACTOR, 0,
+						0 | Objdetect.CASCADE_SCALE_IMAGE, this.minSize, this.maxSize);
+			} finally {
+				this.cascade.copies.add(classifier);
+			}
+
+			int count = this.found.rows();
+			if (this.rects.length < 4 * count)
+				this.rects = new int[4 * count];
+			if (count > 0)
+				this.found.get(0, 0, this.rects);
+			this.count = count;
+		}
+	}
+
+	/**
+	 * The tasks and detections of one camera's searches. Used by one thread
+	 * at a time.
+	 */
+	public class Search {
+
+		// The scales for the current classifier, frame size and minimum face
+		// size
+		private Scale[] scales = new Scale[0];
+		private Cascade layoutCascade;
+		private int layoutWidth, layoutHeight, layoutMinSize;
+		private final RecursiveAction all = new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(scales);
+			}
+		};
+		// The raw detections of all scales, and the faces they are grouped
+		// into
+		private int[] merged = new int[4 * 64];
+		private final MatOfRect candidates = new MatOfRect();
+		private final MatOfInt weights = new MatOfInt();
+
+		private Search() {
+		}
+
+		/**
+		 * Finds the faces in a gray scale image, using all of the workers
+		 * that are not busy with another camera's search.
+		 * 
+		 * @param gray
+		 *            The equalized gray scale image.
+		 * @param minSize
+		 *            The smallest face size to look for.
+		 * @param frame
+		 *            The frame the detections are stored in, in the
+		 *            coordinates of <code>gray</code>, largest first.
+		 * @return The number of faces found.
+		 */
+		public int detect(Mat gray, int minSize, Frame frame) {
+			// The same classifier for the whole frame
+			Cascade cascade = ParallelDetector.this.cascade;
+			if (cascade == null) {
+				frame.faceCount = 0;
+				return 0;
+			}
+			if (cascade != this.layoutCascade || gray.cols() != this.layoutWidth
+					|| gray.rows() != this.layoutHeight || minSize != this.layoutMinSize)
+				this.layout(cascade, gray.cols(), gray.rows(), minSize);
+			for (Scale scale : this.scales) {
+				scale.gray = gray;
+				scale.cascade = cascade;
+				scale.reinitialize();
+			}
+			this.all.reinitialize();
+			ParallelDetector.this.pool.invoke(this.all);
+
+			int total = 0;
+			for (Scale scale : this.scales) {
+				if (this.merged.length < 4 * (total + scale.count)) {
+					int[] grown = new int[2 * 4 * (total + scale.count)];
+					System.arraycopy(this.merged, 0, grown, 0, 4 * total);
+					this.merged = grown;
+				}
+				System.arraycopy(scale.rects, 0, this.merged, 4 * total, 4 * scale.count);
+				total += scale.count;
+				scale.gray = null;
+				scale.cascade = null;
+			}
+
+			// Group the detections of every scale together, as a single run
+			// of the classifier does
+			int count = 0;
+			if (total > 0) {
+				this.candidates.alloc(total);
+				this.candidates.put(0, 0, this.merged);
+				Objdetect.groupRectangles(this.candidates, this.weights, FaceDetector.MIN_NEIGHBORS, GROUP_EPS);
+				count = this.candidates.rows();
+				if (count > 0)
+					this.candidates.get(0, 0, this.merged);
+			}
+			// The classifier returns faces in no particular order
+			NonMaximumSuppression.sort(this.merged, count);
+			frame.ensureRects(count);
+			System.arraycopy(this.merged, 0, frame.rects, 0, 4 * count);
+			frame.faceCount = count;
+			return count;
+		}
+
+		/**
+		 * Works out the scales the classifier searches a frame at, the way
+		 * detectMultiScale does, and the size limits that make it search
+		 * only one of them.
+		 */
+		private void layout(Cascade cascade, int width, int height, int minSize) {
+			List<Integer> sizes = new ArrayList<Integer>();
+			for (double factor = 1;; factor *= FaceDetector.SCALE_FACTOR) {
+				// OpenCV scales the window by the factor as a float
+				float scale = (float) factor;
+				int windowWidth = (int) Math.rint(cascade.windowWidth * scale);
+				int windowHeight = (int) Math.rint(cascade.windowHeight * scale);
+				if (windowWidth > width || windowHeight > height)
+					break;
+				if (windowWidth >= minSize && windowHeight >= minSize)
+					sizes.add(windowWidth);
+			}
+
+			List<Scale> scales = new ArrayList<Scale>();
+			if (sizes.isEmpty()) {
+				// Nothing fits, but leave that to the classifier
+				scales.add(new Scale(new Size(minSize, minSize), new Size()));
+			} else {
+				// Each limit lies halfway between two window widths. The
+				// first scale has the limits of the whole search, and the
+				// last one is only limited by the frame
+				int lower = minSize;
+				for (int i = 0; i < sizes.size(); i++) {
+					boolean first = i == 0, last = i == sizes.size() - 1;
+					int upper = last ? 0 : (sizes.get(i) + sizes.get(i + 1) + 1) / 2;
+					scales.add(new Scale(new Size(lower, first ? minSize : 0),
+							last ? new Size() : new Size(upper - 1, Integer.MAX_VALUE)));
+					lower = upper;
+				}
+			}
+
+			for (Scale scale : this.scales)
+				scale.found.release();
+			this.scales = scales.toArray(new Scale[scales.size()]);
+			this.layoutCascade = cascade;
+			this.layoutWidth = width;
+			this.layoutHeight = height;
+			this.layoutMinSize = minSize;
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final int threads;
+	// The classifier the workers should be using
+	private volatile Cascade cascade;
+
+	/**
+	 * @param threads
+	 *            The number of worker threads.
+	 */
+	public ParallelDetector(int threads) {
+		this.threads = Math.max(1, threads);
+		this.pool = new ForkJoinPool(this.threads);
+	}
+
+	/**
+	 * Changes the classifier used by the workers from the next frame on.
+	 * 
+	 * @param copies
+	 *            Loaded copies of the classifier, one for each worker, that
+	 *            are not used by anyone else, or <code>null</code> to stop
+	 *            detecting.
+	 * @throws IllegalArgumentException
+	 *             If there are not as many copies as workers.
+	 */
+	public void setCascade(CascadeClassifier[] copies) {
+		if (copies != null && copies.length != this.threads)
+			throw new IllegalArgumentException(copies.length + " classifiers for " + this.threads + " workers");
+		this.cascade = copies == null ? null : new Cascade(copies);
+	}
+
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * @return A search for one camera to use.
+	 */
+	public Search newSearch() {
+		return new Search();
+	}
+
+	/**
+	 * Stops the worker threads.
+	 */
+	public void shutdown() {
+		this.pool.shutdown();
+	}
+}
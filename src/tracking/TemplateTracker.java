@@ -0,0 +1,180 @@
+package tracking;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Follows a single target between detections by matching a gray scale
+ * template of it inside a small search window around its last position. This
+ * is far cheaper than running a cascade classifier over the whole frame, but
+ * it does not follow changes in scale, so the template should be refreshed by
+ * a real detection every few frames.
+ * <p>
+ * Nothing is allocated per frame: the search window is copied into a buffer
+ * kept between frames, and the best match is found in a reused array.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class TemplateTracker {
+
+	// The target as it looked when it was last detected
+	private final Mat template = new Mat();
+	// The copy of the part of the frame that is searched
+	private final Mat search = new Mat();
+	// The match scores for every position in the search window, and a copy
+	// of them to find the best in
+	private final Mat scores = new Mat();
+	private float[] values = new float[0];
+	// Where and how much of the frame is copied, kept between frames
+	private final Point center = new Point();
+	private final Size size = new Size();
+	// The last known position of the target
+	private final Rect target = new Rect();
+	// The part of the frame that is searched
+	private final Rect window = new Rect();
+	// How far the target may move between frames, relative to its size
+	private final double searchMargin;
+	private boolean active = false;
+	private double confidence = 0;
+
+	/**
+	 * @param searchMargin
+	 *            How far around the last position to search, as a fraction of
+	 *            the target size.
+	 */
+	public TemplateTracker(double searchMargin) {
+		this.searchMargin = searchMargin;
+	}
+
+	/**
+	 * Starts following a newly detected target.
+	 * 
+	 * @param gray
+	 *            The gray scale frame the target was detected in.
+	 * @param x
+	 *            The left edge of the target.
+	 * @param y
+	 *            The top edge of the target.
+	 * @param width
+	 *            The width of the target.
+	 * @param height
+	 *            The height of the target.
+	 */
+	public void init(Mat gray, int x, int y, int width, int height) {
+		this.target.x = x;
+		this.target.y = y;
+		this.target.width = width;
+		this.target.height = height;
+		this.copy(gray, this.target, this.template);
+		this.confidence = 1;
+		this.active = true;
+	}
+
+	/**
+	 * Looks for the target near its last known position.
+	 * 
+	 * @param gray
+	 *            The current gray scale frame.
+	 * @return The normalized match score of the new position, between -1 and
+	 *         1. Higher is better.
+	 */
+	public double track(Mat gray) {
+		if (!this.active)
+			return 0;
+		int marginX = (int) (this.target.width * this.searchMargin);
+		int marginY = (int) (this.target.height * this.searchMargin);
+		this.window.x = Math.max(0, this.target.x - marginX);
+		this.window.y = Math.max(0, this.target.y - marginY);
+		this.window.width = Math.min(gray.cols(), this.target.x + this.target.width + marginX) - this.window.x;
+		this.window.height = Math.min(gray.rows(), this.target.y + this.target.height + marginY) - this.window.y;
+		if (this.window.width < this.target.width || this.window.height < this.target.height) {
+			// The target has moved off the edge of the frame
+			this.reset();
+			return 0;
+		}
+
+		this.copy(gray, this.window, this.search);
+		Imgproc.matchTemplate(this.search, this.template, this.scores, Imgproc.TM_CCOEFF_NORMED);
+
+		// Find the best match
+		int cols = this.scores.cols(), length = cols * this.scores.rows();
+		if (this.values.length < length)
+			this.values = new float[length];
+		this.scores.get(0, 0, this.values);
+		int best = 0;
+		for (int i = 1; i < length; i++)
+			if (this.values[i] > this.values[best])
+				best = i;
+
+		this.target.x = this.window.x + best % cols;
+		this.target.y = this.window.y + best / cols;
+		this.confidence = this.values[best];
+		return this.confidence;
+	}
+
+	/**
+	 * Copies part of a frame into a buffer, which is only reallocated when
+	 * the size of the part changes. Unlike a submat, this does not allocate a
+	 * new header every frame.
+	 * 
+	 * @param gray
+	 *            The frame.
+	 * @param region
+	 *            The part to copy, inside the frame.
+	 * @param copy
+	 *            The buffer to copy into.
+	 */
+	private void copy(Mat gray, Rect region, Mat copy) {
+		this.size.width = region.width;
+		this.size.height = region.height;
+		// Centered so the copy lines up with whole pixels and nothing is
+		// interpolated
+		this.center.x = region.x + (region.width - 1) / 2.0;
+		this.center.y = region.y + (region.height - 1) / 2.0;
+		Imgproc.getRectSubPix(gray, this.size, this.center, copy);
+	}
+
+	/**
+	 * Stops following the current target.
+	 */
+	public void reset() {
+		this.active = false;
+		this.confidence = 0;
+	}
+
+	public boolean isActive() {
+		return this.active;
+	}
+
+	public double getConfidence() {
+		return this.confidence;
+	}
+
+	/**
+	 * Copies the last known position of the target into an array.
+	 * 
+	 * @param rects
+	 *            The array to copy into, as x, y, width, height.
+	 * @param offset
+	 *            Where in the array to start.
+	 */
+	public void getTarget(int[] rects, int offset) {
+		rects[offset] = this.target.x;
+		rects[offset + 1] = this.target.y;
+		rects[offset + 2] = this.target.width;
+		rects[offset + 3] = this.target.height;
+	}
+
+	/**
+	 * Releases the native memory held by this tracker.
+	 */
+	public void release() {
+		this.template.release();
+		this.search.release();
+		this.scores.release();
+	}
+}
@@ -0,0 +1,87 @@
+package tracking;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * Frames from a video file, stamped with their position in the video.
+ * 
+ * @author Michael Huyler
+ *
+ */
+public class VideoFileSource extends FrameSource {
+
+	// Used when the file does not say how fast it was recorded
+	private static final double DEFAULT_FPS = 30;
+
+	private final VideoCapture capture = new VideoCapture();
+	private final String path;
+	// Frames read since the start of the video
+	private long index = 0;
+	private double fps = DEFAULT_FPS;
+
+	/**
+	 * @param path
+	 *            The path of the video file.
+	 */
+	public VideoFileSource(String path) {
+		this.path = path;
+	}
+
+	@Override
+	public boolean open() {
+		if (!this.capture.open(this.path))
+			return false;
+		double fps = this.capture.get(Videoio.CAP_PROP_FPS);
+		if (fps > 0)
+			this.fps = fps;
+		this.index = 0;
+		return true;
+	}
+
+	@Override
+	public boolean isOpened() {
+		return this.capture.isOpened();
+	}
+
+	@Override
+	protected boolean read(Mat frame) {
+		if (!this.capture.read(frame))
+			return false;
+		// Not every backend knows the position, so fall back to counting
+		// frames
+		long position = (long) (this.capture.get(Videoio.CAP_PROP_POS_MSEC) * 1000000L);
+		long counted = (long) (this.index * 1000000000L / this.fps);
+		this.timestamp = position > 0 || this.index == 0 ? position : counted;
+		this.index++;
+		return true;
+	}
+
+	@Override
+	protected boolean rewind() {
+		this.index = 0;
+		return this.capture.set(Videoio.CAP_PROP_POS_FRAMES, 0);
+	}
+
+	@Override
+	public int getRows() {
+		return (int) this.capture.get(Videoio.CAP_PROP_FRAME_HEIGHT);
+	}
+
+	@Override
+	public int getCols() {
+		return (int) this.capture.get(Videoio.CAP_PROP_FRAME_WIDTH);
+	}
+
+	@Override
+	public void release() {
+		if (this.capture.isOpened())
+			this.capture.release();
+	}
+
+	@Override
+	public String toString() {
+		return this.path;
+	}
+}